@@ -15,6 +15,7 @@ import java.util.Map;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.EventHandle;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
 
@@ -53,6 +54,12 @@ public class Datacenter extends SimEntity {
 	/** The scheduling interval. */
 	private double schedulingInterval;
 
+	/** The handles of the VM_DATACENTER_EVENTs sent by this datacenter to itself. */
+	private final List<EventHandle> datacenterEvents = new ArrayList<EventHandle>();
+
+	/** The number of handles at which the delivered ones are dropped from datacenterEvents. */
+	private int datacenterEventsThreshold = 16;
+
 	/**
 	 * Allocates a new PowerDatacenter object.
 	 * 
@@ -721,8 +728,7 @@ public class Datacenter extends SimEntity {
 			// if this cloudlet is in the exec queue
 			if (estimatedFinishTime > 0.0 && !Double.isInfinite(estimatedFinishTime)) {
 				estimatedFinishTime += fileTransferTime;
-				send(getId(), CloudSim.getMinTimeBetweenEvents()
-						+estimatedFinishTime, CloudSimTags.VM_DATACENTER_EVENT);
+				sendDatacenterEvent(CloudSim.getMinTimeBetweenEvents() + estimatedFinishTime);
 			}
 
 			if (ack) {
@@ -788,7 +794,7 @@ public class Datacenter extends SimEntity {
 		if (eventTime > 0.0) { // if this cloudlet is in the exec queue
 			status = true;
 			if (eventTime > CloudSim.clock()) {
-				schedule(getId(), eventTime, CloudSimTags.VM_DATACENTER_EVENT);
+				sendDatacenterEvent(eventTime);
 			}
 		}
 
@@ -878,12 +884,51 @@ public class Datacenter extends SimEntity {
 				smallerTime = CloudSim.clock() + CloudSim.getMinTimeBetweenEvents() + 0.01;
 			}
 			if (smallerTime != Double.MAX_VALUE) {
-				schedule(getId(), (smallerTime - CloudSim.clock()), CloudSimTags.VM_DATACENTER_EVENT);
+				sendDatacenterEvent(smallerTime - CloudSim.clock());
 			}
 			setLastProcessTime(CloudSim.clock());
 		}
 	}
 
+	/**
+	 * Sends a VM_DATACENTER_EVENT to this datacenter, keeping its handle so that it can be cancelled
+	 * by {@link #cancelDatacenterEvents()}.
+	 * 
+	 * @param delay how long from the current simulation time the event should occur
+	 * @return the handle of the event, or <tt>null</tt> if it was not sent
+	 */
+	protected EventHandle sendDatacenterEvent(double delay) {
+		EventHandle handle = scheduleCancellable(getId(), delay, CloudSimTags.VM_DATACENTER_EVENT);
+		if (handle != null) {
+			if (datacenterEvents.size() >= datacenterEventsThreshold) {
+				Iterator<EventHandle> iter = datacenterEvents.iterator();
+				while (iter.hasNext()) {
+					if (!iter.next().isPending()) {
+						iter.remove();
+					}
+				}
+				datacenterEventsThreshold = Math.max(16, 2 * datacenterEvents.size());
+			}
+			datacenterEvents.add(handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * Cancels the VM_DATACENTER_EVENTs sent by {@link #sendDatacenterEvent(double)} that are still
+	 * pending. Unlike cancelling them with a predicate, this does not search the future event queue.
+	 * 
+	 * @return true if an event was cancelled
+	 */
+	protected boolean cancelDatacenterEvents() {
+		boolean cancelled = false;
+		for (EventHandle handle : datacenterEvents) {
+			cancelled |= handle.cancel();
+		}
+		datacenterEvents.clear();
+		return cancelled;
+	}
+
 	/**
 	 * Verifies if some cloudlet inside this PowerDatacenter already finished. If yes, send it to
 	 * the User/Broker
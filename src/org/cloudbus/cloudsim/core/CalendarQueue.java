@@ -0,0 +1,432 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * This class implements the future event queue used by {@link CloudSim} as a calendar queue (R.
+ * Brown, "Calendar queues: a fast O(1) priority queue implementation for the simulation event set
+ * problem", CACM 1988). Events are hashed by time into an array of buckets ("days") of a fixed
+ * width; dequeuing walks the days of the current "year" in order. The number of buckets and
+ * their width are recomputed whenever the queue doubles or halves in size, which gives amortized
+ * O(1) enqueue and dequeue when the event times are reasonably spread.
+ * <p>
+ * Events with the same time always fall into the same bucket, where they are kept in the order
+ * given by {@link SimEvent#compareTo(SimEvent)}, so the processing order is the same as with
+ * {@link FutureQueue}.
+ *
+ * @see FutureQueue
+ * @see EventQueue
+ */
+public class CalendarQueue implements EventQueue {
+
+	/** The minimum number of buckets. */
+	private static final int MIN_BUCKETS = 16;
+
+	/** The number of events sampled to estimate the bucket width on a resize. */
+	private static final int WIDTH_SAMPLE_SIZE = 25;
+
+	/** The buckets. */
+	private Bucket[] buckets;
+
+	/** The bucket index mask (the number of buckets is always a power of two). */
+	private int mask;
+
+	/** The width of a bucket, in simulation time. */
+	private double width;
+
+	/** The virtual bucket ("day" since time zero) the dequeue position is at. */
+	private long currentDay;
+
+	/** The number of events in the queue. */
+	private int size;
+
+	/** Whether resizing is allowed (it is turned off while a resize is in progress). */
+	private boolean resizeEnabled = true;
+
+	/** The serial. */
+	private long serial = 0;
+
+	/**
+	 * Creates a new calendar queue with a bucket width of one time unit.
+	 */
+	public CalendarQueue() {
+		this(1.0);
+	}
+
+	/**
+	 * Creates a new calendar queue.
+	 *
+	 * @param initialWidth the initial bucket width, used until the first resize
+	 */
+	public CalendarQueue(double initialWidth) {
+		if (initialWidth <= 0) {
+			throw new IllegalArgumentException("The bucket width should be positive, but is:" + initialWidth);
+		}
+		init(MIN_BUCKETS, initialWidth, 0);
+	}
+
+	@Override
+	public void addEvent(SimEvent newEvent) {
+		newEvent.setSerial(serial++);
+		insert(newEvent);
+	}
+
+	@Override
+	public void addEventFirst(SimEvent newEvent) {
+		newEvent.setSerial(0);
+		insert(newEvent);
+	}
+
+	@Override
+	public SimEvent first() {
+		Bucket bucket = findFirstBucket();
+		return bucket == null ? null : bucket.first();
+	}
+
+	@Override
+	public SimEvent pollFirst() {
+		Bucket bucket = findFirstBucket();
+		if (bucket == null) {
+			return null;
+		}
+		SimEvent event = bucket.pollFirst();
+		size--;
+		if (resizeEnabled && size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+			resize(buckets.length / 2);
+		}
+		return event;
+	}
+
+	@Override
+	public Iterator<SimEvent> iterator() {
+		final SimEvent[] snapshot = new SimEvent[size];
+		int i = 0;
+		for (Bucket bucket : buckets) {
+			for (int j = 0; j < bucket.size; j++) {
+				snapshot[i++] = bucket.get(j);
+			}
+		}
+		Arrays.sort(snapshot);
+
+		return new Iterator<SimEvent>() {
+
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < snapshot.length;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return snapshot[next++];
+			}
+
+			@Override
+			public void remove() {
+				if (next == 0 || snapshot[next - 1] == null) {
+					throw new IllegalStateException();
+				}
+				CalendarQueue.this.remove(snapshot[next - 1]);
+				snapshot[next - 1] = null;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		if (event == null || !buckets[bucketIndex(dayOf(event.eventTime()))].remove(event)) {
+			return false;
+		}
+		size--;
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<SimEvent> events) {
+		boolean changed = false;
+		for (SimEvent event : events) {
+			changed |= remove(event);
+		}
+		return changed;
+	}
+
+	@Override
+	public void clear() {
+		init(MIN_BUCKETS, width, 0);
+	}
+
+	/**
+	 * Inserts an event in its bucket, growing the calendar if needed.
+	 *
+	 * @param event the event
+	 */
+	private void insert(SimEvent event) {
+		long day = dayOf(event.eventTime());
+		buckets[bucketIndex(day)].add(event);
+		size++;
+
+		// an event before the dequeue position moves the position back
+		if (day < currentDay) {
+			currentDay = day;
+		}
+
+		if (resizeEnabled && size > 2 * buckets.length) {
+			resize(2 * buckets.length);
+		}
+	}
+
+	/**
+	 * Finds the bucket holding the earliest event and moves the dequeue position to it.
+	 *
+	 * @return the bucket, or <tt>null</tt> if the queue is empty
+	 */
+	private Bucket findFirstBucket() {
+		if (size == 0) {
+			return null;
+		}
+
+		// walk one year of days starting at the current one
+		for (int i = 0; i < buckets.length; i++) {
+			long day = currentDay + i;
+			Bucket bucket = buckets[bucketIndex(day)];
+			if (bucket.size > 0 && dayOf(bucket.first().eventTime()) <= day) {
+				currentDay = day;
+				return bucket;
+			}
+		}
+
+		// nothing in the current year: fall back to a direct search of the earliest event
+		Bucket earliest = null;
+		for (Bucket bucket : buckets) {
+			if (bucket.size > 0 && (earliest == null || bucket.first().compareTo(earliest.first()) < 0)) {
+				earliest = bucket;
+			}
+		}
+		currentDay = dayOf(earliest.first().eventTime());
+		return earliest;
+	}
+
+	/**
+	 * Re-creates the calendar with a new number of buckets and a bucket width estimated from the
+	 * events currently in the queue.
+	 *
+	 * @param newBucketCount the new number of buckets
+	 */
+	private void resize(int newBucketCount) {
+		Bucket[] oldBuckets = buckets;
+		double newWidth = estimateWidth();
+		int oldSize = size;
+
+		init(newBucketCount, newWidth, oldSize);
+		resizeEnabled = false;
+		currentDay = Long.MAX_VALUE;
+		for (Bucket bucket : oldBuckets) {
+			for (int j = 0; j < bucket.size; j++) {
+				insert(bucket.get(j));
+			}
+		}
+		if (oldSize == 0) {
+			currentDay = 0;
+		}
+		resizeEnabled = true;
+	}
+
+	/**
+	 * Estimates a bucket width from the separation of the earliest events in the queue, as
+	 * proposed by Brown. If all sampled events have the same time, the current width is kept.
+	 *
+	 * @return the bucket width
+	 */
+	private double estimateWidth() {
+		int sampleSize = Math.min(size, WIDTH_SAMPLE_SIZE);
+		if (sampleSize < 2) {
+			return width;
+		}
+
+		// keep the earliest events using a bounded max-heap
+		PriorityQueue<SimEvent> earliest = new PriorityQueue<SimEvent>(sampleSize, Collections.reverseOrder());
+		for (Bucket bucket : buckets) {
+			for (int j = 0; j < bucket.size; j++) {
+				SimEvent event = bucket.get(j);
+				if (earliest.size() < sampleSize) {
+					earliest.add(event);
+				} else if (event.compareTo(earliest.peek()) < 0) {
+					earliest.poll();
+					earliest.add(event);
+				}
+			}
+		}
+
+		double[] times = new double[earliest.size()];
+		int i = 0;
+		for (SimEvent event : earliest) {
+			times[i++] = event.eventTime();
+		}
+		Arrays.sort(times);
+
+		double total = 0;
+		int count = 0;
+		for (i = 1; i < times.length; i++) {
+			double separation = times[i] - times[i - 1];
+			if (separation > 0) {
+				total += separation;
+				count++;
+			}
+		}
+		if (count == 0) {
+			return width;
+		}
+
+		// discard the outliers and recompute the average separation
+		double average = total / count;
+		double trimmedTotal = 0;
+		int trimmedCount = 0;
+		for (i = 1; i < times.length; i++) {
+			double separation = times[i] - times[i - 1];
+			if (separation > 0 && separation <= 2 * average) {
+				trimmedTotal += separation;
+				trimmedCount++;
+			}
+		}
+
+		double newWidth = 3 * (trimmedCount > 0 ? trimmedTotal / trimmedCount : average);
+		return newWidth > 0 && !Double.isInfinite(newWidth) ? newWidth : width;
+	}
+
+	/**
+	 * Initialises the calendar.
+	 *
+	 * @param bucketCount the number of buckets
+	 * @param bucketWidth the bucket width
+	 * @param expectedSize the expected number of events
+	 */
+	private void init(int bucketCount, double bucketWidth, int expectedSize) {
+		buckets = new Bucket[bucketCount];
+		int capacity = Math.max(4, 2 * expectedSize / bucketCount);
+		for (int i = 0; i < bucketCount; i++) {
+			buckets[i] = new Bucket(capacity);
+		}
+		mask = bucketCount - 1;
+		width = bucketWidth;
+		currentDay = 0;
+		size = 0;
+	}
+
+	/**
+	 * Gets the virtual bucket ("day") of a given time.
+	 *
+	 * @param time the time
+	 * @return the day
+	 */
+	private long dayOf(double time) {
+		return (long) Math.floor(time / width);
+	}
+
+	/**
+	 * Gets the index of the bucket of a given day.
+	 *
+	 * @param day the day
+	 * @return the bucket index
+	 */
+	private int bucketIndex(long day) {
+		return (int) (day & mask);
+	}
+
+	/**
+	 * A bucket of the calendar: a circular array of events sorted by
+	 * {@link SimEvent#compareTo(SimEvent)}. Events are mostly appended at the tail and always taken
+	 * from the head, so both operations are O(1) in the common case.
+	 */
+	private static final class Bucket {
+
+		/** The events. */
+		private SimEvent[] items;
+
+		/** The position of the first event. */
+		private int head;
+
+		/** The number of events. */
+		private int size;
+
+		Bucket(int capacity) {
+			items = new SimEvent[capacity];
+		}
+
+		SimEvent get(int i) {
+			return items[(head + i) % items.length];
+		}
+
+		SimEvent first() {
+			return items[head];
+		}
+
+		SimEvent pollFirst() {
+			SimEvent event = items[head];
+			items[head] = null;
+			head = (head + 1) % items.length;
+			size--;
+			return event;
+		}
+
+		void add(SimEvent event) {
+			if (size == items.length) {
+				grow();
+			}
+
+			// shift later events one position towards the tail
+			int i = size;
+			while (i > 0 && event.compareTo(get(i - 1)) < 0) {
+				items[(head + i) % items.length] = get(i - 1);
+				i--;
+			}
+			items[(head + i) % items.length] = event;
+			size++;
+		}
+
+		boolean remove(SimEvent event) {
+			for (int i = 0; i < size; i++) {
+				if (get(i) == event) {
+					for (int j = i; j < size - 1; j++) {
+						items[(head + j) % items.length] = get(j + 1);
+					}
+					items[(head + size - 1) % items.length] = null;
+					size--;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void grow() {
+			SimEvent[] newItems = new SimEvent[items.length * 2];
+			for (int i = 0; i < size; i++) {
+				newItems[i] = get(i);
+			}
+			items = newItems;
+			head = 0;
+		}
+	}
+
+}
@@ -9,6 +9,8 @@
 package org.cloudbus.cloudsim.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -16,6 +18,9 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.predicates.Predicate;
@@ -64,6 +69,50 @@ public class CloudSim {
 
 	/** The minimal time between events. Events within shorter periods after the last event are discarded. */
 	private static double minTimeBetweenEvents = 0.1;
+
+	/**
+	 * Process-interaction dispatch mode (default): the events of a clock tick are first moved to the
+	 * entities' deferred queues and the entities are then run, in id order, to consume them.
+	 */
+	public static final int DISPATCH_PROCESS_INTERACTION = 0;
+
+	/**
+	 * Event-driven dispatch mode: each event is handed to its destination entity as soon as it is
+	 * taken from the future event queue, so only the entities that actually have an event are
+	 * woken up. Events of the same clock tick are processed in the order they were scheduled
+	 * instead of being grouped by entity.
+	 */
+	public static final int DISPATCH_EVENT_DRIVEN = 1;
+
+	/** The dispatch mode. */
+	private static int dispatchMode = DISPATCH_PROCESS_INTERACTION;
+
+	/** The maximum number of recycled events kept in the event pool. */
+	private static final int MAX_EVENT_POOL_SIZE = 65536;
+
+	/** Flag for checking if processed events are recycled. */
+	private static boolean eventPooling = false;
+
+	/** The recycled events, used as a stack. */
+	private static SimEvent[] eventPool = null;
+
+	/** The number of events in the event pool. */
+	private static int eventPoolSize = 0;
+
+	/** The lookahead of the parallel execution, or 0 if the simulation runs sequentially. */
+	private static double parallelLookahead = 0;
+
+	/** The time from which the simulation runs in parallel. */
+	private static double parallelStartTime = 0;
+
+	/** The number of worker threads of the parallel execution. */
+	private static int parallelism = 1;
+
+	/** The logical processes, while the simulation runs in parallel. */
+	private static LogicalProcess[] processes = null;
+
+	/** The logical process run by the current thread. */
+	private static final ThreadLocal<LogicalProcess> currentProcess = new ThreadLocal<LogicalProcess>();
 	
 	/**
 	 * Initialises all the common attributes.
@@ -165,6 +214,30 @@ public class CloudSim {
 	    init(numUser, cal, traceFlag);
 	    minTimeBetweenEvents = periodBetweenEvents;
 	}
+
+	/**
+	 * Initialises CloudSim parameters using a given future event queue implementation. This method
+	 * should be called before creating any entities.
+	 * 
+	 * @param numUser the number of User Entities created
+	 * @param cal starting time for this simulation. If it is <tt>null</tt>, then the time will be
+	 *            taken from <tt>Calendar.getInstance()</tt>
+	 * @param traceFlag <tt>true</tt> if CloudSim trace need to be written
+	 * @param futureQueue the (empty) future event queue to be used, e.g. a {@link CalendarQueue} for
+	 *            simulations with a large number of pending events
+	 * @see #init(int, Calendar, boolean)
+	 * @pre numUser >= 0
+	 * @pre futureQueue != null
+	 * @post $none
+	 */
+	public static void init(int numUser, Calendar cal, boolean traceFlag, EventQueue futureQueue) {
+		if (futureQueue == null || futureQueue.size() > 0) {
+			throw new IllegalArgumentException("The future event queue should be an empty queue.");
+		}
+
+		init(numUser, cal, traceFlag);
+		future = futureQueue;
+	}
 	
 	
 	
@@ -258,6 +331,113 @@ public class CloudSim {
 	    return minTimeBetweenEvents;
 	}
 
+	/**
+	 * Sets how events are dispatched to the entities. This method should be called after
+	 * {@link #init(int, Calendar, boolean)}, which restores the default mode, and before the
+	 * simulation is started.
+	 * 
+	 * @param mode either {@link #DISPATCH_PROCESS_INTERACTION} or {@link #DISPATCH_EVENT_DRIVEN}
+	 */
+	public static void setDispatchMode(int mode) {
+		if (mode != DISPATCH_PROCESS_INTERACTION && mode != DISPATCH_EVENT_DRIVEN) {
+			throw new IllegalArgumentException("Unknown dispatch mode: " + mode);
+		}
+		if (running) {
+			throw new IllegalStateException("The dispatch mode can't be changed while the simulation is running.");
+		}
+		dispatchMode = mode;
+	}
+
+	/**
+	 * Returns how events are dispatched to the entities.
+	 * 
+	 * @return either {@link #DISPATCH_PROCESS_INTERACTION} or {@link #DISPATCH_EVENT_DRIVEN}
+	 */
+	public static int getDispatchMode() {
+		return dispatchMode;
+	}
+
+	/**
+	 * Enables or disables the recycling of events. When enabled, an event is returned to a pool as
+	 * soon as the entity's {@link SimEntity#processEvent(SimEvent)} method returns and is reused by
+	 * a later send or schedule call, which avoids allocating one object per event. Entities must
+	 * therefore not keep a reference to an event (e.g. in a field or a collection) after processing
+	 * it. Pooling is disabled by {@link #init(int, Calendar, boolean)}, which also drops the pooled
+	 * events of a previous simulation.
+	 * 
+	 * @param enabled <tt>true</tt> to recycle events
+	 */
+	public static void setEventPooling(boolean enabled) {
+		eventPooling = enabled;
+		eventPool = enabled ? new SimEvent[MAX_EVENT_POOL_SIZE] : null;
+		eventPoolSize = 0;
+	}
+
+	/**
+	 * Checks if processed events are recycled.
+	 * 
+	 * @return <tt>true</tt> if event pooling is enabled
+	 */
+	public static boolean isEventPooling() {
+		return eventPooling;
+	}
+
+	/**
+	 * Enables the parallel execution of the simulation, following a conservative time window
+	 * scheme. The entities are partitioned into logical processes (see
+	 * {@link SimEntity#setLogicalProcess(int)}), which are run on a fork-join pool. Time is divided
+	 * into windows of <tt>lookahead</tt> length starting at the earliest pending event; in each
+	 * window the logical processes independently process their events, and the events they send to
+	 * each other are delivered at the end of the window. This is correct as long as any event sent to
+	 * another logical process has a delay of at least <tt>lookahead</tt> (e.g. the minimum latency
+	 * of the network links between the partitions); otherwise an {@link IllegalStateException} is
+	 * thrown.
+	 * <p>
+	 * The simulation runs sequentially until the clock reaches <tt>startTime</tt>, so that set-up
+	 * phases with short delays between arbitrary entities do not constrain the lookahead. Entities
+	 * can't be created dynamically while running in parallel, pause times are ignored, events are
+	 * dispatched as in the {@link #DISPATCH_PROCESS_INTERACTION} mode and they are not recycled. An
+	 * abrupt termination takes effect at the end of the current window. Entities, and any state they
+	 * share, must be safe to be run by different threads.
+	 * 
+	 * @param lookahead the minimum delay of the events exchanged by the logical processes
+	 * @param startTime the simulation time from which the simulation runs in parallel
+	 * @param parallelism the number of worker threads
+	 */
+	public static void setParallelExecution(double lookahead, double startTime, int parallelism) {
+		if (lookahead <= 0 || Double.isNaN(lookahead)) {
+			throw new IllegalArgumentException("The lookahead should be positive, but is:" + lookahead);
+		}
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("The parallelism should be positive, but is:" + parallelism);
+		}
+		if (running) {
+			throw new IllegalStateException("The parallel execution can't be changed while the simulation is running.");
+		}
+		parallelLookahead = lookahead;
+		parallelStartTime = startTime;
+		CloudSim.parallelism = parallelism;
+	}
+
+	/**
+	 * Disables the parallel execution of the simulation.
+	 */
+	public static void disableParallelExecution() {
+		if (running) {
+			throw new IllegalStateException("The parallel execution can't be changed while the simulation is running.");
+		}
+		parallelLookahead = 0;
+	}
+
+	/**
+	 * Checks if the simulation is set to run in parallel.
+	 * 
+	 * @return <tt>true</tt> if the parallel execution is enabled
+	 */
+	public static boolean isParallelExecution() {
+		return parallelLookahead > 0;
+	}
+
 	/**
 	 * Gets a new copy of initial simulation Calendar.
 	 * 
@@ -311,11 +491,14 @@ public class CloudSim {
 	private static List<SimEntity> entities;
 
 	/** The future event queue. */
-	protected static FutureQueue future;
+	protected static EventQueue future;
 
 	/** The deferred event queue. */
 	protected static DeferredQueue deferred;
 
+	/** The ids of the entities that have to be run in the next clock tick (they have new mail or were woken up). */
+	private static BitSet readyEntities;
+
 	/** The simulation clock. */
 	private static double clock;
 
@@ -348,9 +531,14 @@ public class CloudSim {
 		entitiesByName = new LinkedHashMap<String, SimEntity>();
 		future = new FutureQueue();
 		deferred = new DeferredQueue();
+		readyEntities = new BitSet();
 		waitPredicates = new HashMap<Integer, Predicate>();
 		clock = 0;
 		running = false;
+		dispatchMode = DISPATCH_PROCESS_INTERACTION;
+		eventPooling = false;
+		eventPool = null;
+		eventPoolSize = 0;
 	}
 
 	// The two standard predicates
@@ -369,7 +557,8 @@ public class CloudSim {
 	 * @return the simulation time
 	 */
 	public static double clock() {
-		return clock;
+		LogicalProcess lp = currentProcess();
+		return lp == null ? clock : lp.clock;
 	}
 
 	/**
@@ -471,6 +660,9 @@ public class CloudSim {
 	 * @param e The new entity
 	 */
 	public static void addEntity(SimEntity e) {
+		if (processes != null) {
+			throw new IllegalStateException("Entities can't be added while the simulation runs in parallel.");
+		}
 		SimEvent evt;
 		if (running) {
 			// Post an event to make this entity
@@ -510,9 +702,10 @@ public class CloudSim {
 		SimEntity ent;
 		boolean queue_empty;
 		
-		int entities_size = entities.size();
-
-		for (int i = 0; i < entities_size; i++) {
+		// Only entities with new mail or that were woken up have something to do. They are run in
+		// id order, as when sweeping the whole entity list.
+		for (int i = readyEntities.nextSetBit(0); i >= 0; i = readyEntities.nextSetBit(i + 1)) {
+			readyEntities.clear(i);
 			ent = entities.get(i);
 			if (ent.getState() == SimEntity.RUNNABLE) {
 				ent.run();
@@ -520,31 +713,20 @@ public class CloudSim {
 		}
 				
 		// If there are more future events then deal with them
-		if (future.size() > 0) {
-			List<SimEvent> toRemove = new ArrayList<SimEvent>();
-			Iterator<SimEvent> fit = future.iterator();
+		SimEvent first = firstLiveEvent(future);
+		if (first != null) {
 			queue_empty = false;
-			SimEvent first = fit.next();
+			future.pollFirst();
+			double time = first.eventTime();
 			processEvent(first);
-			future.remove(first);
-
-			fit = future.iterator();
 
 			// Check if next events are at same time...
-			boolean trymore = fit.hasNext();
-			while (trymore) {
-				SimEvent next = fit.next();
-				if (next.eventTime() == first.eventTime()) {
-					processEvent(next);
-					toRemove.add(next);
-					trymore = fit.hasNext();
-				} else {
-					trymore = false;
-				}
+			SimEvent next = firstLiveEvent(future);
+			while (next != null && next.eventTime() == time) {
+				processEvent(future.pollFirst());
+				next = firstLiveEvent(future);
 			}
 
-			future.removeAll(toRemove);
-
 		} else {
 			queue_empty = true;
 			running = false;
@@ -568,9 +750,7 @@ public class CloudSim {
 	 * @param delay the delay
 	 */
 	public static void hold(int src, long delay) {
-		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
-		future.addEvent(e);
-		entities.get(src).setState(SimEntity.HOLDING);
+		pause(src, delay);
 	}
 
 	/**
@@ -580,8 +760,12 @@ public class CloudSim {
 	 * @param delay the delay
 	 */
 	public static void pause(int src, double delay) {
-		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
-		future.addEvent(e);
+		LogicalProcess lp = currentProcess();
+		if (lp != null) {
+			lp.schedule(new SimEvent(SimEvent.HOLD_DONE, lp.clock + delay, src, -1, -1, null), false, lp.id);
+		} else {
+			future.addEvent(obtainEvent(SimEvent.HOLD_DONE, clock + delay, src, -1, -1, null));
+		}
 		entities.get(src).setState(SimEntity.HOLDING);
 	}
 
@@ -595,12 +779,23 @@ public class CloudSim {
 	 * @param data the data
 	 */
 	public static void send(int src, int dest, double delay, int tag, Object data) {
-		if (delay < 0) {
-			throw new IllegalArgumentException("Send delay can't be negative.");
-		}
+		send(src, dest, delay, tag, data, false, false);
+	}
 
-		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
-		future.addEvent(e);
+	/**
+	 * Used to send an event from one entity to another, keeping a handle through which the event can
+	 * be cancelled in constant time. The other send methods create no handle, so that sending an
+	 * event allocates nothing when events are pooled.
+	 * 
+	 * @param src the src
+	 * @param dest the dest
+	 * @param delay the delay
+	 * @param tag the tag
+	 * @param data the data
+	 * @return the handle of the event
+	 */
+	public static EventHandle sendCancellable(int src, int dest, double delay, int tag, Object data) {
+		return send(src, dest, delay, tag, data, false, true);
 	}
 
 	/**
@@ -613,12 +808,31 @@ public class CloudSim {
 	 * @param data the data
 	 */
 	public static void sendFirst(int src, int dest, double delay, int tag, Object data) {
+		send(src, dest, delay, tag, data, true, false);
+	}
+
+	private static EventHandle send(int src, int dest, double delay, int tag, Object data, boolean first,
+			boolean cancellable) {
 		if (delay < 0) {
 			throw new IllegalArgumentException("Send delay can't be negative.");
 		}
 
-		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
-		future.addEventFirst(e);
+		LogicalProcess lp = currentProcess();
+		if (lp != null) {
+			SimEvent e = new SimEvent(SimEvent.SEND, lp.clock + delay, src, dest, tag, data);
+			EventHandle handle = cancellable ? new EventHandle(e) : null;
+			lp.schedule(e, first, getLogicalProcess(e));
+			return handle;
+		}
+
+		SimEvent e = obtainEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
+		EventHandle handle = cancellable ? new EventHandle(e) : null;
+		if (first) {
+			future.addEventFirst(e);
+		} else {
+			future.addEvent(e);
+		}
+		return handle;
 	}
 
 	/**
@@ -633,7 +847,8 @@ public class CloudSim {
 		entities.get(src).setState(SimEntity.WAITING);
 		if (p != SIM_ANY) {
 			// If a predicate has been used store it in order to check it
-			waitPredicates.put(src, p);
+			LogicalProcess lp = currentProcess();
+			(lp == null ? waitPredicates : lp.waitPredicates).put(src, p);
 		}
 	}
 
@@ -645,12 +860,15 @@ public class CloudSim {
 	 * @return the int
 	 */
 	public static int waiting(int d, Predicate p) {
+		DeferredQueue deferred = currentDeferred();
+		if (p == SIM_ANY) {
+			return deferred.size(d);
+		}
+
 		int count = 0;
-		SimEvent event;
-		Iterator<SimEvent> iterator = deferred.iterator();
+		Iterator<SimEvent> iterator = deferred.iterator(d);
 		while (iterator.hasNext()) {
-			event = iterator.next();
-			if ((event.getDestination() == d) && (p.match(event))) {
+			if (p.match(iterator.next())) {
 				count++;
 			}
 		}
@@ -662,19 +880,19 @@ public class CloudSim {
 	 * 
 	 * @param src the src
 	 * @param p the p
-	 * @return the sim event
+	 * @return the sim event, or <tt>null</tt> if no deferred event matches
 	 */
 	public static SimEvent select(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iterator = deferred.iterator();
+		SimEvent ev;
+		Iterator<SimEvent> iterator = currentDeferred().iterator(src);
 		while (iterator.hasNext()) {
 			ev = iterator.next();
-			if (ev.getDestination() == src && p.match(ev)) {
+			if (p.match(ev)) {
 				iterator.remove();
-				break;
+				return ev;
 			}
 		}
-		return ev;
+		return null;
 	}
 
 	/**
@@ -682,22 +900,24 @@ public class CloudSim {
 	 * 
 	 * @param src the src
 	 * @param p the p
-	 * @return the sim event
+	 * @return the sim event, or <tt>null</tt> if no deferred event matches
 	 */
 	public static SimEvent findFirstDeferred(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iterator = deferred.iterator();
+		SimEvent ev;
+		Iterator<SimEvent> iterator = currentDeferred().iterator(src);
 		while (iterator.hasNext()) {
 			ev = iterator.next();
-			if (ev.getDestination() == src && p.match(ev)) {
-				break;
+			if (p.match(ev)) {
+				return ev;
 			}
 		}
-		return ev;
+		return null;
 	}
 
 	/**
-	 * Removes an event from the event queue.
+	 * Removes an event from the event queue. When running in parallel, only the events that are
+	 * processed by the current logical process can be cancelled. This searches the whole queue;
+	 * events sent by {@link #sendCancellable} can be cancelled through their {@link EventHandle} instead.
 	 * 
 	 * @param src the src
 	 * @param p the p
@@ -705,11 +925,12 @@ public class CloudSim {
 	 */
 	public static SimEvent cancel(int src, Predicate p) {
 		SimEvent ev = null;
-		Iterator<SimEvent> iter = future.iterator();
+		Iterator<SimEvent> iter = currentFuture().iterator();
 		while (iter.hasNext()) {
 			ev = iter.next();
-			if (ev.getSource() == src && p.match(ev)) {
+			if (!ev.isCancelled() && ev.getSource() == src && p.match(ev)) {
 				iter.remove();
+				ev.detachHandle();
 				break;
 			}
 		}
@@ -727,12 +948,14 @@ public class CloudSim {
 	 */
 	public static boolean cancelAll(int src, Predicate p) {
 		SimEvent ev = null;
+		EventQueue future = currentFuture();
 		int previousSize = future.size();
 		Iterator<SimEvent> iter = future.iterator();
 		while (iter.hasNext()) {
 			ev = iter.next();
-			if (ev.getSource() == src && p.match(ev)) {
+			if (!ev.isCancelled() && ev.getSource() == src && p.match(ev)) {
 				iter.remove();
+				ev.detachHandle();
 			}
 		}
 		return previousSize < future.size();
@@ -755,6 +978,7 @@ public class CloudSim {
 			throw new IllegalArgumentException("Past event detected.");
 		}
 		clock = e.eventTime();
+		e.detachHandle();
 
 		// Ok now process it
 		switch (e.getType()) {
@@ -778,15 +1002,20 @@ public class CloudSim {
 						Integer destObj = Integer.valueOf(dest);
 						Predicate p = waitPredicates.get(destObj);
 						if ((p == null) || (tag == 9999) || (p.match(e))) {
-							dest_ent.setEventBuffer((SimEvent) e.clone());
+							dest_ent.setEventBuffer(e);
 							dest_ent.setState(SimEntity.RUNNABLE);
 							waitPredicates.remove(destObj);
 						} else {
 							deferred.addEvent(e);
 						}
+					} else if (dispatchMode == DISPATCH_EVENT_DRIVEN && dest_ent.getState() == SimEntity.RUNNABLE
+							&& deferred.size(dest) == 0) {
+						// nothing older is pending, so the event can be handed over directly
+						dest_ent.setEventBuffer(e);
 					} else {
 						deferred.addEvent(e);
 					}
+					wakeUp(dest);
 				}
 				break;
 
@@ -795,7 +1024,9 @@ public class CloudSim {
 				if (src < 0) {
 					throw new IllegalArgumentException("Null entity holding.");
 				} else {
+					releaseEvent(e);
 					entities.get(src).setState(SimEntity.RUNNABLE);
+					wakeUp(src);
 				}
 				break;
 
@@ -804,6 +1035,248 @@ public class CloudSim {
 		}
 	}
 
+	/**
+	 * Drops the cancelled events at the head of a future event queue. It should <b>not</b> be called
+	 * from user simulations.
+	 * 
+	 * @param queue the future event queue
+	 * @return the first event that is not cancelled, which is left in the queue, or <tt>null</tt>
+	 */
+	static SimEvent firstLiveEvent(EventQueue queue) {
+		SimEvent first = queue.first();
+		while (first != null && first.isCancelled()) {
+			queue.pollFirst();
+			releaseEvent(first);
+			first = queue.first();
+		}
+		return first;
+	}
+
+	/**
+	 * Gets an event, either recycled from the event pool or newly created.
+	 * 
+	 * @param type the internal event type
+	 * @param time the event time
+	 * @param src the src
+	 * @param dest the dest
+	 * @param tag the tag
+	 * @param data the data
+	 * @return the event
+	 */
+	private static SimEvent obtainEvent(int type, double time, int src, int dest, int tag, Object data) {
+		if (eventPoolSize > 0) {
+			SimEvent e = eventPool[--eventPoolSize];
+			eventPool[eventPoolSize] = null;
+			e.init(type, time, src, dest, tag, data);
+			return e;
+		}
+		return new SimEvent(type, time, src, dest, tag, data);
+	}
+
+	/**
+	 * Returns a processed event to the event pool, if event pooling is enabled. It should
+	 * <b>not</b> be called from user simulations.
+	 * 
+	 * @param e the event
+	 */
+	static void releaseEvent(SimEvent e) {
+		if (eventPooling && processes == null && eventPoolSize < eventPool.length) {
+			e.clear();
+			eventPool[eventPoolSize++] = e;
+		}
+	}
+
+	/**
+	 * Notifies that an entity has new events or may have become runnable. In the process-interaction
+	 * mode the entity is run in the next clock tick; in the event-driven mode it is run right away.
+	 * 
+	 * @param id the entity id
+	 */
+	private static void wakeUp(int id) {
+		if (dispatchMode == DISPATCH_EVENT_DRIVEN) {
+			SimEntity ent = entities.get(id);
+			if (ent.getState() == SimEntity.RUNNABLE) {
+				ent.run();
+			}
+		} else {
+			readyEntities.set(id);
+		}
+	}
+
+	/**
+	 * Gets the logical process run by the current thread.
+	 * 
+	 * @return the logical process, or <tt>null</tt> if the simulation is not running in parallel
+	 */
+	private static LogicalProcess currentProcess() {
+		return processes == null ? null : currentProcess.get();
+	}
+
+	/**
+	 * Sets the logical process run by the current thread. It should <b>not</b> be called from user
+	 * simulations.
+	 * 
+	 * @param lp the logical process, or <tt>null</tt> when the thread stops running it
+	 */
+	static void enterLogicalProcess(LogicalProcess lp) {
+		if (lp == null) {
+			currentProcess.remove();
+		} else {
+			currentProcess.set(lp);
+		}
+	}
+
+	/**
+	 * Gets the future event queue of the current logical process.
+	 * 
+	 * @return the future event queue
+	 */
+	private static EventQueue currentFuture() {
+		LogicalProcess lp = currentProcess();
+		return lp == null ? future : lp.future;
+	}
+
+	/**
+	 * Gets the deferred event queue of the current logical process.
+	 * 
+	 * @return the deferred event queue
+	 */
+	private static DeferredQueue currentDeferred() {
+		LogicalProcess lp = currentProcess();
+		return lp == null ? deferred : lp.deferred;
+	}
+
+	/**
+	 * Gets the logical process that processes an event.
+	 * 
+	 * @param e the event
+	 * @return the id of the logical process
+	 */
+	private static int getLogicalProcess(SimEvent e) {
+		switch (e.getType()) {
+			case SimEvent.SEND:
+				return entities.get(e.getDestination()).getLogicalProcess(e);
+			case SimEvent.HOLD_DONE:
+				return entities.get(e.getSource()).getLogicalProcess();
+			case SimEvent.CREATE:
+				return ((SimEntity) e.getData()).getLogicalProcess();
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Runs the rest of the simulation in parallel. The pending events and the deferred events are
+	 * moved to the logical processes, which are then run window by window until there are no more
+	 * events or the termination time is reached. The events left at the end are moved back, so that
+	 * the simulation can be finished as usual.
+	 */
+	private static void runParallel() {
+		int numProcesses = 1;
+		for (SimEntity ent : entities) {
+			numProcesses = Math.max(numProcesses, ent.getLogicalProcess() + 1);
+		}
+		printMessage("Simulation: Running " + numProcesses + " logical processes in parallel from time " + clock);
+
+		processes = new LogicalProcess[numProcesses];
+		for (int i = 0; i < numProcesses; i++) {
+			processes[i] = new LogicalProcess(i, entities, clock);
+		}
+		for (SimEvent e = future.pollFirst(); e != null; e = future.pollFirst()) {
+			processes[getLogicalProcess(e)].future.addEvent(e);
+		}
+		for (Iterator<SimEvent> iter = deferred.iterator(); iter.hasNext();) {
+			SimEvent e = iter.next();
+			LogicalProcess lp = processes[getLogicalProcess(e)];
+			lp.deferred.addEvent(e);
+			lp.readyEntities.set(e.getDestination());
+		}
+		deferred.clear();
+		for (int i = readyEntities.nextSetBit(0); i >= 0; i = readyEntities.nextSetBit(i + 1)) {
+			processes[entities.get(i).getLogicalProcess()].readyEntities.set(i);
+		}
+		readyEntities.clear();
+		for (Map.Entry<Integer, Predicate> entry : waitPredicates.entrySet()) {
+			processes[entities.get(entry.getKey()).getLogicalProcess()].waitPredicates.put(entry.getKey(), entry.getValue());
+		}
+		waitPredicates.clear();
+
+		List<LogicalProcess> tasks = Arrays.asList(processes);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		boolean terminated = false;
+		try {
+			while (!abruptTerminate) {
+				double windowStart = Double.MAX_VALUE;
+				for (LogicalProcess lp : processes) {
+					windowStart = Math.min(windowStart, lp.nextEventTime());
+				}
+				if (windowStart == Double.MAX_VALUE) {
+					running = false;
+					printMessage("Simulation: No more future events");
+					break;
+				}
+				if (terminateAt > 0.0 && windowStart > terminateAt) {
+					terminateSimulation();
+					terminated = true;
+					break;
+				}
+
+				double windowEnd = windowStart + parallelLookahead;
+				if (terminateAt > 0.0) {
+					windowEnd = Math.min(windowEnd, Math.nextUp(terminateAt));
+				}
+				clock = windowStart;
+				for (LogicalProcess lp : processes) {
+					lp.windowEnd = windowEnd;
+				}
+				for (Future<Void> result : pool.invokeAll(tasks)) {
+					result.get();
+				}
+
+				// deliver the events exchanged during the window, in a deterministic order
+				for (LogicalProcess lp : processes) {
+					for (int i = 0; i < lp.outbox.size(); i++) {
+						SimEvent e = lp.outbox.get(i);
+						if (lp.outboxFirst.get(i)) {
+							processes[getLogicalProcess(e)].future.addEventFirst(e);
+						} else {
+							processes[getLogicalProcess(e)].future.addEvent(e);
+						}
+					}
+					lp.outbox.clear();
+					lp.outboxFirst.clear();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The parallel simulation has been interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("The parallel simulation has failed.", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+		// move what is left back to the sequential queues
+		for (LogicalProcess lp : processes) {
+			clock = Math.max(clock, lp.clock);
+			for (SimEvent e = lp.future.pollFirst(); e != null; e = lp.future.pollFirst()) {
+				future.addEvent(e);
+			}
+			for (Iterator<SimEvent> iter = lp.deferred.iterator(); iter.hasNext();) {
+				deferred.addEvent(iter.next());
+			}
+			readyEntities.or(lp.readyEntities);
+			waitPredicates.putAll(lp.waitPredicates);
+		}
+		if (terminated) {
+			clock = terminateAt;
+		}
+		processes = null;
+	}
+
 	/**
 	 * Internal method used to start the simulation. This method should <b>not</b> be used by user
 	 * simulations.
@@ -890,9 +1363,13 @@ public class CloudSim {
 				break;
 			}
 
+			if (parallelLookahead > 0 && clock >= parallelStartTime) {
+				runParallel();
+				break;
+			}
+
 			if (pauseAt != -1
-					&& ((future.size() > 0 && clock <= pauseAt && pauseAt <= future.iterator().next()
-							.eventTime()) || future.size() == 0 && pauseAt <= clock)) {
+					&& ((future.size() > 0 && clock <= pauseAt && pauseAt <= future.first().eventTime()) || future.size() == 0 && pauseAt <= clock)) {
 				pauseSimulation();
 				clock = pauseAt;
 			}
@@ -938,6 +1415,7 @@ public class CloudSim {
 		entitiesByName = null;
 		future = null;
 		deferred = null;
+		readyEntities = null;
 		clock = 0L;
 		running = false;
 
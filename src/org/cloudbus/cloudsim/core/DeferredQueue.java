@@ -8,15 +8,19 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
 /**
- * This class implements the deferred event queue used by {@link Simulation}. The event queue uses a
- * linked list to store the events.
- * 
+ * This class implements the deferred event queue used by {@link Simulation}. The events are kept in
+ * one mailbox per destination entity, indexed by the entity id, so that an entity only looks at the
+ * events that were sent to it. Each mailbox is a linked list that preserves the temporal order of
+ * the events.
+ *
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  * @see Simulation
@@ -24,25 +28,27 @@ import java.util.ListIterator;
  */
 public class DeferredQueue {
 
-	/** The list. */
-	private final List<SimEvent> list = new LinkedList<SimEvent>();
+	/** The mailboxes, indexed by destination entity id. */
+	private final List<LinkedList<SimEvent>> mailboxes = new ArrayList<LinkedList<SimEvent>>();
 
-	/** The max time. */
-	private double maxTime = -1;
+	/** The total number of events in the queue. */
+	private int size = 0;
 
 	/**
-	 * Adds a new event to the queue. Adding a new event to the queue preserves the temporal order
-	 * of the events.
-	 * 
+	 * Adds a new event to the mailbox of its destination. Adding a new event to the queue preserves
+	 * the temporal order of the events.
+	 *
 	 * @param newEvent The event to be added to the queue.
 	 */
 	public void addEvent(SimEvent newEvent) {
+		LinkedList<SimEvent> list = getMailbox(newEvent.getDestination(), true);
+		size++;
+
 		// The event has to be inserted as the last of all events
 		// with the same event_time(). Yes, this matters.
 		double eventTime = newEvent.eventTime();
-		if (eventTime >= maxTime) {
+		if (list.isEmpty() || eventTime >= list.getLast().eventTime()) {
 			list.add(newEvent);
-			maxTime = eventTime;
 			return;
 		}
 
@@ -61,28 +67,131 @@ public class DeferredQueue {
 	}
 
 	/**
-	 * Returns an iterator to the events in the queue.
-	 * 
+	 * Returns an iterator to the events in the queue, mailbox by mailbox.
+	 *
 	 * @return the iterator
 	 */
 	public Iterator<SimEvent> iterator() {
-		return list.iterator();
+		return new Iterator<SimEvent>() {
+
+			private int destination = -1;
+
+			private Iterator<SimEvent> current = null;
+
+			@Override
+			public boolean hasNext() {
+				while (current == null || !current.hasNext()) {
+					if (++destination >= mailboxes.size()) {
+						return false;
+					}
+					current = iterator(destination);
+				}
+				return true;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+
+			@Override
+			public void remove() {
+				if (current == null) {
+					throw new IllegalStateException();
+				}
+				current.remove();
+			}
+		};
+	}
+
+	/**
+	 * Returns an iterator to the events sent to a given entity.
+	 *
+	 * @param destination the id of the destination entity
+	 * @return the iterator
+	 */
+	public Iterator<SimEvent> iterator(int destination) {
+		final List<SimEvent> list = getMailbox(destination, false);
+		if (list == null) {
+			return new LinkedList<SimEvent>().iterator();
+		}
+
+		final Iterator<SimEvent> iterator = list.iterator();
+		return new Iterator<SimEvent>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public SimEvent next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				iterator.remove();
+				size--;
+			}
+		};
 	}
 
 	/**
 	 * Returns the size of this event queue.
-	 * 
+	 *
 	 * @return the number of events in the queue.
 	 */
 	public int size() {
-		return list.size();
+		return size;
+	}
+
+	/**
+	 * Returns the number of events sent to a given entity.
+	 *
+	 * @param destination the id of the destination entity
+	 * @return the number of events in the entity's mailbox.
+	 */
+	public int size(int destination) {
+		List<SimEvent> list = getMailbox(destination, false);
+		return list == null ? 0 : list.size();
 	}
 
 	/**
 	 * Clears the queue.
 	 */
 	public void clear() {
-		list.clear();
+		mailboxes.clear();
+		size = 0;
+	}
+
+	/**
+	 * Gets the mailbox of a given entity.
+	 *
+	 * @param destination the id of the destination entity
+	 * @param create whether a missing mailbox should be created
+	 * @return the mailbox, or <tt>null</tt> if it does not exist and should not be created
+	 */
+	private LinkedList<SimEvent> getMailbox(int destination, boolean create) {
+		if (destination < 0) {
+			throw new IllegalArgumentException("Invalid destination entity: " + destination);
+		}
+		while (create && mailboxes.size() <= destination) {
+			mailboxes.add(null);
+		}
+		if (destination >= mailboxes.size()) {
+			return null;
+		}
+
+		LinkedList<SimEvent> list = mailboxes.get(destination);
+		if (list == null && create) {
+			list = new LinkedList<SimEvent>();
+			mailboxes.set(destination, list);
+		}
+		return list;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+/**
+ * A handle to an event sent to the future event queue, returned by {@link CloudSim#sendCancellable}
+ * and the cancellable send and schedule methods of {@link SimEntity}. It allows the event to be cancelled in constant
+ * time, instead of searching the future event queue with a predicate as
+ * {@link CloudSim#cancelAll(int, org.cloudbus.cloudsim.core.predicates.Predicate)} does. A cancelled
+ * event stays in the queue and is dropped when it reaches its head.
+ * <p>
+ * The handle is detached from its event once the event is delivered, so that a recycled event (see
+ * {@link CloudSim#setEventPooling(boolean)}) cannot be cancelled through an old handle.
+ *
+ * @see SimEvent
+ */
+public final class EventHandle {
+
+	/** The event, or <tt>null</tt> once it is delivered or cancelled. */
+	private SimEvent event;
+
+	/** The time at which the event occurs. */
+	private final double time;
+
+	/**
+	 * Creates a handle and attaches it to an event.
+	 *
+	 * @param event the event
+	 */
+	EventHandle(SimEvent event) {
+		this.event = event;
+		time = event.eventTime();
+		event.setHandle(this);
+	}
+
+	/**
+	 * Cancels the event, unless it was already delivered or cancelled.
+	 *
+	 * @return <tt>true</tt> if the event was cancelled
+	 */
+	public boolean cancel() {
+		SimEvent e = event;
+		if (e == null) {
+			return false;
+		}
+		e.cancel();
+		return true;
+	}
+
+	/**
+	 * Checks if the event is still to be delivered.
+	 *
+	 * @return <tt>true</tt> if the event was neither delivered nor cancelled
+	 */
+	public boolean isPending() {
+		return event != null;
+	}
+
+	/**
+	 * Gets the simulation time at which the event occurs.
+	 *
+	 * @return the time
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Detaches the handle from its event, when the event is delivered or cancelled.
+	 */
+	void detach() {
+		event = null;
+	}
+
+}
@@ -10,22 +10,22 @@ package org.cloudbus.cloudsim.core;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
  * This class implements the future event queue used by {@link Simulation}. The event queue uses a
- * {@link TreeSet} in order to store the events.
+ * {@link TreeSet} in order to store the events. This is the default {@link EventQueue}.
  * 
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  * @see Simulation
  * @see java.util.TreeSet
+ * @see CalendarQueue
  */
-public class FutureQueue {
+public class FutureQueue implements EventQueue {
 
 	/** The sorted set. */
-	private final SortedSet<SimEvent> sortedSet = new TreeSet<SimEvent>();
+	private final TreeSet<SimEvent> sortedSet = new TreeSet<SimEvent>();
 
 	/** The serial. */
 	private long serial = 0;
@@ -36,6 +36,7 @@ public class FutureQueue {
 	 * 
 	 * @param newEvent The event to be put in the queue.
 	 */
+	@Override
 	public void addEvent(SimEvent newEvent) {
 		newEvent.setSerial(serial++);
 		sortedSet.add(newEvent);
@@ -46,16 +47,38 @@ public class FutureQueue {
 	 * 
 	 * @param newEvent The event to be put in the queue.
 	 */
+	@Override
 	public void addEventFirst(SimEvent newEvent) {
 		newEvent.setSerial(0);
 		sortedSet.add(newEvent);
 	}
 
+	/**
+	 * Returns the first (earliest) event of the queue without removing it.
+	 * 
+	 * @return the first event, or <tt>null</tt> if the queue is empty
+	 */
+	@Override
+	public SimEvent first() {
+		return sortedSet.isEmpty() ? null : sortedSet.first();
+	}
+
+	/**
+	 * Removes and returns the first (earliest) event of the queue.
+	 * 
+	 * @return the first event, or <tt>null</tt> if the queue is empty
+	 */
+	@Override
+	public SimEvent pollFirst() {
+		return sortedSet.pollFirst();
+	}
+
 	/**
 	 * Returns an iterator to the queue.
 	 * 
 	 * @return the iterator
 	 */
+	@Override
 	public Iterator<SimEvent> iterator() {
 		return sortedSet.iterator();
 	}
@@ -65,6 +88,7 @@ public class FutureQueue {
 	 * 
 	 * @return the size
 	 */
+	@Override
 	public int size() {
 		return sortedSet.size();
 	}
@@ -75,6 +99,7 @@ public class FutureQueue {
 	 * @param event the event
 	 * @return true, if successful
 	 */
+	@Override
 	public boolean remove(SimEvent event) {
 		return sortedSet.remove(event);
 	}
@@ -85,6 +110,7 @@ public class FutureQueue {
 	 * @param events the events
 	 * @return true, if successful
 	 */
+	@Override
 	public boolean removeAll(Collection<SimEvent> events) {
 		return sortedSet.removeAll(events);
 	}
@@ -92,6 +118,7 @@ public class FutureQueue {
 	/**
 	 * Clears the queue.
 	 */
+	@Override
 	public void clear() {
 		sortedSet.clear();
 	}
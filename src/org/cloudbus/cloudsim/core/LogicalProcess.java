@@ -0,0 +1,212 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+
+/**
+ * A logical process of the parallel simulation engine. Each logical process owns a subset of the
+ * entities and has its own future and deferred event queues and its own clock. During a time
+ * window it processes, on a worker thread, the events of its entities whose time is before the end
+ * of the window. Events sent to an entity of another logical process are kept in an outbox and are
+ * delivered by {@link CloudSim} when all logical processes have finished the window.
+ * <p>
+ * Inside a logical process the events are dispatched as in the process-interaction mode of
+ * {@link CloudSim}.
+ *
+ * @see CloudSim#setParallelExecution(double, double, int)
+ */
+final class LogicalProcess implements Callable<Void> {
+
+	/** The id of this logical process. */
+	final int id;
+
+	/** The entities of the simulation (all of them, not only the ones of this process). */
+	private final List<SimEntity> entities;
+
+	/** The future event queue. */
+	final EventQueue future = new FutureQueue();
+
+	/** The deferred event queue. */
+	final DeferredQueue deferred = new DeferredQueue();
+
+	/** The ids of the entities that have to be run in the next clock tick. */
+	final BitSet readyEntities = new BitSet();
+
+	/** The predicates used in entity wait methods. */
+	final Map<Integer, Predicate> waitPredicates = new HashMap<Integer, Predicate>();
+
+	/** The events sent to other logical processes during the current window. */
+	final List<SimEvent> outbox = new ArrayList<SimEvent>();
+
+	/** Whether the event at the same position in the outbox was sent with priority. */
+	final BitSet outboxFirst = new BitSet();
+
+	/** The clock of this logical process. */
+	double clock;
+
+	/** The (exclusive) end of the current window. */
+	double windowEnd;
+
+	/**
+	 * Creates a new logical process.
+	 *
+	 * @param id the id of the logical process
+	 * @param entities the entities of the simulation
+	 * @param clock the initial clock
+	 */
+	LogicalProcess(int id, List<SimEntity> entities, double clock) {
+		this.id = id;
+		this.entities = entities;
+		this.clock = clock;
+	}
+
+	/**
+	 * Schedules an event sent by an entity of this logical process.
+	 *
+	 * @param e the event
+	 * @param first whether the event has priority over the events of the same time
+	 * @param destination the logical process of the event
+	 */
+	void schedule(SimEvent e, boolean first, int destination) {
+		if (destination == id) {
+			if (first) {
+				future.addEventFirst(e);
+			} else {
+				future.addEvent(e);
+			}
+			return;
+		}
+
+		if (e.eventTime() < windowEnd) {
+			throw new IllegalStateException("Lookahead violation: " + CloudSim.getEntityName(e.getSource())
+					+ " sent an event with tag " + e.getTag() + " to " + CloudSim.getEntityName(e.getDestination())
+					+ " in logical process " + destination + " for time " + e.eventTime()
+					+ ", before the end of the current window at " + windowEnd);
+		}
+		outboxFirst.set(outbox.size(), first);
+		outbox.add(e);
+	}
+
+	/**
+	 * Gets the time of the earliest work of this logical process, i.e. its clock if some entities
+	 * still have to be run, or else the time of its earliest future event.
+	 *
+	 * @return the time, or {@link Double#MAX_VALUE} if there is nothing to do
+	 */
+	double nextEventTime() {
+		if (!readyEntities.isEmpty()) {
+			return clock;
+		}
+		SimEvent first = CloudSim.firstLiveEvent(future);
+		return first == null ? Double.MAX_VALUE : first.eventTime();
+	}
+
+	/**
+	 * Runs the current window, i.e. processes all the events before {@link #windowEnd}.
+	 */
+	@Override
+	public Void call() {
+		CloudSim.enterLogicalProcess(this);
+		try {
+			while (true) {
+				runReadyEntities();
+
+				SimEvent first = CloudSim.firstLiveEvent(future);
+				if (first == null || first.eventTime() >= windowEnd) {
+					break;
+				}
+				double time = first.eventTime();
+				processEvent(future.pollFirst());
+				SimEvent next = CloudSim.firstLiveEvent(future);
+				while (next != null && next.eventTime() == time) {
+					processEvent(future.pollFirst());
+					next = CloudSim.firstLiveEvent(future);
+				}
+			}
+		} finally {
+			CloudSim.enterLogicalProcess(null);
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the entities with new mail or that were woken up, in id order.
+	 */
+	private void runReadyEntities() {
+		for (int i = readyEntities.nextSetBit(0); i >= 0; i = readyEntities.nextSetBit(i + 1)) {
+			readyEntities.clear(i);
+			SimEntity ent = entities.get(i);
+			if (ent.getState() == SimEntity.RUNNABLE) {
+				ent.run();
+			}
+		}
+	}
+
+	/**
+	 * Processes an event.
+	 *
+	 * @param e the event
+	 */
+	private void processEvent(SimEvent e) {
+		if (e.eventTime() < clock) {
+			throw new IllegalArgumentException("Past event detected.");
+		}
+		clock = e.eventTime();
+		e.detachHandle();
+
+		switch (e.getType()) {
+			case SimEvent.SEND:
+				int dest = e.getDestination();
+				if (dest < 0) {
+					throw new IllegalArgumentException("Attempt to send to a null entity detected.");
+				}
+				SimEntity destEnt = entities.get(dest);
+				if (destEnt.getState() == SimEntity.WAITING) {
+					Integer destObj = Integer.valueOf(dest);
+					Predicate p = waitPredicates.get(destObj);
+					if ((p == null) || (e.getTag() == 9999) || (p.match(e))) {
+						destEnt.setEventBuffer(e);
+						destEnt.setState(SimEntity.RUNNABLE);
+						waitPredicates.remove(destObj);
+					} else {
+						deferred.addEvent(e);
+					}
+				} else {
+					deferred.addEvent(e);
+				}
+				readyEntities.set(dest);
+				break;
+
+			case SimEvent.HOLD_DONE:
+				int src = e.getSource();
+				if (src < 0) {
+					throw new IllegalArgumentException("Null entity holding.");
+				}
+				entities.get(src).setState(SimEntity.RUNNABLE);
+				readyEntities.set(src);
+				break;
+
+			case SimEvent.ENULL:
+				throw new IllegalArgumentException("Event has a null type.");
+
+			default:
+				throw new IllegalStateException("Event of type " + e.getType()
+						+ " can't be processed while running in parallel.");
+		}
+	}
+
+}
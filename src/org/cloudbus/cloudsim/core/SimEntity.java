@@ -42,6 +42,9 @@ public abstract class SimEntity implements Cloneable {
 	/** The entity's current state. */
 	private int state;
 
+	/** The logical process the entity is run by when the simulation runs in parallel. */
+	private int logicalProcess;
+
 	/**
 	 * Creates a new entity.
 	 * 
@@ -75,6 +78,44 @@ public abstract class SimEntity implements Cloneable {
 		return id;
 	}
 
+	/**
+	 * Gets the logical process the entity is run by when the simulation runs in parallel.
+	 * 
+	 * @return the id of the logical process
+	 * @see CloudSim#setParallelExecution(double, double, int)
+	 */
+	public int getLogicalProcess() {
+		return logicalProcess;
+	}
+
+	/**
+	 * Sets the logical process the entity is run by when the simulation runs in parallel. Entities
+	 * exchanging events with a delay shorter than the lookahead must be in the same logical process.
+	 * 
+	 * @param logicalProcess the id of the logical process
+	 * @see CloudSim#setParallelExecution(double, double, int)
+	 */
+	public void setLogicalProcess(int logicalProcess) {
+		if (logicalProcess < 0) {
+			throw new IllegalArgumentException("Invalid logical process: " + logicalProcess);
+		}
+		this.logicalProcess = logicalProcess;
+	}
+
+	/**
+	 * Gets the logical process that processes an event sent to this entity. By default all the
+	 * events of the entity are processed by its own logical process. Entities whose state is
+	 * partitioned by sender (e.g. the two directions of a network link) can override this method to
+	 * process each event next to the entity that sent it; they must then be safe to be run by several
+	 * logical processes at the same time.
+	 * 
+	 * @param ev the event
+	 * @return the id of the logical process
+	 */
+	protected int getLogicalProcess(SimEvent ev) {
+		return logicalProcess;
+	}
+
 	// The schedule functions
 
 	/**
@@ -93,6 +134,37 @@ public abstract class SimEntity implements Cloneable {
 		CloudSim.send(id, dest, delay, tag, data);
 	}
 
+	/**
+	 * Send an event to another entity by id number, with data, keeping a handle through which it can
+	 * be cancelled in constant time. The other schedule methods create no handle. Note that the tag
+	 * <code>9999</code> is reserved.
+	 * 
+	 * @param dest The unique id number of the destination entity
+	 * @param delay How long from the current simulation time the event should be sent
+	 * @param tag An user-defined number representing the type of event.
+	 * @param data The data to be sent with the event.
+	 * @return the handle of the event, or <tt>null</tt> if it was not sent
+	 */
+	public EventHandle scheduleCancellable(int dest, double delay, int tag, Object data) {
+		if (!CloudSim.running()) {
+			return null;
+		}
+		return CloudSim.sendCancellable(id, dest, delay, tag, data);
+	}
+
+	/**
+	 * Send an event to another entity by id number and with <b>no</b> data, keeping a handle through
+	 * which it can be cancelled in constant time. Note that the tag <code>9999</code> is reserved.
+	 * 
+	 * @param dest The unique id number of the destination entity
+	 * @param delay How long from the current simulation time the event should be sent
+	 * @param tag An user-defined number representing the type of event.
+	 * @return the handle of the event, or <tt>null</tt> if it was not sent
+	 */
+	public EventHandle scheduleCancellable(int dest, double delay, int tag) {
+		return scheduleCancellable(dest, delay, tag, null);
+	}
+
 	/**
 	 * Send an event to another entity by id number and with <b>no</b> data. Note that the tag
 	 * <code>9999</code> is reserved.
@@ -324,7 +396,10 @@ public abstract class SimEntity implements Cloneable {
 	}
 
 	/**
-	 * Cancel the first event matching a predicate waiting in the entity's future queue.
+	 * Cancel the first event matching a predicate waiting in the entity's future queue. This searches
+	 * the whole queue; an event sent by {@link #scheduleCancellable(int, double, int, Object)} or
+	 * {@link #sendCancellable(int, double, int, Object)} can be cancelled in constant time through its
+	 * {@link EventHandle}.
 	 * 
 	 * @param p The event selection predicate
 	 * @return The number of events cancelled (0 or 1)
@@ -404,6 +479,7 @@ public abstract class SimEntity implements Cloneable {
 
 		while (ev != null) {
 			processEvent(ev);
+			CloudSim.releaseEvent(ev);
 			if (state != RUNNABLE) {
 				break;
 			}
@@ -518,8 +594,49 @@ public abstract class SimEntity implements Cloneable {
 	 * @post $none
 	 */
 	protected void send(int entityId, double delay, int cloudSimTag, Object data) {
+		send(entityId, delay, cloudSimTag, data, false);
+	}
+
+	/**
+	 * Sends an event/message to another entity by <tt>delaying</tt> the simulation time from the
+	 * current time, with a tag representing the event type, keeping a handle through which it can be
+	 * cancelled in constant time. The other send methods create no handle.
+	 * 
+	 * @param entityId the id number of the destination entity
+	 * @param delay how long from the current simulation time the event should be sent. If delay is
+	 *            a negative number, then it will be changed to 0
+	 * @param cloudSimTag an user-defined number representing the type of an event/message
+	 * @param data A reference to data to be sent with the event
+	 * @return the handle of the event, or <tt>null</tt> if it was not sent
+	 * @pre entityID > 0
+	 * @pre delay >= 0.0
+	 * @post $none
+	 */
+	protected EventHandle sendCancellable(int entityId, double delay, int cloudSimTag, Object data) {
+		return send(entityId, delay, cloudSimTag, data, true);
+	}
+
+	/**
+	 * Sends an event/message to another entity by <tt>delaying</tt> the simulation time from the
+	 * current time, with a tag representing the event type, keeping a handle through which it can be
+	 * cancelled in constant time.
+	 * 
+	 * @param entityId the id number of the destination entity
+	 * @param delay how long from the current simulation time the event should be sent. If delay is
+	 *            a negative number, then it will be changed to 0
+	 * @param cloudSimTag an user-defined number representing the type of an event/message
+	 * @return the handle of the event, or <tt>null</tt> if it was not sent
+	 * @pre entityID > 0
+	 * @pre delay >= 0.0
+	 * @post $none
+	 */
+	protected EventHandle sendCancellable(int entityId, double delay, int cloudSimTag) {
+		return send(entityId, delay, cloudSimTag, null, true);
+	}
+
+	private EventHandle send(int entityId, double delay, int cloudSimTag, Object data, boolean cancellable) {
 		if (entityId < 0) {
-			return;
+			return null;
 		}
 
 		// if delay is -ve, then it doesn't make sense. So resets to 0.0
@@ -533,7 +650,7 @@ public abstract class SimEntity implements Cloneable {
 
 		if (entityId < 0) {
 			Log.printLine(getName() + ".send(): Error - " + "invalid entity id " + entityId);
-			return;
+			return null;
 		}
 
 		int srcId = getId();
@@ -541,7 +658,11 @@ public abstract class SimEntity implements Cloneable {
 			delay += getNetworkDelay(srcId, entityId);
 		}
 
+		if (cancellable) {
+			return scheduleCancellable(entityId, delay, cloudSimTag, data);
+		}
 		schedule(entityId, delay, cloudSimTag, data);
+		return null;
 	}
 
 	/**
@@ -18,10 +18,10 @@ package org.cloudbus.cloudsim.core;
 public class SimEvent implements Cloneable, Comparable<SimEvent> {
 
 	/** internal event type **/
-	private final int etype;
+	private int etype;
 
 	/** time at which event should occur **/
-	private final double time;
+	private double time;
 
 	/** time that the event was removed from the queue for service **/
 	private double endWaitingTime;
@@ -33,13 +33,19 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	private int entDst;
 
 	/** the user defined type of the event **/
-	private final int tag;
+	private int tag;
 
 	/** any data the event is carrying **/
-	private final Object data;
+	private Object data;
 
 	private long serial = -1;
 
+	/** the handle through which the event can be cancelled, or null **/
+	private EventHandle handle;
+
+	/** whether the event was cancelled through its handle **/
+	private volatile boolean cancelled;
+
 	// Internal event types
 
 	public static final int ENULL = 0;
@@ -82,6 +88,66 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 		data = null;
 	}
 
+	/**
+	 * Re-initialises a recycled event, as if it had been created with
+	 * {@link #SimEvent(int, double, int, int, int, Object)}.
+	 */
+	void init(int evtype, double time, int src, int dest, int tag, Object edata) {
+		etype = evtype;
+		this.time = time;
+		endWaitingTime = 0;
+		entSrc = src;
+		entDst = dest;
+		this.tag = tag;
+		data = edata;
+		serial = -1;
+		handle = null;
+		cancelled = false;
+	}
+
+	/**
+	 * Drops the references held by an event that is going back to the pool.
+	 */
+	void clear() {
+		etype = ENULL;
+		data = null;
+	}
+
+	/**
+	 * Attaches a handle to the event.
+	 */
+	void setHandle(EventHandle handle) {
+		this.handle = handle;
+	}
+
+	/**
+	 * Detaches the handle of the event, if any, once the event is delivered or removed from the queue.
+	 */
+	void detachHandle() {
+		if (handle != null) {
+			handle.detach();
+			handle = null;
+		}
+	}
+
+	/**
+	 * Marks the event as cancelled. It is left in the future event queue, and dropped when it reaches
+	 * the head of the queue.
+	 */
+	void cancel() {
+		cancelled = true;
+		detachHandle();
+	}
+
+	/**
+	 * Checks if the event was cancelled through its handle.
+	 * 
+	 * @return <tt>true</tt> if it was cancelled
+	 */
+	boolean isCancelled() {
+		return cancelled;
+	}
+
 	protected void setSerial(long serial) {
 		this.serial = serial;
 	}
@@ -191,10 +191,10 @@ public class NetworkDatacenter extends Datacenter {
 			if (estimatedFinishTime > 0.0) { // if this cloudlet is in the exec
 				// time to process the cloudlet
 				estimatedFinishTime += fileTransferTime;
-				send(getId(), estimatedFinishTime, CloudSimTags.VM_DATACENTER_EVENT);
+				sendDatacenterEvent(estimatedFinishTime);
 
 				// event to update the stages
-				send(getId(), 0.0001, CloudSimTags.VM_DATACENTER_EVENT);
+				sendDatacenterEvent(0.0001);
 			}
 
 			if (ack) {
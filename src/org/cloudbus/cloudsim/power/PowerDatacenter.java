@@ -86,8 +86,8 @@ public class PowerDatacenter extends Datacenter {
 	@Override
 	protected void updateCloudletProcessing() {
 		if (getCloudletSubmitted() == -1 || getCloudletSubmitted() == CloudSim.clock()) {
-			CloudSim.cancelAll(getId(), new PredicateType(CloudSimTags.VM_DATACENTER_EVENT));
-			schedule(getId(), getSchedulingInterval(), CloudSimTags.VM_DATACENTER_EVENT);
+			cancelDatacenterEvents();
+			sendDatacenterEvent(getSchedulingInterval());
 			return;
 		}
 		
@@ -140,8 +140,8 @@ public class PowerDatacenter extends Datacenter {
 
 			// schedules an event to the next time
 			if (minTime != Double.MAX_VALUE) {
-				CloudSim.cancelAll(getId(), new PredicateType(CloudSimTags.VM_DATACENTER_EVENT));
-				send(getId(), getSchedulingInterval(), CloudSimTags.VM_DATACENTER_EVENT);
+				cancelDatacenterEvents();
+				sendDatacenterEvent(getSchedulingInterval());
 			}
 
 			setLastProcessTime(currentTime);
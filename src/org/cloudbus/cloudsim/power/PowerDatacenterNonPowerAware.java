@@ -18,7 +18,6 @@ import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmAllocationPolicy;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
-import org.cloudbus.cloudsim.core.predicates.PredicateType;
 
 /**
  * PowerDatacenterNonPowerAware is a class that represents a non-power aware data center in the
@@ -69,8 +68,8 @@ public class PowerDatacenterNonPowerAware extends PowerDatacenter {
 	@Override
 	protected void updateCloudletProcessing() {
 		if (getCloudletSubmitted() == -1 || getCloudletSubmitted() == CloudSim.clock()) {
-			CloudSim.cancelAll(getId(), new PredicateType(CloudSimTags.VM_DATACENTER_EVENT));
-			schedule(getId(), getSchedulingInterval(), CloudSimTags.VM_DATACENTER_EVENT);
+			cancelDatacenterEvents();
+			sendDatacenterEvent(getSchedulingInterval());
 			return;
 		}
 		double currentTime = CloudSim.clock();
@@ -175,9 +174,9 @@ public class PowerDatacenterNonPowerAware extends PowerDatacenter {
 
 			// schedules an event to the next time
 			if (minTime != Double.MAX_VALUE) {
-				CloudSim.cancelAll(getId(), new PredicateType(CloudSimTags.VM_DATACENTER_EVENT));
+				cancelDatacenterEvents();
 				// CloudSim.cancelAll(getId(), CloudSim.SIM_ANY);
-				send(getId(), getSchedulingInterval(), CloudSimTags.VM_DATACENTER_EVENT);
+				sendDatacenterEvent(getSchedulingInterval());
 			}
 
 			setLastProcessTime(currentTime);
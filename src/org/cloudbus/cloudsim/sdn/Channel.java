@@ -8,8 +8,12 @@
 
 package org.cloudbus.cloudsim.sdn;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.CloudSim;
@@ -21,6 +25,11 @@ import org.cloudbus.cloudsim.core.CloudSim;
  * but here we consider only the time shared case, representing a shared
  * channel among different simultaneous package transmissions.
  *
+ * Transmissions are processed with virtual time: every active transmission gets the same share of the bandwidth,
+ * so the channel only counts the amount sent to each of them since it started, and a transmission finishes once
+ * this virtual time reaches its finish tag. Transmissions are kept in a heap by finish tag, and updating the
+ * channel only touches the ones that finish.
+ *
  * This is logical channel. One physical link (class Link) can hold more than one logical channels (class Channel).
  * Channel is directional. It is one way.
  * 
@@ -35,14 +44,39 @@ public class Channel {
 	private double allocatedBandwidth; // Actual bandwidth allocated to the channel
 	private double previousTime;
 
-	private LinkedList<Transmission> inTransmission;
+	private PriorityQueue<Transmission> inTransmission;
 	private LinkedList<Transmission> completed;
 	
+	// Amount of data sent to each active transmission since the channel was last empty
+	private double virtualTime;
+	private long transmissionSequence;
+	
 	private final int srcId;
 	private final int dstId;
 	private final int chId;
 	private final double requestedBandwidth;	// Requested by user
 	
+	/**
+	 * Orders transmissions by finish tag, then in the order they were added.
+	 */
+	private static final Comparator<Transmission> FINISH_ORDER = new Comparator<Transmission>() {
+		@Override
+		public int compare(Transmission t1, Transmission t2) {
+			int result = Double.compare(t1.getFinishTag(), t2.getFinishTag());
+			return (result != 0) ? result : Long.compare(t1.getSequence(), t2.getSequence());
+		}
+	};
+	
+	/**
+	 * Orders transmissions in the order they were added.
+	 */
+	private static final Comparator<Transmission> SEQUENCE_ORDER = new Comparator<Transmission>() {
+		@Override
+		public int compare(Transmission t1, Transmission t2) {
+			return Long.compare(t1.getSequence(), t2.getSequence());
+		}
+	};
+	
 	public Channel(int chId, int srcId, int dstId, List<Node> nodes, List<Link> links, double bandwidth) {
 		this.chId = chId;
 		this.srcId = srcId;
@@ -51,7 +85,7 @@ public class Channel {
 		this.links = links;
 		this.allocatedBandwidth = bandwidth;
 		this.requestedBandwidth = bandwidth;
-		this.inTransmission = new LinkedList<Transmission>();
+		this.inTransmission = new PriorityQueue<Transmission>(11, FINISH_ORDER);
 		this.completed = new LinkedList<Transmission>();
 	}
 	
@@ -205,61 +239,73 @@ public class Channel {
 			return false;	// Nothing changed
 
 		//update the amount of transmission 
-		long processedThisRound =  Math.round(timeSpent*getAllocatedBandwidthPerTransmission());
+		double processedThisRound = timeSpent*getAllocatedBandwidthPerTransmission();
+		virtualTime += processedThisRound;
 		
 		//update transmission table; remove finished transmission
-		LinkedList<Transmission> completedTransmissions = new LinkedList<Transmission>();
-		for(Transmission transmission: inTransmission){
-			transmission.addCompletedLength(processedThisRound);
-			
-			if (transmission.isCompleted()){
-				completedTransmissions.add(transmission);
-				this.completed.add(transmission);
-			}	
+		List<Transmission> completedTransmissions = new ArrayList<Transmission>();
+		while(!inTransmission.isEmpty() && isCompleted(inTransmission.peek())) {
+			Transmission transmission = inTransmission.poll();
+			transmission.addCompletedLength(transmission.getSize());
+			completedTransmissions.add(transmission);
 		}
-		
-		this.inTransmission.removeAll(completedTransmissions);
+		Collections.sort(completedTransmissions, SEQUENCE_ORDER);
+		this.completed.addAll(completedTransmissions);
 		previousTime=currentTime;
 
 		Log.printLine(CloudSim.clock() + ": Channel.updatePackageProcessing() ("+this.toString()+"):Time spent:"+timeSpent+
-				", BW/host:"+getAllocatedBandwidthPerTransmission()+", Processed:"+processedThisRound);
+				", BW/host:"+getAllocatedBandwidthPerTransmission()+", Processed:"+Math.round(processedThisRound));
 		
 		if(completedTransmissions.isEmpty())
 			return false;	// Nothing changed
 		return true;
 	}
 	
+	// Transmitted data is counted in whole bytes, so less than half a byte left is finished.
+	private boolean isCompleted(Transmission t) {
+		return t.getFinishTag() - virtualTime < 0.5;
+	}
+	
+	// Amount of data of a transmission not sent yet
+	private double getRemainingSize(Transmission t) {
+		return Math.max(t.getFinishTag() - virtualTime, 0);
+	}
+	
 	// Estimated finish time of one transmission
 	private double estimateFinishTime(Transmission t) {
 		double bw = getAllocatedBandwidthPerTransmission();
-		
+
 		if(bw == 0) {
 			return Double.POSITIVE_INFINITY;
 		}
-		
-		double eft= (double)t.getSize()/bw;
+
+		double eft= getRemainingSize(t)/bw;
 		return eft;
 	}
+
+	/**
+	 * Time at which the next transmission finishes, at the current bandwidth.
+	 * @return the simulation time, or Double.POSITIVE_INFINITY if there is no transmission or no bandwidth
+	 */
+	public double getNextFinishTime() {
+		Transmission next = inTransmission.peek();
+		double bw = getAllocatedBandwidthPerTransmission();
+		
+		if(next == null || bw == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return previousTime + NetworkOperatingSystem.round(getRemainingSize(next)/bw);
+	}
 	
 	// The earliest finish time among all transmissions in this channel 
 	public double nextFinishTime() {
-		//now, predicts delay to next transmission completion
-		double delay = Double.POSITIVE_INFINITY;
-
-		for (Transmission transmission:this.inTransmission){
-			double eft = estimateFinishTime(transmission);
-			if (eft<delay)
-				delay = eft;
-		}
+		double finishTime = getNextFinishTime();
 		
-		if(delay == Double.POSITIVE_INFINITY) {
-			return delay;
-		}
-		else if(delay < 0) {
-			throw new IllegalArgumentException("Channel.nextFinishTime: delay"+delay);
+		if(finishTime == Double.POSITIVE_INFINITY) {
+			return finishTime;
 		}
 
-		delay=NetworkOperatingSystem.round(delay);
+		double delay = NetworkOperatingSystem.round(Math.max(finishTime - CloudSim.clock(), 0));
 
 		if (delay < NetworkOperatingSystem.getMinTimeBetweenNetworkEvents()) { 
 			//Log.printLine(CloudSim.clock() + ":Channel: delay is too short: "+ delay);
@@ -276,9 +322,17 @@ public class Channel {
 	 * 
 	 */
 	public double addTransmission(Transmission transmission){
-		if (this.inTransmission.isEmpty()) 
+		if (this.inTransmission.isEmpty()) {
 			previousTime=CloudSim.clock();
+			virtualTime=0;
+		}
+		else {
+			// The share of the others changes from now on
+			updatePackageProcessing();
+		}
 		
+		transmission.setFinishTag(virtualTime + transmission.getSize());
+		transmission.setSequence(transmissionSequence++);
 		this.inTransmission.add(transmission);
 		double eft = estimateFinishTime(transmission);
 
@@ -291,8 +345,16 @@ public class Channel {
 	 * 
 	 */
 	public void removeTransmission(Transmission transmission){
+		updatePackageProcessing();
 		inTransmission.remove(transmission);
 	}
+	
+	/**
+	 * @return true if some transmissions finished and were not taken by {@link #getArrivedPackages()} yet
+	 */
+	public boolean hasArrivedPackages() {
+		return !completed.isEmpty();
+	}
 
 	/**
 	 * @return list of Packages whose transmission finished, or empty
@@ -322,6 +384,14 @@ public class Channel {
 				+"): BW:"+allocatedBandwidth+", Transmissions:"+inTransmission.size();
 	}
 
+	public List<Node> getNodes() {
+		return nodes;
+	}
+
+	public List<Link> getLinks() {
+		return links;
+	}
+
 	public Node getLastNode() {
 		Node node = this.nodes.get(this.nodes.size()-1);
 		return node;
@@ -8,14 +8,10 @@
 
 package org.cloudbus.cloudsim.sdn;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import org.cloudbus.cloudsim.Log;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
-
 
 /**
  * ForwardingRule class is to represent a forwarding table in each switch.
@@ -27,10 +23,41 @@ import com.google.common.collect.Table;
  */
 public class ForwardingRule {
 	
-	Table<Integer, Integer, Map<Integer,Node>> table;
+	// Bits of the packed key given to the source and destination VM addresses; the flow ID takes the rest
+	private static final int ADDRESS_BITS = 22;
+	private static final int FLOW_BITS = 64 - 2 * ADDRESS_BITS;
+	
+	LongObjectHashMap<Node> table;
 
 	public ForwardingRule(){
-		this.table = HashBasedTable.create();
+		this.table = new LongObjectHashMap<Node>();
+	}
+	
+	/**
+	 * Packs the source, destination and flow of a route into a single key, so that routes and
+	 * channels are looked up without boxing or building a string.
+	 * @param src source VM address, below 2^22
+	 * @param dest destination VM address, below 2^22
+	 * @param flowId flow ID, -1 for the default flow and below 2^20 - 1 otherwise
+	 * @return the key
+	 */
+	public static long getKey(int src, int dest, int flowId) {
+		if(src < 0 || src >= 1 << ADDRESS_BITS || dest < 0 || dest >= 1 << ADDRESS_BITS
+				|| flowId < -1 || flowId >= (1 << FLOW_BITS) - 1)
+			throw new IllegalArgumentException("Route out of key range: "+src+"->"+dest+"(flow:"+flowId+")");
+		return (long) src << (ADDRESS_BITS + FLOW_BITS) | (long) dest << FLOW_BITS | (flowId + 1);
+	}
+	
+	static int getSrc(long key) {
+		return (int) (key >>> (ADDRESS_BITS + FLOW_BITS));
+	}
+	
+	static int getDest(long key) {
+		return (int) (key >>> FLOW_BITS) & ((1 << ADDRESS_BITS) - 1);
+	}
+	
+	static int getFlowId(long key) {
+		return (int) (key & ((1L << FLOW_BITS) - 1)) - 1;
 	}
 	
 	public void clear(){
@@ -38,57 +65,43 @@ public class ForwardingRule {
 	}
 	
 	public void addRule(int src, int dest, int flowId, Node to){
-		Map<Integer, Node> map = table.get(src, dest);
-		if(map == null)
-			map = new HashMap<Integer, Node>();
-		map.put(flowId, to);
-		table.put(src, dest, map);
+		table.put(getKey(src, dest, flowId), to);
 	}
 	
 	public void removeRule(int src, int dest, int flowId){
-		Map<Integer, Node> map = table.get(src, dest);
-		map.remove(flowId);
-		if(map.isEmpty())
-			table.remove(src, dest);
-		else
-			table.put(src, dest, map);
+		table.remove(getKey(src, dest, flowId));
 	}
 
 	public Node getRoute(int src, int dest, int flowId) {
-		Map<Integer, Node> map = table.get(src, dest);
-		if(map==null)
-			return null;
-		
-		return map.get(flowId);
+		return table.get(getKey(src, dest, flowId));
 	}
 	
 	public void printForwardingTable(String thisNode) {
-		for(Integer rowK:table.rowKeySet()) {
-			Map<Integer, Map<Integer,Node>> row = table.row(rowK);
-			for(Integer colK: row.keySet()) {
-				Map<Integer, Node> nodes = row.get(colK);
-				
-				for(Integer flowId:nodes.keySet()) {
-					Node node = nodes.get(flowId);
-					if(node instanceof SDNHost) {
-						Log.printLine(thisNode + ": "+
-								NetworkOperatingSystem.debugVmIdName.get(rowK) + "->" + 
-								NetworkOperatingSystem.debugVmIdName.get(colK) + "->"+"(flow:"+flowId+")" + 
-								((SDNHost) node).getName());
-					}
-					else if(node instanceof Switch) {
-						Log.printLine(thisNode + ": "+
-								NetworkOperatingSystem.debugVmIdName.get(rowK) + "->" + 
-								NetworkOperatingSystem.debugVmIdName.get(colK) + "->"+"(flow:"+flowId+")" + 
-								((Switch) node).getName());
-					}
-					else {
-						Log.printLine(thisNode + ": "+
-								NetworkOperatingSystem.debugVmIdName.get(rowK) + "->" + 
-								NetworkOperatingSystem.debugVmIdName.get(colK) + "->"+"(flow:"+flowId+")" + 
-								node.getAddress());
-					}
-				}
+		// Keys sort by source, destination and flow
+		long[] keys = table.keys();
+		Arrays.sort(keys);
+		for(long key:keys) {
+			int rowK = getSrc(key);
+			int colK = getDest(key);
+			int flowId = getFlowId(key);
+			Node node = table.get(key);
+			if(node instanceof SDNHost) {
+				Log.printLine(thisNode + ": "+
+						NetworkOperatingSystem.debugVmIdName.get(rowK) + "->" + 
+						NetworkOperatingSystem.debugVmIdName.get(colK) + "->"+"(flow:"+flowId+")" + 
+						((SDNHost) node).getName());
+			}
+			else if(node instanceof Switch) {
+				Log.printLine(thisNode + ": "+
+						NetworkOperatingSystem.debugVmIdName.get(rowK) + "->" + 
+						NetworkOperatingSystem.debugVmIdName.get(colK) + "->"+"(flow:"+flowId+")" + 
+						((Switch) node).getName());
+			}
+			else {
+				Log.printLine(thisNode + ": "+
+						NetworkOperatingSystem.debugVmIdName.get(rowK) + "->" + 
+						NetworkOperatingSystem.debugVmIdName.get(colK) + "->"+"(flow:"+flowId+")" + 
+						node.getAddress());
 			}
 		}
 	}
@@ -94,7 +94,11 @@ public class Link {
 		return latency;
 	}
 	
-	private List<Channel> getChannels(Node from) {
+	/**
+	 * Gets the channels going through this link in one direction.
+	 * @param from node the channels leave
+	 */
+	public List<Channel> getChannels(Node from) {
 		List<Channel> channels;
 		if(isUplink(from)) {
 			channels = this.upChannels;
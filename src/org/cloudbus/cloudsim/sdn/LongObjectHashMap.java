@@ -0,0 +1,216 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map from long keys to objects with open addressing and linear probing, so that looking up a key
+ * does not box it. Removed entries leave no tombstones, so the map does not degrade when entries
+ * come and go. Absent keys are mapped to <tt>null</tt>, which cannot be stored as a value.
+ *
+ * @since CloudSimSDN 1.0
+ */
+public class LongObjectHashMap<V> {
+
+	private static final long FREE = Long.MIN_VALUE;
+
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	// Keys of the entries, or FREE for empty slots
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	// Value mapped to the key FREE, which cannot be stored in a slot
+	private V freeKeyValue;
+
+	public LongObjectHashMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize number of entries the map should hold without growing
+	 */
+	public LongObjectHashMap(int expectedSize) {
+		int capacity = 2;
+		while (capacity * MAX_LOAD_FACTOR < expectedSize)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		values = new Object[capacity];
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int x = (int) (h ^ (h >>> 32));
+		return (x ^ (x >>> 16)) & (keys.length - 1);
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * @param key the key
+	 * @return the value, or null if the key is absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == FREE)
+			return freeKeyValue;
+		for (int i = slot(key); keys[i] != FREE; i = (i + 1) & (keys.length - 1)) {
+			if (keys[i] == key)
+				return (V) values[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Maps a key to a value.
+	 * @param key the key
+	 * @param value the value, not null
+	 * @return the previous value of the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("Null values are not supported");
+		if (key == FREE) {
+			V previous = freeKeyValue;
+			if (previous == null)
+				size++;
+			freeKeyValue = value;
+			return previous;
+		}
+		int i = slot(key);
+		for (; keys[i] != FREE; i = (i + 1) & (keys.length - 1)) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > keys.length * MAX_LOAD_FACTOR)
+			rehash(keys.length << 1);
+		return null;
+	}
+
+	/**
+	 * Removes a key.
+	 * @param key the key
+	 * @return the value the key had, or null if it was absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if (key == FREE) {
+			V previous = freeKeyValue;
+			if (previous != null)
+				size--;
+			freeKeyValue = null;
+			return previous;
+		}
+		int mask = keys.length - 1;
+		int i = slot(key);
+		for (; keys[i] != key; i = (i + 1) & mask) {
+			if (keys[i] == FREE)
+				return null;
+		}
+		V value = (V) values[i];
+		size--;
+		// shift back the following entries of the cluster which would no longer be found
+		int gap = i;
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		keys[gap] = FREE;
+		values[gap] = null;
+		return value;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		size = freeKeyValue != null ? 1 : 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE)
+				putSlot(oldKeys[i], oldValues[i]);
+		}
+	}
+
+	private void putSlot(long key, Object value) {
+		int i = slot(key);
+		while (keys[i] != FREE)
+			i = (i + 1) & (keys.length - 1);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		Arrays.fill(values, null);
+		freeKeyValue = null;
+		size = 0;
+	}
+
+	/**
+	 * Gets the keys, in no particular order.
+	 * @return a new array with the keys
+	 */
+	public long[] keys() {
+		long[] result = new long[size];
+		int n = 0;
+		if (freeKeyValue != null)
+			result[n++] = FREE;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE)
+				result[n++] = keys[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the values, in no particular order.
+	 * @return a new list with the values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> result = new ArrayList<V>(size);
+		if (freeKeyValue != null)
+			result.add(freeKeyValue);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE)
+				result.add((V) values[i]);
+		}
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -16,9 +16,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
 import org.cloudbus.cloudsim.Host;
@@ -28,9 +31,9 @@ import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmScheduler;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.EventHandle;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
-import org.cloudbus.cloudsim.core.predicates.PredicateType;
 import org.cloudbus.cloudsim.provisioners.BwProvisioner;
 import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
 import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
@@ -55,9 +58,16 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	String physicalTopologyFileName; 
 	protected PhysicalTopology topology;
 	//Hashtable<Integer,SDNHost> vmHostTable;
-	Hashtable<Package,Node> pkgTable;
 	
-	Hashtable<String, Channel> channelTable;
+	// Channels by the key of their source, destination and channel ID
+	LongObjectHashMap<Channel> channelTable;
+	
+	// Next finish time of the channels with transmissions, entries replaced by a later one being ignored
+	private PriorityQueue<ChannelCompletion> completionQueue = new PriorityQueue<ChannelCompletion>();
+	private Map<Channel, ChannelCompletion> channelCompletions = new HashMap<Channel, ChannelCompletion>();
+	
+	// Pending internal event, or null
+	private EventHandle internalEvent;
 
 	List<Host> hosts;
 	protected List<SDNHost> sdnhosts;
@@ -65,6 +75,9 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	int vmId=0;
 	protected SDNDatacenter datacenter;
 	protected LinkedList<Vm> vmList;
+	// Indexes of vmList by VM ID and of sdnhosts by host. The host of a VM is always read from the VM, which follows its migrations.
+	private LongObjectHashMap<Vm> vmTable = new LongObjectHashMap<Vm>();
+	private Map<Host, SDNHost> hostTable = new HashMap<Host, SDNHost>();
 	protected LinkedList<Arc> arcList;
 	Map<Integer, Arc> flowIdArcTable;
 	Map<String, Integer> vmNameIdTable;
@@ -75,6 +88,9 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	
 	boolean isApplicationDeployed = false;
 	
+	// Whether adding or removing a channel only adjusts the channels sharing a link with it
+	private boolean incrementalChannelAdjustment = true;
+	
 	// Resolution of the result.
 	public static double minTimeBetweenEvents = 0.001;	// in sec
 	public static int resolutionPlaces = 5;
@@ -96,8 +112,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		
 		this.physicalTopologyFileName = fileName;
 		
-		this.pkgTable = new Hashtable<Package, Node>();
-		this.channelTable = new Hashtable<String, Channel>();
+		this.channelTable = new LongObjectHashMap<Channel>();
 		
 		initPhysicalTopology();
 	}
@@ -179,8 +194,6 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		
 		updatePackageProcessing();
 		
-		pkgTable.put(pkg,sender);
-		
 		Channel channel=findChannel(src, dst, flowId);
 		if(channel == null) {
 			//No channel establisihed. Add a channel.
@@ -194,6 +207,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		}
 		
 		double eft = channel.addTransmission(new Transmission(pkg));
+		scheduleCompletion(channel);
 		Log.printLine(CloudSim.clock() + ": " + getName() + ".addPackageToChannel ("+channel
 				+"): Transmission added:" + 
 				NetworkOperatingSystem.debugVmIdName.get(src) + "->"+
@@ -204,58 +218,98 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	
 
 	private void internalPackageProcess() {
-		if(updatePackageProcessing()) {
-			sendInternalEvent();
-		}
+		updatePackageProcessing();
+		sendInternalEvent();
 	}
 	
+	/**
+	 * Schedules the internal event at the next finish time of the channels, unless it is already pending.
+	 * A pending event at another time is cancelled through its handle.
+	 */
 	private void sendInternalEvent() {
-		CloudSim.cancelAll(getId(), new PredicateType(Constants.SDN_INTERNAL_PACKAGE_PROCESS));
+		ChannelCompletion next = peekCompletion();
+		if(next == null) {
+			cancelInternalEvent();
+			return;
+		}
 		
-		if(channelTable.size() != 0) {
-			// More to process. Send event again
-			double delay = this.nextFinishTime();
-			Log.printLine(CloudSim.clock() + ": " + getName() + ".sendInternalEvent(): next finish time: "+ delay);
-			
-			send(this.getId(), delay, Constants.SDN_INTERNAL_PACKAGE_PROCESS);
+		// More to process. Send event again
+		double delay = next.time - CloudSim.clock();
+		if(delay < getMinTimeBetweenNetworkEvents()) {
+			delay = getMinTimeBetweenNetworkEvents();
 		}
+		if(internalEvent != null && internalEvent.isPending() && internalEvent.getTime() == CloudSim.clock() + delay) {
+			return;
+		}
+		cancelInternalEvent();
+		Log.printLine(CloudSim.clock() + ": " + getName() + ".sendInternalEvent(): next finish time: "+ delay);
+		
+		internalEvent = sendCancellable(this.getId(), delay, Constants.SDN_INTERNAL_PACKAGE_PROCESS);
 	}
 	
-	private double nextFinishTime() {
-		double earliestEft = Double.POSITIVE_INFINITY;
-		for(Channel ch:channelTable.values()){
-			
-			double eft = ch.nextFinishTime();
-			if (eft<earliestEft){
-				earliestEft=eft;
-			}
+	private void cancelInternalEvent() {
+		if(internalEvent != null) {
+			internalEvent.cancel();
+			internalEvent = null;
 		}
+	}
+	
+	/**
+	 * Schedules the next finish time of a channel, after a transmission is added or its bandwidth is changed.
+	 * A channel whose transmissions finished is scheduled now, so that its packages are delivered.
+	 */
+	private void scheduleCompletion(Channel ch) {
+		double time = ch.hasArrivedPackages() ? CloudSim.clock() : ch.getNextFinishTime();
+		ChannelCompletion completion = channelCompletions.get(ch);
 		
-		if(earliestEft == Double.POSITIVE_INFINITY) {
-			throw new IllegalArgumentException("NOS.nextFinishTime(): next finish time is infinite!");
+		if(completion != null && completion.time == time) {
+			return;
 		}
-		return earliestEft;
-		
+		if(time == Double.POSITIVE_INFINITY) {
+			channelCompletions.remove(ch);
+			return;
+		}
+		completion = new ChannelCompletion(ch, time);
+		channelCompletions.put(ch, completion);
+		completionQueue.add(completion);
 	}
 	
+	// The earliest channel completion, dropping the ones replaced since they were scheduled
+	private ChannelCompletion peekCompletion() {
+		ChannelCompletion completion = completionQueue.peek();
+		while(completion != null && channelCompletions.get(completion.channel) != completion) {
+			completionQueue.poll();
+			completion = completionQueue.peek();
+		}
+		return completion;
+	}
+	
+	/**
+	 * Updates the channels whose next transmission finishes by now, delivers their packages,
+	 * and removes the channels left without transmissions.
+	 * @return true if a channel was updated
+	 */
 	private boolean updatePackageProcessing() {
-		boolean needSendEvent = false;
-		
-		LinkedList<Channel> completeChannels = new LinkedList<Channel>();
+		List<Channel> completeChannels = new ArrayList<Channel>();
+		
+		ChannelCompletion completion = peekCompletion();
+		while(completion != null && completion.time <= CloudSim.clock()) {
+			completionQueue.poll();
+			channelCompletions.remove(completion.channel);
+			completeChannels.add(completion.channel);
+			completion = peekCompletion();
+		}
 		
-		for(Channel ch:channelTable.values()){
-			boolean isCompleted = ch.updatePackageProcessing();
-			needSendEvent = needSendEvent || isCompleted;
-			//completeChannels.add(ch.getArrivedPackages());
-			completeChannels.add(ch);
+		for(Channel ch:completeChannels){
+			ch.updatePackageProcessing();
 		}
 		
 		if(completeChannels.size() != 0) {
 			processCompletePackages(completeChannels);
-			updateChannel();
+			updateChannel(completeChannels);
 		}
 
-		return needSendEvent;
+		return completeChannels.size() != 0;
 	}
 	
 	private void processCompletePackages(List<Channel> channels){
@@ -265,7 +319,6 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 			
 			for (Transmission tr:ch.getArrivedPackages()){
 				Package pkg = tr.getPackage();
-				//Node sender = pkgTable.remove(pkg);
 				//Node nextHop = sender.getRoute(pkg.getOrigin(),pkg.getDestination(),pkg.getFlowId());
 				
 				Log.printLine(CloudSim.clock() + ": " + getName() + ": Package completed: "+pkg +". Send to destination:"+dest);
@@ -283,40 +336,83 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	
 	private Channel findChannel(int from, int to, int channelId) {
 		// check if there is a pre-configured channel for this application
-		Channel channel=channelTable.get(getKey(from,to, channelId));
-
-		if (channel == null) {
-			//there is no channel for specific flow, find the default channel for this link
-			channel=channelTable.get(getKey(from,to));
-		}
-		return channel;
+		return channelTable.get(getKey(from,to, channelId));
 	}
 	
-	private void addChannel(int src, int dst, int chId, Channel ch) {
+	protected void addChannel(int src, int dst, int chId, Channel ch) {
 		//System.err.println("NOS.addChannel:"+getKey(src, dst, chId));
 		this.channelTable.put(getKey(src, dst, chId), ch);
 		ch.initialize();
-		adjustAllChannels();
+		adjustChannels(ch);
 	}
 	
-	private Channel removeChannel(String key) {
+	protected Channel removeChannel(long key) {
 		//System.err.println("NOS.removeChannel:"+key);
 		Channel ch = this.channelTable.remove(key);
+		channelCompletions.remove(ch);
 		ch.terminate();
-		adjustAllChannels();
+		adjustChannels(ch);
 		return ch;
 	}
 	
+	/**
+	 * Adjusts the bandwidth of channels after a channel is added or removed.
+	 * Only the channels sharing a link with the changed one can get another bandwidth: dedicated channels depend on
+	 * the channels of their links, and default channels also on the bandwidth of the dedicated channels of their links.
+	 * Links index the channels going through them, so this costs in proportion to the channels around the changed one
+	 * instead of all the channels, and allocates the same bandwidths as adjusting all the channels.
+	 */
+	private void adjustChannels(Channel changed) {
+		if(!incrementalChannelAdjustment) {
+			adjustAllChannels();
+			return;
+		}
+		
+		Set<Channel> neighbours = new LinkedHashSet<Channel>();
+		addChannelsAlongPath(changed, neighbours);
+		
+		Set<Channel> sharedChannels = new LinkedHashSet<Channel>();
+		for(Channel ch:neighbours) {
+			if(ch.getChId() == -1) {
+				sharedChannels.add(ch);
+				continue;
+			}
+			double bw = ch.getAllocatedBandwidth();
+			ch.adjustDedicatedBandwidthAlongLink();
+			if(ch.getAllocatedBandwidth() != bw) {
+				// Free bandwidth left to default channels on its links is changed.
+				addChannelsAlongPath(ch, sharedChannels);
+				scheduleCompletion(ch);
+			}
+		}
+		
+		for(Channel ch:sharedChannels) {
+			if(ch.adjustSharedBandwidthAlongLink()) {
+				scheduleCompletion(ch);
+			}
+		}
+	}
+	
+	private void addChannelsAlongPath(Channel ch, Set<Channel> channels) {
+		List<Node> nodes = ch.getNodes();
+		List<Link> links = ch.getLinks();
+		for(int i=0; i<links.size(); i++) {
+			channels.addAll(links.get(i).getChannels(nodes.get(i)));
+		}
+	}
+	
 	private void adjustAllChannels() {
 		for(Channel ch:this.channelTable.values()) {
 			if(ch.adjustDedicatedBandwidthAlongLink()) {
 				// Channel BW is changed. send event.
+				scheduleCompletion(ch);
 			}
 		}
 		
 		for(Channel ch:this.channelTable.values()) {
 			if(ch.adjustSharedBandwidthAlongLink()) {
 				// Channel BW is changed. send event.
+				scheduleCompletion(ch);
 			}
 		}
 	}
@@ -360,7 +456,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		if(flowId != -1 && lowestBw < reqBw) {
 			// free bandwidth is less than required one.
 			// Cannot make channel.
-			Log.printLine(CloudSim.clock() + ": " + getName() + ": Free bandwidth is less than required.("+getKey(src,dst,flowId)+"): ReqBW="+ reqBw + "/ Free="+lowestBw);
+			Log.printLine(CloudSim.clock() + ": " + getName() + ": Free bandwidth is less than required.("+src+"-"+dst+"-"+flowId+"): ReqBW="+ reqBw + "/ Free="+lowestBw);
 			//return null;
 		}
 		
@@ -369,29 +465,34 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		return channel;
 	}
 	
-	private void updateChannel() {
-		List<String> removeCh = new ArrayList<String>();  
-		for(String key:this.channelTable.keySet()) {
-			Channel ch = this.channelTable.get(key);
+	private void updateChannel(List<Channel> channels) {
+		for(Channel ch:channels) {
 			if(ch.getActiveTransmissionNum() == 0) {
 				// No more job in channel. Delete
-				removeCh.add(key);
+				removeChannel(getKey(ch.getSrcId(), ch.getDstId(), ch.getChId()));
+			}
+			else {
+				scheduleCompletion(ch);
 			}
-		}
-		
-		for(String key:removeCh) {
-			removeChannel(key);
 		}
 	}
 	
-	private String getKey(int origin, int destination) {
-		return origin+"-"+destination;
+	protected long getKey(int origin, int destination, int appId) {
+		return ForwardingRule.getKey(origin, destination, appId);
 	}
-	
-	private String getKey(int origin, int destination, int appId) {
-		return getKey(origin,destination)+"-"+appId;
+
+
+	public boolean isIncrementalChannelAdjustment() {
+		return incrementalChannelAdjustment;
 	}
 
+	/**
+	 * Sets whether adding or removing a channel only adjusts the bandwidth of the channels sharing a link with it,
+	 * or of all the channels. Both give the same bandwidths.
+	 */
+	public void setIncrementalChannelAdjustment(boolean incrementalChannelAdjustment) {
+		this.incrementalChannelAdjustment = incrementalChannelAdjustment;
+	}
 
 	public void setDatacenter(SDNDatacenter dc) {
 		this.datacenter = dc;
@@ -410,32 +511,20 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 
 	protected Vm findVm(int vmId) {
-		for(Vm vm:vmList) {
-			if(vm.getId() == vmId)
-				return vm;
-		}
-		return null;
+		return vmTable.get(vmId);
 	}
 	protected SDNHost findSDNHost(Host host) {
-		for(SDNHost sdnhost:sdnhosts) {
-			if(sdnhost.getHost().equals(host)) {
-				return sdnhost;
-			}
-		}
-		return null;
+		if(host == null)
+			return null;
+		return hostTable.get(host);
 	}
 	protected SDNHost findSDNHost(int vmId) {
 		Vm vm = findVm(vmId);
 		if(vm == null)
 			return null;
 		
-		for(SDNHost sdnhost:sdnhosts) {
-			if(sdnhost.getHost().equals(vm.getHost())) {
-				return sdnhost;
-			}
-		}
 		//System.err.println("NOS.findSDNHost: Host is not found for VM:"+ vmId);
-		return null;
+		return findSDNHost(vm.getHost());
 	}
 	
 	public int getHostAddressByVmId(int vmId) {
@@ -509,6 +598,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 						topology.addNode(sdnHost);
 						this.hosts.add(host);
 						this.sdnhosts.add(sdnHost);
+						this.hostTable.put(host, sdnHost);
 					}
 					
 				} else {
@@ -569,6 +659,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 
 		vmNameIdTable = new HashMap<String, Integer>();
 		vmList = new LinkedList<Vm>();
+		vmTable.clear();
 		LinkedList<Middlebox> mbList = new LinkedList<Middlebox>();
 		arcList = new LinkedList<Arc>();
 		flowIdArcTable = new HashMap<Integer, Arc>();
@@ -618,6 +709,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 						NetworkOperatingSystem.debugVmIdName.put(vmId, nodeName2);
 						
 						vmList.add(vm);
+						vmTable.put(vmId, vm);
 						vmId++;
 					} else {
 						// Middle box
@@ -684,4 +776,25 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		return false;
 	}
 	
+	/**
+	 * Next finish time of a channel.
+	 */
+	private static class ChannelCompletion implements Comparable<ChannelCompletion> {
+		private static long count = 0;
+		
+		final Channel channel;
+		final double time;
+		private final long serial = count++;
+		
+		ChannelCompletion(Channel channel, double time) {
+			this.channel = channel;
+			this.time = time;
+		}
+		
+		@Override
+		public int compareTo(ChannelCompletion o) {
+			int result = Double.compare(time, o.time);
+			return (result != 0) ? result : Long.compare(serial, o.serial);
+		}
+	}
 }
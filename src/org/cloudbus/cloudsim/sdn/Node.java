@@ -36,5 +36,6 @@ public interface Node {
 	public RoutingTable getRoutingTable();
 
 	public void addLink(Link l);
+	public void removeLink(Link l);
 	public void updateNetworkUtilization();
 }
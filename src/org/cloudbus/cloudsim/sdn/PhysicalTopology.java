@@ -8,8 +8,10 @@
 
 package org.cloudbus.cloudsim.sdn;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.cloudbus.cloudsim.network.datacenter.AggregateSwitch;
 
@@ -31,11 +33,15 @@ public class PhysicalTopology {
 	Hashtable<Integer,Node> nodesTable;	// Address -> Node
 	Table<Integer, Integer, Link> links; 	// From : To -> Link
 	Multimap<Node,Link> nodeLinks;	// Node -> all Links
+	List<Link> linkList;	// All links, in the order they were added
+	ShortestPathRouting routing;
 
 	public PhysicalTopology() {
 		nodesTable = new Hashtable<Integer,Node>();
 		nodeLinks = HashMultimap.create();
 		links = HashBasedTable.create();
+		linkList = new ArrayList<Link>();
+		routing = new ShortestPathRouting(this);
 	}
 	
 	public Link getLink(int from, int to) {
@@ -64,65 +70,13 @@ public class PhysicalTopology {
 			node.setRank(3);
 		}
 	}
+	/**
+	 * Builds the routes of all the nodes to all the hosts along the shortest paths, whatever the shape of the topology.
+	 */
 	public void buildDefaultRouting() {
-		Collection<Node> nodes = getAllNodes();
+		routing.build();
 		
-		// For SDNHost: build path to edge switch
-		// For Edge: build path to SDN Host
-		for(Node sdnhost:nodes) {
-			if(sdnhost.getRank() == 3) {	// Rank3 = SDN Host
-				Collection<Link> links = getAdjacentLinks(sdnhost);
-				for(Link l:links) {
-					if(l.getLowOrder().equals(sdnhost)) {
-						sdnhost.addRoute(null, l);
-						Node edge = l.getHighOrder();
-						edge.addRoute(sdnhost, l);
-					}
-				}
-			}
-		}
-		// For Edge: build path to aggregate switch
-		// For Aggregate: build path to edge switch
-		for(Node lowerNode:nodes) {
-			if(lowerNode.getRank() == 2) {	// Rank2 = Edge switch
-				Collection<Link> links = getAdjacentLinks(lowerNode);
-				for(Link l:links) {
-					if(l.getLowOrder().equals(lowerNode)) {
-						// Link is between Edge and Aggregate
-						lowerNode.addRoute(null, l);
-						Node higherNode = l.getHighOrder();
-						
-						// Add all children hosts to
-						for(Node destination: lowerNode.getRoutingTable().getKnownDestination()) {
-							if(destination != null)
-								higherNode.addRoute(destination, l);
-						}
-					}
-				}
-			}
-		}
-		// For Agg: build path to core switch
-		// For Core: build path to aggregate switch
-		for(Node agg:nodes) {
-			if(agg.getRank() == 1) {	// Rank1 = Agg switch
-				Collection<Link> links = getAdjacentLinks(agg);
-				for(Link l:links) {
-					if(l.getLowOrder().equals(agg)) {
-						// Link is between Edge and Aggregate
-						agg.addRoute(null, l);
-						Node core = l.getHighOrder();
-						
-						// Add all children hosts to
-						for(Node destination: agg.getRoutingTable().getKnownDestination()) {
-							if(destination != null)
-								core.addRoute(destination, l);
-						}
-					}
-				}
-			}
-		}
-		
-		for(Node n:nodes) {
+		for(Node n:getAllNodes()) {
 			System.out.println("============================================");
 			System.out.println("Node: "+n);
 			n.getRoutingTable().printRoutingTable();
@@ -130,6 +84,10 @@ public class PhysicalTopology {
 
 	}
 	
+	public ShortestPathRouting getRouting() {
+		return routing;
+	}
+	
 	public void addLink(int from, int to, double latency){
 		Node fromNode = nodesTable.get(from);
 		Node toNode = nodesTable.get(to);
@@ -175,6 +133,33 @@ public class PhysicalTopology {
 		
 		fromNode.addLink(l);
 		toNode.addLink(l);
+		
+		linkList.add(l);
+		routing.linkAdded(l);
+	}
+	
+	/**
+	 * Removes the link between two nodes, for example when it fails, and reroutes around it.
+	 * Channels already using the link are not moved.
+	 * @param from address of a node of the link
+	 * @param to address of the other node
+	 * @return the removed link
+	 */
+	public Link removeLink(int from, int to) {
+		Link l = links.remove(from, to);
+		if(l == null) {
+			throw new IllegalArgumentException("Unknown link:"+from+"->"+to);
+		}
+		links.remove(to, from);
+		
+		nodeLinks.remove(l.getLowOrder(), l);
+		nodeLinks.remove(l.getHighOrder(), l);
+		l.getLowOrder().removeLink(l);
+		l.getHighOrder().removeLink(l);
+		
+		linkList.remove(l);
+		routing.linkRemoved(l);
+		return l;
 	}
 	
 	public Collection<Link> getAdjacentLinks(Node node) {
@@ -188,5 +173,9 @@ public class PhysicalTopology {
 	public Collection<Link> getAllLinks() {
 		return nodeLinks.values();
 	}
+	
+	public List<Link> getLinkList() {
+		return linkList;
+	}
 
 }
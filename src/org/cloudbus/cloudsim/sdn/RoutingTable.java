@@ -15,8 +15,9 @@ import java.util.Set;
 
 /**
  * Routing table for hosts and switches. This has information about the next hop.
- * When physical topology is set up, RoutingTable is created with the information
- * about next hop
+ * When physical topology is set up, the distances of the node to the destination
+ * hosts are computed by {@link ShortestPathRouting}, which gives the next hops.
+ * Routes added explicitly take precedence over the computed ones.
  *  
  * @author Jungmin Son
  * @author Rodrigo N. Calheiros
@@ -25,6 +26,11 @@ import java.util.Set;
 public class RoutingTable {
 	
 	Map<Node, List<Link>> table;
+	
+	// Computed routes: the routing, index of this node in it, and distance to each destination class
+	private ShortestPathRouting routing;
+	private int index;
+	int[] distances;
 
 	public RoutingTable(){
 		this.table = new HashMap<Node, List<Link>>();
@@ -48,8 +54,16 @@ public class RoutingTable {
 		table.remove(destHost);
 	}
 
+	void setRouting(ShortestPathRouting routing, int index, int[] distances) {
+		this.routing = routing;
+		this.index = index;
+		this.distances = distances;
+	}
+	
 	public List<Link> getRoute(Node destHost) {
 		List<Link> links = table.get(destHost);
+		if(links == null && routing != null)
+			links = routing.getRoute(index, destHost);
 		if(links == null)
 			links = table.get(null);
 		return links;
@@ -65,5 +79,7 @@ public class RoutingTable {
 				System.out.println("dst:"+key+" : "+l);
 			}
 		}
+		if(routing != null)
+			routing.printRoutes(index);
 	}
 }
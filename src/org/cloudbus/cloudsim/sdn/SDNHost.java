@@ -216,6 +216,11 @@ public class SDNHost extends SimEntity implements Node {
 		
 	}
 
+	@Override
+	public void removeLink(Link l) {
+		// Hosts do not keep their links; routing is rebuilt by PhysicalTopology
+	}
+
 	@Override
 	public void updateNetworkUtilization() {
 		// TODO Auto-generated method stub
@@ -0,0 +1,407 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Shortest path routing between the hosts of a physical topology of any shape (tree, leaf-spine, mesh or
+ * several connected datacenters). Paths are counted in hops, and switches forward through any of the links
+ * on a shortest path to the destination host, giving equal-cost multi-path routes.
+ * <p>
+ * Hosts attached to the same switches have the same routes, so they form one destination class. A
+ * breadth-first search from the switches of each class, run in parallel for the classes, gives every node
+ * its distance to the class, kept in an int array in the routing table of the node. The next hops of a
+ * node are then the links to the neighbours one hop closer to the destination. Hosts are never used to
+ * forward traffic of other hosts.
+ * <p>
+ * When a link is added or removed after the routes are built, only the classes whose distances can change
+ * are searched again.
+ *
+ * @since CloudSimSDN 1.0
+ */
+public class ShortestPathRouting {
+
+	static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final PhysicalTopology topology;
+
+	// Maximum number of equal-cost next hops given for a destination, 0 for all of them
+	private int maxPaths = 0;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private boolean built = false;
+
+	private Node[] nodes;
+	private RoutingTable[] tables;
+	private boolean[] isHost;
+	private int[] indexByAddress;
+
+	// Ports of node i are portStart[i] to portStart[i+1]-1, each with the neighbour index and the link
+	private int[] portStart;
+	private int[] portNode;
+	private Link[] portLink;
+
+	// Destination class of the hosts by address, or -1, and the hosts and attached switches of each class
+	private int[] classByAddress;
+	private List<List<Node>> classHosts;
+	private int[][] classAttachments;
+
+	public ShortestPathRouting(PhysicalTopology topology) {
+		this.topology = topology;
+	}
+
+	public int getMaxPaths() {
+		return maxPaths;
+	}
+
+	/**
+	 * Limits the number of equal-cost next hops given for a destination, the first ones in the order the
+	 * links were added. It takes effect at once, as next hops are read from the distances.
+	 * @param maxPaths the number of next hops, 0 for all of them
+	 */
+	public void setMaxPaths(int maxPaths) {
+		if(maxPaths < 0)
+			throw new IllegalArgumentException("Negative number of paths: "+maxPaths);
+		this.maxPaths = maxPaths;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads searching the distances of the destination classes.
+	 * @param parallelism the number of threads, 1 to search in the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive: "+parallelism);
+		this.parallelism = parallelism;
+	}
+
+	public boolean isBuilt() {
+		return built;
+	}
+
+	/**
+	 * Computes the routes of all the nodes of the topology to all the hosts.
+	 */
+	public void build() {
+		buildPorts();
+		buildClasses();
+
+		int numClasses = classAttachments.length;
+		for(int i=0; i<tables.length; i++) {
+			tables[i].setRouting(this, i, new int[numClasses]);
+		}
+		int[] all = new int[numClasses];
+		for(int c=0; c<numClasses; c++)
+			all[c] = c;
+		search(all);
+		built = true;
+	}
+
+	private void buildPorts() {
+		Collection<Node> allNodes = topology.getAllNodes();
+		int n = allNodes.size();
+		nodes = new Node[n];
+		tables = new RoutingTable[n];
+		isHost = new boolean[n];
+		int maxAddress = 0;
+		int i = 0;
+		for(Node node:allNodes) {
+			nodes[i] = node;
+			tables[i] = node.getRoutingTable();
+			isHost[i] = node instanceof SDNHost;
+			maxAddress = Math.max(maxAddress, node.getAddress());
+			i++;
+		}
+		indexByAddress = new int[maxAddress + 1];
+		Arrays.fill(indexByAddress, -1);
+		for(i=0; i<n; i++)
+			indexByAddress[nodes[i].getAddress()] = i;
+
+		// Ports in the order the links were added
+		List<Link> links = topology.getLinkList();
+		portStart = new int[n + 1];
+		for(Link l:links) {
+			portStart[indexOf(l.getLowOrder()) + 1]++;
+			portStart[indexOf(l.getHighOrder()) + 1]++;
+		}
+		for(i=0; i<n; i++)
+			portStart[i + 1] += portStart[i];
+		portNode = new int[portStart[n]];
+		portLink = new Link[portStart[n]];
+		int[] next = Arrays.copyOf(portStart, n);
+		for(Link l:links) {
+			int a = indexOf(l.getLowOrder());
+			int b = indexOf(l.getHighOrder());
+			portNode[next[a]] = b;
+			portLink[next[a]++] = l;
+			portNode[next[b]] = a;
+			portLink[next[b]++] = l;
+		}
+	}
+
+	private void buildClasses() {
+		classByAddress = new int[indexByAddress.length];
+		Arrays.fill(classByAddress, -1);
+		classHosts = new ArrayList<List<Node>>();
+		List<int[]> attachments = new ArrayList<int[]>();
+		Map<List<Integer>, Integer> classIds = new HashMap<List<Integer>, Integer>();
+
+		for(int i=0; i<nodes.length; i++) {
+			if(!isHost[i])
+				continue;
+			int[] attached = new int[portStart[i + 1] - portStart[i]];
+			for(int p=portStart[i]; p<portStart[i + 1]; p++)
+				attached[p - portStart[i]] = portNode[p];
+			Arrays.sort(attached);
+			List<Integer> key = new ArrayList<Integer>(attached.length);
+			for(int a:attached) {
+				if(key.isEmpty() || key.get(key.size() - 1) != a)
+					key.add(a);
+			}
+			Integer c = classIds.get(key);
+			if(c == null) {
+				c = attachments.size();
+				classIds.put(key, c);
+				int[] sources = new int[key.size()];
+				for(int k=0; k<sources.length; k++)
+					sources[k] = key.get(k);
+				attachments.add(sources);
+				classHosts.add(new ArrayList<Node>());
+			}
+			classByAddress[nodes[i].getAddress()] = c;
+			classHosts.get(c).add(nodes[i]);
+		}
+		classAttachments = attachments.toArray(new int[attachments.size()][]);
+	}
+
+	private int indexOf(Node node) {
+		int address = node.getAddress();
+		return address < indexByAddress.length ? indexByAddress[address] : -1;
+	}
+
+	/**
+	 * Searches the distances of some destination classes, in parallel when there are enough of them.
+	 */
+	private void search(final int[] classes) {
+		int numTasks = Math.min(parallelism, classes.length);
+		if(numTasks <= 1) {
+			int[] queue = new int[nodes.length];
+			for(int c:classes)
+				search(c, queue);
+			return;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numTasks);
+		for(int t=0; t<numTasks; t++) {
+			final int first = t;
+			final int step = numTasks;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					int[] queue = new int[nodes.length];
+					for(int k=first; k<classes.length; k+=step)
+						search(classes[k], queue);
+					return null;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(numTasks);
+		try {
+			for(Future<Void> result:pool.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The routing computation has been interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("The routing computation has failed.", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Breadth-first search of the distances of all the nodes to the switches attached to a destination class.
+	 */
+	private void search(int c, int[] queue) {
+		for(RoutingTable table:tables)
+			table.distances[c] = UNREACHABLE;
+
+		int head = 0, tail = 0;
+		for(int s:classAttachments[c]) {
+			tables[s].distances[c] = 0;
+			queue[tail++] = s;
+		}
+		while(head < tail) {
+			int v = queue[head++];
+			if(isHost[v])
+				continue;
+			int d = tables[v].distances[c] + 1;
+			for(int p=portStart[v]; p<portStart[v + 1]; p++) {
+				int u = portNode[p];
+				if(tables[u].distances[c] == UNREACHABLE) {
+					tables[u].distances[c] = d;
+					queue[tail++] = u;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the links on the shortest paths from a node to a host.
+	 * @param index index of the node
+	 * @param destHost the destination host
+	 * @return the links, or null if the destination is not a reachable host
+	 */
+	List<Link> getRoute(int index, Node destHost) {
+		int c = getClass(destHost);
+		if(c < 0)
+			return null;
+		List<Link> links = getNextHops(index, c, indexOf(destHost));
+		return links.isEmpty() ? null : links;
+	}
+
+	private int getClass(Node destHost) {
+		int address = destHost == null ? -1 : destHost.getAddress();
+		if(address < 0 || address >= classByAddress.length)
+			return -1;
+		return classByAddress[address];
+	}
+
+	private List<Link> getNextHops(int v, int c, int dest) {
+		List<Link> links = new ArrayList<Link>();
+		int d = tables[v].distances[c];
+		if(d == UNREACHABLE)
+			return links;
+		for(int p=portStart[v]; p<portStart[v + 1]; p++) {
+			int u = portNode[p];
+			boolean next = d == 0 ? u == dest : !isHost[u] && tables[u].distances[c] == d - 1;
+			if(next) {
+				links.add(portLink[p]);
+				if(links.size() == maxPaths)
+					break;
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Prints the routes of a node, with the destinations sharing the same next hops on one line.
+	 * @param index index of the node
+	 */
+	void printRoutes(int index) {
+		Map<List<Link>, List<Node>> routes = new LinkedHashMap<List<Link>, List<Node>>();
+		for(int c=0; c<classAttachments.length; c++) {
+			if(tables[index].distances[c] == 0) {
+				for(Node host:classHosts.get(c)) {
+					System.out.println("dst:"+host+" : "+getNextHops(index, c, indexOf(host)));
+				}
+				continue;
+			}
+			List<Link> links = getNextHops(index, c, -1);
+			if(links.isEmpty())
+				continue;
+			List<Node> hosts = routes.get(links);
+			if(hosts == null) {
+				hosts = new ArrayList<Node>();
+				routes.put(links, hosts);
+			}
+			hosts.addAll(classHosts.get(c));
+			hosts.remove(nodes[index]);
+		}
+		for(Map.Entry<List<Link>, List<Node>> route:routes.entrySet()) {
+			System.out.println("dst:"+route.getValue()+" : "+route.getKey());
+		}
+	}
+
+	/**
+	 * Updates the routes after a link is added to the topology.
+	 * @param link the new link
+	 */
+	void linkAdded(Link link) {
+		if(!built)
+			return;
+		if(!isIndexed(link) || link.getLowOrder() instanceof SDNHost || link.getHighOrder() instanceof SDNHost) {
+			// New node or new attachment of a host: the destination classes change
+			build();
+			return;
+		}
+		buildPorts();
+		int a = indexOf(link.getLowOrder());
+		int b = indexOf(link.getHighOrder());
+		List<Integer> affected = new ArrayList<Integer>();
+		for(int c=0; c<classAttachments.length; c++) {
+			long da = tables[a].distances[c];
+			long db = tables[b].distances[c];
+			// A link between nodes at the same or consecutive distances only adds equal-cost next hops
+			if(Math.abs(da - db) > 1)
+				affected.add(c);
+		}
+		search(toArray(affected));
+	}
+
+	/**
+	 * Updates the routes after a link is removed from the topology, for example when it fails.
+	 * @param link the removed link
+	 */
+	void linkRemoved(Link link) {
+		if(!built)
+			return;
+		if(link.getLowOrder() instanceof SDNHost || link.getHighOrder() instanceof SDNHost) {
+			build();
+			return;
+		}
+		int a = indexOf(link.getLowOrder());
+		int b = indexOf(link.getHighOrder());
+		buildPorts();
+		List<Integer> affected = new ArrayList<Integer>();
+		for(int c=0; c<classAttachments.length; c++) {
+			int da = tables[a].distances[c];
+			int db = tables[b].distances[c];
+			if(da == UNREACHABLE || db == UNREACHABLE || Math.abs(da - db) != 1)
+				continue;
+			// The link was on shortest paths: distances change only if the farther node has no other next hop
+			int far = da > db ? a : b;
+			if(getNextHops(far, c, -1).isEmpty())
+				affected.add(c);
+		}
+		search(toArray(affected));
+	}
+
+	private boolean isIndexed(Link link) {
+		Node low = link.getLowOrder();
+		Node high = link.getHighOrder();
+		return indexOf(low) >= 0 && nodes[indexOf(low)] == low && indexOf(high) >= 0 && nodes[indexOf(high)] == high;
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		int[] array = new int[values.size()];
+		for(int i=0; i<array.length; i++)
+			array[i] = values.get(i);
+		return array;
+	}
+}
@@ -88,6 +88,10 @@ public class Switch extends SimEntity implements Node{
 		this.links.add(l);
 	}
 	
+	public void removeLink(Link l){
+		this.links.remove(l);
+	}
+	
 	
 	/************************************************
 	 *  Calculate Utilization history
@@ -24,6 +24,10 @@ public class Transmission implements Activity {
 	Package pkg;
 	long amountToBeProcessed;
 	
+	// Virtual time of the channel at which the transmission finishes, and order it was added to the channel
+	private double finishTag;
+	private long sequence;
+	
 	public Transmission(int origin, int destination, long size, int flowId, Request payload) {
 		this.pkg = new Package(origin, destination, size, flowId, payload);
 		this.amountToBeProcessed=pkg.getSize();
@@ -34,6 +38,10 @@ public class Transmission implements Activity {
 		this.amountToBeProcessed=pkg.getSize();
 	}
 	
+	/**
+	 * Amount of data left to transmit. The channel only counts it down when the transmission finishes.
+	 * @return the amount of data
+	 */
 	public long getSize(){
 		return amountToBeProcessed;
 	}
@@ -59,6 +67,22 @@ public class Transmission implements Activity {
 		return amountToBeProcessed==0;
 	}
 	
+	double getFinishTag() {
+		return finishTag;
+	}
+	
+	void setFinishTag(double finishTag) {
+		this.finishTag = finishTag;
+	}
+	
+	long getSequence() {
+		return sequence;
+	}
+	
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	
 	public String toString() {
 		return "Transmission:"+this.pkg.toString();
 	}
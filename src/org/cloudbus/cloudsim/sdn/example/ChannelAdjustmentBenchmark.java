@@ -0,0 +1,155 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+package org.cloudbus.cloudsim.sdn.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.Channel;
+import org.cloudbus.cloudsim.sdn.Link;
+import org.cloudbus.cloudsim.sdn.Node;
+import org.cloudbus.cloudsim.sdn.SDNHost;
+import org.cloudbus.cloudsim.sdn.example.topogenerators.PhysicalTopologyGenerator;
+
+/**
+ * Measures the cost of channel churn in the network operating system, adjusting the bandwidth of all the channels
+ * or only of the channels sharing a link with the added or removed one. The topology is the tree generated by
+ * PhysicalTopologyGenerator with the given fanout; a fixed number of channels between random hosts, a quarter of
+ * them dedicated, is kept open while channels are replaced one by one.
+ * <p>
+ * Usage: <tt>ChannelAdjustmentBenchmark [fanout] [channels] [replacements] [repetitions]</tt>. The first
+ * repetition is a warm-up and is not reported.
+ *
+ * @since CloudSimSDN 1.0
+ */
+public class ChannelAdjustmentBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int fanout = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int numChannels = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int replacements = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+		int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		File topologyFile = File.createTempFile("fat-tree", ".json");
+		topologyFile.deleteOnExit();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			PhysicalTopologyGenerator generator = new PhysicalTopologyGenerator();
+			generator.createTopology(generator.createHostSpec(8, 4000, 10240, 10000000, 1000000000), 1000000000L,
+					1000000000L, fanout, 0.1);
+			generator.wrtieJSON(topologyFile.getPath());
+		} finally {
+			System.setOut(out);
+		}
+
+		Log.disable();
+		for (int i = 0; i <= repetitions; i++) {
+			long all = run(topologyFile.getPath(), false, numChannels, replacements);
+			long incremental = run(topologyFile.getPath(), true, numChannels, replacements);
+			if (i > 0) {
+				System.out.println("Run " + i + ": all channels = " + all + " ms, incremental = " + incremental + " ms");
+			}
+		}
+	}
+
+	/**
+	 * Runs the churn and returns its wall clock time.
+	 *
+	 * @param topologyFile the physical topology file
+	 * @param incremental whether only the channels sharing a link with the changed one are adjusted
+	 * @param numChannels the number of open channels
+	 * @param replacements the number of channels replaced
+	 * @return the wall clock time in milliseconds
+	 */
+	private static long run(String topologyFile, boolean incremental, int numChannels, int replacements) {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		PrintStream out = System.out;
+		BenchmarkNetworkOperatingSystem nos;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			nos = new BenchmarkNetworkOperatingSystem(topologyFile);
+		} finally {
+			System.setOut(out);
+		}
+		nos.setIncrementalChannelAdjustment(incremental);
+
+		Random random = new Random(42);
+		for (int i = 0; i < numChannels; i++) {
+			nos.openChannel(random);
+		}
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < replacements; i++) {
+			nos.closeChannel(random.nextInt(numChannels));
+			nos.openChannel(random);
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Network operating system opening and closing channels between hosts directly.
+	 */
+	private static class BenchmarkNetworkOperatingSystem extends SimpleNetworkOperatingSystem {
+
+		private final List<Channel> openChannels = new ArrayList<Channel>();
+		private int channelNumber = 0;
+
+		BenchmarkNetworkOperatingSystem(String fileName) {
+			super(fileName);
+		}
+
+		void openChannel(Random random) {
+			SDNHost src = sdnhosts.get(random.nextInt(sdnhosts.size()));
+			SDNHost dst = sdnhosts.get(random.nextInt(sdnhosts.size()));
+			while (dst == src) {
+				dst = sdnhosts.get(random.nextInt(sdnhosts.size()));
+			}
+
+			List<Node> nodes = new ArrayList<Node>();
+			List<Link> links = new ArrayList<Link>();
+			Node node = src;
+			nodes.add(node);
+			while (node != dst) {
+				Link link = node.getRoute(dst).get(0);
+				node = link.getOtherNode(node);
+				links.add(link);
+				nodes.add(node);
+			}
+
+			int number = channelNumber++;
+			boolean dedicated = random.nextInt(4) == 0;
+			int chId = dedicated ? number : -1;
+			Channel channel = new Channel(chId, number, 0, nodes, links, dedicated ? 50000000 : 0);
+			addChannel(number, 0, chId, channel);
+			openChannels.add(channel);
+		}
+
+		void closeChannel(int index) {
+			Channel channel = openChannels.get(index);
+			openChannels.set(index, openChannels.get(openChannels.size() - 1));
+			openChannels.remove(openChannels.size() - 1);
+			removeChannel(getKey(channel.getSrcId(), channel.getDstId(), channel.getChId()));
+		}
+	}
+}
@@ -7,6 +7,7 @@
 package org.fog.application;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +51,28 @@ public class AppModule extends PowerVm{
 	 */
 	private Map<String, List<Integer>> actuatorSubscriptions;
 	
+	/**
+	 * Map from the ID of each placement sharing this module to the map from tuple type to addresses of modules 
+	 * receiving the tuples of that placement. Created when first needed, only for shared modules.
+	 */
+	private Map<Integer, Map<String, List<AppModuleAddress>>> placementDestModules;
+	
+	/**
+	 * Map from the ID of each placement sharing this module to the map from tuple type to actuators of that placement 
+	 * subscribing to it. Created when first needed, only for shared modules.
+	 */
+	private Map<Integer, Map<String, List<Integer>>> placementActuatorSubscriptions;
+	
+	/**
+	 * Index of the module in the dispatch tables of its application, or -1 if the application is not compiled
+	 */
+	private int moduleIndex = -1;
+	
+	/**
+	 * MIPS share requested from the host for each executed tuple, cached while the MIPS of the module do not change
+	 */
+	private List<Double> mipsShareRequest;
+	
 	public AppModule(
 			int id,
 			String name,
@@ -89,7 +112,7 @@ public class AppModule extends PowerVm{
 	}
 	
 	public AppModule(AppModule operator) {
-		super(FogUtils.generateEntityId(), operator.getUserId(), operator.getMips(), 1, operator.getRam(), operator.getBw(), operator.getSize(), 1, operator.getVmm(), new TupleScheduler(operator.getMips(), 1), operator.getSchedulingInterval());
+		super(FogUtils.generateEntityId(), operator.getUserId(), operator.getMips(), 1, operator.getRam(), operator.getBw(), operator.getSize(), 1, operator.getVmm(), createScheduler(operator), operator.getSchedulingInterval());
 		setName(operator.getName());
 		setAppId(operator.getAppId());
 		setInMigration(false);
@@ -99,17 +122,127 @@ public class AppModule extends PowerVm{
 		setCurrentAllocatedRam(0);
 		setCurrentAllocatedSize(0);
 		setSelectivityMap(operator.getSelectivityMap());
+		setModuleIndex(operator.getModuleIndex());
 		setDownInstanceIdsMaps(new HashMap<String, List<Integer>>());
 		setDestModules(new HashMap<String, List<AppModuleAddress>>());
 		setActuatorSubscriptions(new HashMap<String, List<Integer>>());
 	}
 	
+	/**
+	 * Creates a tuple scheduler for a copy of a module, of the same kind as the scheduler of the module.
+	 */
+	private static TupleScheduler createScheduler(AppModule operator) {
+		if (operator.getCloudletScheduler() instanceof TupleScheduler)
+			return ((TupleScheduler) operator.getCloudletScheduler()).createScheduler(operator.getMips(), 1);
+		return new TupleScheduler(operator.getMips(), 1);
+	}
+	
 	public void subscribeActuator(int id, String tupleType){
 		if(!getActuatorSubscriptions().containsKey(tupleType))
 			getActuatorSubscriptions().put(tupleType, new ArrayList<Integer>());
 		getActuatorSubscriptions().get(tupleType).add(id);
 	}
 	
+	/**
+	 * Subscribes an actuator of one of the placements sharing this module to a tuple type, so that it receives the
+	 * tuples of that type originating from the placement. The actuator is also subscribed to the tuples originating 
+	 * from no placement, such as periodic tuples.
+	 * @param id ID of the actuator
+	 * @param tupleType the tuple type
+	 * @param placementId ID of the placement
+	 */
+	public void subscribeActuator(int id, String tupleType, int placementId){
+		if (placementActuatorSubscriptions == null)
+			placementActuatorSubscriptions = new HashMap<Integer, Map<String, List<Integer>>>();
+		addToRoute(placementActuatorSubscriptions, placementId, tupleType, id);
+		List<Integer> actuatorIds = getActuatorSubscriptions().get(tupleType);
+		if (actuatorIds == null || !actuatorIds.contains(id))
+			subscribeActuator(id, tupleType);
+	}
+	
+	/**
+	 * Adds the destination of the tuples of a type originating from one of the placements sharing this module. 
+	 * The destination also receives the tuples originating from no placement, such as periodic tuples.
+	 * @param tupleType the tuple type
+	 * @param destModule address of the destination module
+	 * @param placementId ID of the placement
+	 */
+	public void addDestModule(String tupleType, AppModuleAddress destModule, int placementId) {
+		if (placementDestModules == null)
+			placementDestModules = new HashMap<Integer, Map<String, List<AppModuleAddress>>>();
+		addToRoute(placementDestModules, placementId, tupleType, destModule);
+		List<AppModuleAddress> destinations = getDestModules().get(tupleType);
+		if (destinations != null) {
+			for (AppModuleAddress destination : destinations) {
+				if (destination.getVmId() == destModule.getVmId() && destination.getFogDeviceId() == destModule.getFogDeviceId())
+					return;
+			}
+		}
+		addDestModule(tupleType, destModule);
+	}
+	
+	private static <T> void addToRoute(Map<Integer, Map<String, List<T>>> routes, int placementId, String tupleType, T destination) {
+		Map<String, List<T>> route = routes.get(placementId);
+		if (route == null) {
+			route = new HashMap<String, List<T>>();
+			routes.put(placementId, route);
+		}
+		List<T> destinations = route.get(tupleType);
+		if (destinations == null) {
+			destinations = new ArrayList<T>();
+			route.put(tupleType, destinations);
+		}
+		if (!destinations.contains(destination))
+			destinations.add(destination);
+	}
+	
+	/**
+	 * Gets the addresses of the modules receiving the tuples of a type originating from a placement.
+	 * @param tupleType the tuple type
+	 * @param placementId ID of the placement, or -1
+	 * @return the addresses, or null if there are none
+	 */
+	public List<AppModuleAddress> getDestModules(String tupleType, int placementId) {
+		if (placementId >= 0 && placementDestModules != null) {
+			Map<String, List<AppModuleAddress>> route = placementDestModules.get(placementId);
+			if (route != null)
+				return route.get(tupleType);
+		}
+		return getDestModules().get(tupleType);
+	}
+	
+	/**
+	 * Gets the IDs of the actuators receiving the tuples of a type originating from a placement.
+	 * @param tupleType the tuple type
+	 * @param placementId ID of the placement, or -1
+	 * @return the IDs, or null if there are none
+	 */
+	public List<Integer> getActuatorSubscriptions(String tupleType, int placementId) {
+		if (placementId >= 0 && placementActuatorSubscriptions != null) {
+			Map<String, List<Integer>> route = placementActuatorSubscriptions.get(placementId);
+			if (route != null)
+				return route.get(tupleType);
+		}
+		return getActuatorSubscriptions().get(tupleType);
+	}
+	
+	/**
+	 * Gets the MIPS share the module requests from its host, a single PE with the MIPS of the module.
+	 * The list is shared and should not be modified.
+	 * @return the requested MIPS share
+	 */
+	public List<Double> getMipsShareRequest() {
+		if (mipsShareRequest == null || mipsShareRequest.get(0).doubleValue() != getMips())
+			mipsShareRequest = Collections.singletonList(getMips());
+		return mipsShareRequest;
+	}
+	
+	public int getModuleIndex() {
+		return moduleIndex;
+	}
+	public void setModuleIndex(int moduleIndex) {
+		this.moduleIndex = moduleIndex;
+	}
 	public String getName() {
 		return name;
 	}
@@ -12,9 +12,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.math3.util.Pair;
-import org.cloudbus.cloudsim.UtilizationModelFull;
 import org.fog.application.selectivity.SelectivityModel;
 import org.fog.entities.Tuple;
+import org.fog.entities.TuplePool;
+import org.fog.scheduler.FinishTimeTupleScheduler;
 import org.fog.scheduler.TupleScheduler;
 import org.fog.utils.FogUtils;
 import org.fog.utils.GeoCoverage;
@@ -46,6 +47,18 @@ public class Application {
 	private List<AppLoop> loops;
 	
 	private Map<String, AppEdge> edgeMap;
+	
+	/**
+	 * Dispatch tables of the application, or null if it is not compiled or has changed since
+	 */
+	private CompiledApplication compiledApplication;
+	
+	private static final AppLoop[] NO_LOOPS = new AppLoop[0];
+	
+	/**
+	 * Flag indicating if the modules added from now on execute their tuples with a {@link FinishTimeTupleScheduler}
+	 */
+	private boolean finishTimeScheduling;
 
 	/**
 	 * Creates a plain vanilla application with no modules and edges.
@@ -67,11 +80,12 @@ public class Application {
 		long bw = 1;
 		String vmm = "Xen";
 		
+		TupleScheduler scheduler = isFinishTimeScheduling() ? new FinishTimeTupleScheduler(mips, 1) : new TupleScheduler(mips, 1);
 		AppModule module = new AppModule(FogUtils.generateEntityId(), moduleName, appId, userId, 
-				mips, ram, bw, size, vmm, new TupleScheduler(mips, 1), new HashMap<Pair<String, String>, SelectivityModel>());
+				mips, ram, bw, size, vmm, scheduler, new HashMap<Pair<String, String>, SelectivityModel>());
 		
 		getModules().add(module);
-		
+		compiledApplication = null;
 	}
 	
 	/**
@@ -89,6 +103,7 @@ public class Application {
 		AppEdge edge = new AppEdge(source, destination, tupleCpuLength, tupleNwLength, tupleType, direction, edgeType);
 		getEdges().add(edge);
 		getEdgeMap().put(edge.getTupleType(), edge);
+		compiledApplication = null;
 	}
 	
 	/**
@@ -106,6 +121,7 @@ public class Application {
 		AppEdge edge = new AppEdge(source, destination, periodicity, tupleCpuLength, tupleNwLength, tupleType, direction, edgeType);
 		getEdges().add(edge);
 		getEdgeMap().put(edge.getTupleType(), edge);
+		compiledApplication = null;
 	}
 	
 	/**
@@ -118,6 +134,25 @@ public class Application {
 	public void addTupleMapping(String moduleName, String inputTupleType, String outputTupleType, SelectivityModel selectivityModel){
 		AppModule module = getModuleByName(moduleName);
 		module.getSelectivityMap().put(new Pair<String, String>(inputTupleType, outputTupleType), selectivityModel);
+		compiledApplication = null;
+	}
+	
+	/**
+	 * Compile the dispatch tables of the application, used to find the tuples resulting from the execution of a tuple
+	 * without comparing strings. Done when the application is deployed; changing the application afterwards discards them.
+	 * @return the dispatch tables
+	 */
+	public CompiledApplication compile() {
+		compiledApplication = new CompiledApplication(this);
+		return compiledApplication;
+	}
+	
+	/**
+	 * Get the dispatch tables of the application.
+	 * @return the dispatch tables, or null if the application is not compiled
+	 */
+	public CompiledApplication getCompiledApplication() {
+		return compiledApplication;
 	}
 	
 	/**
@@ -163,6 +198,10 @@ public class Application {
 	 * @return
 	 */
 	public AppModule getModuleByName(String name){
+		if (compiledApplication != null) {
+			int index = compiledApplication.getModuleIndex(name);
+			return (index >= 0) ? modules.get(index) : null;
+		}
 		for(AppModule module : modules){
 			if(module.getName().equals(name))
 				return module;
@@ -178,6 +217,13 @@ public class Application {
 	 * @return
 	 */
 	public List<Tuple> getResultantTuples(String moduleName, Tuple inputTuple, int sourceDeviceId, int sourceModuleId){
+		if (compiledApplication != null) {
+			int moduleIndex = compiledApplication.getModuleIndex(moduleName);
+			int tupleTypeId = (inputTuple.getTupleTypeId() >= 0) ? inputTuple.getTupleTypeId() 
+					: compiledApplication.getTupleTypeId(inputTuple.getTupleType());
+			if (moduleIndex >= 0 && tupleTypeId >= 0)
+				return getResultantTuples(compiledApplication.getOutputEdges(moduleIndex, tupleTypeId), inputTuple, sourceDeviceId, sourceModuleId);
+		}
 		List<Tuple> tuples = new ArrayList<Tuple>();
 		AppModule module = getModuleByName(moduleName);
 		for(AppEdge edge : getEdges()){
@@ -188,58 +234,74 @@ public class Application {
 					continue;
 				SelectivityModel selectivityModel = module.getSelectivityMap().get(pair);
 				if(selectivityModel.canSelect()){
-					//TODO check if the edge is ACTUATOR, then create multiple tuples
-					if(edge.getEdgeType() == AppEdge.ACTUATOR){
-						//for(Integer actuatorId : module.getActuatorSubscriptions().get(edge.getTupleType())){
-							Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
-									(long) (edge.getTupleCpuLength()),
-									inputTuple.getNumberOfPes(),
-									(long) (edge.getTupleNwLength()),
-									inputTuple.getCloudletOutputSize(),
-									inputTuple.getUtilizationModelCpu(),
-									inputTuple.getUtilizationModelRam(),
-									inputTuple.getUtilizationModelBw()
-									);
-							tuple.setActualTupleId(inputTuple.getActualTupleId());
-							tuple.setUserId(inputTuple.getUserId());
-							tuple.setAppId(inputTuple.getAppId());
-							tuple.setDestModuleName(edge.getDestination());
-							tuple.setSrcModuleName(edge.getSource());
-							tuple.setDirection(Tuple.ACTUATOR);
-							tuple.setTupleType(edge.getTupleType());
-							tuple.setSourceDeviceId(sourceDeviceId);
-							tuple.setSourceModuleId(sourceModuleId);
-							//tuple.setActuatorId(actuatorId);
-							
-							tuples.add(tuple);
-						//}
-					}else{
-						Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
-								(long) (edge.getTupleCpuLength()),
-								inputTuple.getNumberOfPes(),
-								(long) (edge.getTupleNwLength()),
-								inputTuple.getCloudletOutputSize(),
-								inputTuple.getUtilizationModelCpu(),
-								inputTuple.getUtilizationModelRam(),
-								inputTuple.getUtilizationModelBw()
-								);
-						tuple.setActualTupleId(inputTuple.getActualTupleId());
-						tuple.setUserId(inputTuple.getUserId());
-						tuple.setAppId(inputTuple.getAppId());
-						tuple.setDestModuleName(edge.getDestination());
-						tuple.setSrcModuleName(edge.getSource());
-						tuple.setDirection(edge.getDirection());
-						tuple.setTupleType(edge.getTupleType());
-						tuple.setSourceModuleId(sourceModuleId);
-
-						tuples.add(tuple);
-					}
+					tuples.add(createResultantTuple(edge, -1, inputTuple, sourceDeviceId, sourceModuleId));
 				}
 			}
 		}
 		return tuples;
 	}
 	
+	/**
+	 * Get the tuples generated upon execution of incoming tuple <i>inputTuple</i> by a module, using the dispatch tables 
+	 * of the application if it is compiled.
+	 * @param module instance of the module performing execution of incoming tuple and emitting resultant tuples
+	 * @param inputTuple incoming tuple, whose execution creates resultant tuples
+	 * @param sourceDeviceId
+	 * @return
+	 */
+	public List<Tuple> getResultantTuples(AppModule module, Tuple inputTuple, int sourceDeviceId){
+		if (compiledApplication == null || module.getModuleIndex() < 0 || inputTuple.getTupleTypeId() < 0)
+			return getResultantTuples(module.getName(), inputTuple, sourceDeviceId, module.getId());
+		return getResultantTuples(compiledApplication.getOutputEdges(module.getModuleIndex(), inputTuple.getTupleTypeId()), 
+				inputTuple, sourceDeviceId, module.getId());
+	}
+	
+	private List<Tuple> getResultantTuples(CompiledApplication.OutputEdge[] outputEdges, Tuple inputTuple, int sourceDeviceId, int sourceModuleId){
+		List<Tuple> tuples = new ArrayList<Tuple>(outputEdges.length);
+		for (CompiledApplication.OutputEdge outputEdge : outputEdges) {
+			if (outputEdge.getSelectivityModel().canSelect())
+				tuples.add(createResultantTuple(outputEdge.getEdge(), outputEdge.getTupleTypeId(), inputTuple, sourceDeviceId, sourceModuleId));
+		}
+		return tuples;
+	}
+	
+	/**
+	 * Create a tuple resulting from the execution of a tuple, to be sent on an edge.
+	 * @param edge the edge
+	 * @param tupleTypeId ID of the tuple type of the edge, or -1 if unknown
+	 * @param inputTuple the executed tuple
+	 * @param sourceDeviceId
+	 * @param sourceModuleId
+	 * @return
+	 */
+	private Tuple createResultantTuple(AppEdge edge, int tupleTypeId, Tuple inputTuple, int sourceDeviceId, int sourceModuleId){
+		Tuple tuple = TuplePool.obtain(appId, FogUtils.generateTupleId(), edge.getDirection(),  
+				(long) (edge.getTupleCpuLength()),
+				inputTuple.getNumberOfPes(),
+				(long) (edge.getTupleNwLength()),
+				inputTuple.getCloudletOutputSize(),
+				inputTuple.getUtilizationModelCpu(),
+				inputTuple.getUtilizationModelRam(),
+				inputTuple.getUtilizationModelBw()
+				);
+		tuple.setActualTupleId(inputTuple.getActualTupleId());
+		tuple.setUserId(inputTuple.getUserId());
+		tuple.setAppId(inputTuple.getAppId());
+		tuple.setDestModuleName(edge.getDestination());
+		tuple.setSrcModuleName(edge.getSource());
+		tuple.setTupleType(edge.getTupleType(), tupleTypeId);
+		tuple.setSourceModuleId(sourceModuleId);
+		tuple.setPlacementId(inputTuple.getPlacementId());
+		//TODO check if the edge is ACTUATOR, then create multiple tuples
+		if(edge.getEdgeType() == AppEdge.ACTUATOR){
+			tuple.setDirection(Tuple.ACTUATOR);
+			tuple.setSourceDeviceId(sourceDeviceId);
+		}else{
+			tuple.setDirection(edge.getDirection());
+		}
+		return tuple;
+	}
+	
 	/**
 	 * Create a tuple for a given application edge
 	 * @param edge
@@ -250,21 +312,21 @@ public class Application {
 		AppModule module = getModuleByName(edge.getSource());
 		if(edge.getEdgeType() == AppEdge.ACTUATOR){
 			for(Integer actuatorId : module.getActuatorSubscriptions().get(edge.getTupleType())){
-				Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
+				Tuple tuple = TuplePool.obtain(appId, FogUtils.generateTupleId(), edge.getDirection(),  
 						(long) (edge.getTupleCpuLength()),
 						1,
 						(long) (edge.getTupleNwLength()),
 						100,
-						new UtilizationModelFull(), 
-						new UtilizationModelFull(), 
-						new UtilizationModelFull()
+						Tuple.UTILIZATION_MODEL_FULL, 
+						Tuple.UTILIZATION_MODEL_FULL, 
+						Tuple.UTILIZATION_MODEL_FULL
 						);
 				tuple.setUserId(getUserId());
 				tuple.setAppId(getAppId());
 				tuple.setDestModuleName(edge.getDestination());
 				tuple.setSrcModuleName(edge.getSource());
 				tuple.setDirection(Tuple.ACTUATOR);
-				tuple.setTupleType(edge.getTupleType());
+				tuple.setTupleType(edge.getTupleType(), getTupleTypeId(edge.getTupleType()));
 				tuple.setSourceDeviceId(sourceDeviceId);
 				tuple.setActuatorId(actuatorId);
 				tuple.setSourceModuleId(sourceModuleId);
@@ -272,14 +334,14 @@ public class Application {
 				return tuple;
 			}
 		}else{
-			Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
+			Tuple tuple = TuplePool.obtain(appId, FogUtils.generateTupleId(), edge.getDirection(),  
 					(long) (edge.getTupleCpuLength()),
 					1,
 					(long) (edge.getTupleNwLength()),
 					100,
-					new UtilizationModelFull(), 
-					new UtilizationModelFull(), 
-					new UtilizationModelFull()
+					Tuple.UTILIZATION_MODEL_FULL, 
+					Tuple.UTILIZATION_MODEL_FULL, 
+					Tuple.UTILIZATION_MODEL_FULL
 					);
 			//tuple.setActualTupleId(inputTuple.getActualTupleId());
 			tuple.setUserId(getUserId());
@@ -287,7 +349,7 @@ public class Application {
 			tuple.setDestModuleName(edge.getDestination());
 			tuple.setSrcModuleName(edge.getSource());
 			tuple.setDirection(edge.getDirection());
-			tuple.setTupleType(edge.getTupleType());
+			tuple.setTupleType(edge.getTupleType(), getTupleTypeId(edge.getTupleType()));
 			tuple.setSourceModuleId(sourceModuleId);
 
 			return tuple;
@@ -295,6 +357,83 @@ public class Application {
 		return null;
 	}
 	
+	/**
+	 * Get the ID of a tuple type in the dispatch tables of the application.
+	 * @param tupleType the tuple type
+	 * @return the ID, or -1 if the application is not compiled or the tuple type is unknown
+	 */
+	public int getTupleTypeId(String tupleType) {
+		return (compiledApplication != null) ? compiledApplication.getTupleTypeId(tupleType) : -1;
+	}
+	
+	/**
+	 * Get the first loop having an edge.
+	 * @param src source module, or tuple type of the source sensor
+	 * @param dest destination module
+	 * @return the loop, or null if the edge belongs to no loop
+	 */
+	public AppLoop getLoopWithEdge(String src, String dest){
+		if (compiledApplication != null) {
+			CompiledApplication.LoopEdge loopEdge = compiledApplication.getLoopEdge(src, dest);
+			return (loopEdge == null) ? null : loopEdge.getLoops()[0];
+		}
+		for(AppLoop loop : getLoops()){
+			if(loop.hasEdge(src, dest))
+				return loop;
+		}
+		return null;
+	}
+	
+	/**
+	 * Get the loops started by the tuples sent on an edge, i.e. the loops having the edge and starting at its source.
+	 * @param src source module
+	 * @param dest destination module
+	 * @return the loops
+	 */
+	public AppLoop[] getLoopsStartedBy(String src, String dest){
+		if (compiledApplication != null) {
+			CompiledApplication.LoopEdge loopEdge = compiledApplication.getLoopEdge(src, dest);
+			return (loopEdge == null) ? NO_LOOPS : loopEdge.getStartedLoops();
+		}
+		List<AppLoop> startedLoops = new ArrayList<AppLoop>();
+		for(AppLoop loop : getLoops()){
+			if(loop.hasEdge(src, dest) && loop.isStartModule(src))
+				startedLoops.add(loop);
+		}
+		return startedLoops.toArray(new AppLoop[startedLoops.size()]);
+	}
+	
+	/**
+	 * Get the loop ended by the tuples received on an edge, i.e. the first loop having the edge and ending at its destination.
+	 * @param src source module
+	 * @param dest destination module, or actuator
+	 * @return the loop, or null if there is none
+	 */
+	public AppLoop getLoopEndedBy(String src, String dest){
+		if (compiledApplication != null) {
+			CompiledApplication.LoopEdge loopEdge = compiledApplication.getLoopEdge(src, dest);
+			return (loopEdge == null) ? null : loopEdge.getEndedLoop();
+		}
+		for(AppLoop loop : getLoops()){
+			if(loop.hasEdge(src, dest) && loop.isEndModule(dest))
+				return loop;
+		}
+		return null;
+	}
+	
+	public boolean isFinishTimeScheduling() {
+		return finishTimeScheduling;
+	}
+
+	/**
+	 * Sets whether the modules added from now on execute their tuples with a {@link FinishTimeTupleScheduler}, 
+	 * which finishes tuples in O(log n) and pushes them to the fog device instead of being polled.
+	 * @param finishTimeScheduling true to use the finish-time scheduler
+	 */
+	public void setFinishTimeScheduling(boolean finishTimeScheduling) {
+		this.finishTimeScheduling = finishTimeScheduling;
+	}
+	
 	public String getAppId() {
 		return appId;
 	}
@@ -326,6 +465,7 @@ public class Application {
 
 	public void setLoops(List<AppLoop> loops) {
 		this.loops = loops;
+		compiledApplication = null;
 	}
 
 	public int getUserId() {
@@ -0,0 +1,247 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.application;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.util.Pair;
+import org.fog.application.selectivity.SelectivityModel;
+
+/**
+ * Dispatch tables of an application, compiled once it is deployed so that the tuples resulting from the execution
+ * of a tuple are found without comparing or hashing strings (see {@link Application#compile()}).
+ * Modules are identified by their index in the list of modules of the application, and tuple types by an interned ID.
+ */
+public class CompiledApplication {
+
+	/**
+	 * Output edge of a module for a given input tuple type, with the selectivity model relating them.
+	 */
+	public static class OutputEdge {
+		private final AppEdge edge;
+		private final int tupleTypeId;
+		private final SelectivityModel selectivityModel;
+
+		OutputEdge(AppEdge edge, int tupleTypeId, SelectivityModel selectivityModel) {
+			this.edge = edge;
+			this.tupleTypeId = tupleTypeId;
+			this.selectivityModel = selectivityModel;
+		}
+
+		public AppEdge getEdge() {
+			return edge;
+		}
+
+		public int getTupleTypeId() {
+			return tupleTypeId;
+		}
+
+		public SelectivityModel getSelectivityModel() {
+			return selectivityModel;
+		}
+	}
+
+	/**
+	 * Loops an edge between two modules (or a sensor and a module, or a module and an actuator) belongs to.
+	 */
+	public static class LoopEdge {
+		private final AppLoop[] loops;
+		private final AppLoop[] startedLoops;
+		private final AppLoop endedLoop;
+
+		LoopEdge(List<AppLoop> loops, String source, String destination) {
+			List<AppLoop> startedLoops = new ArrayList<AppLoop>();
+			AppLoop endedLoop = null;
+			for (AppLoop loop : loops) {
+				if (loop.isStartModule(source))
+					startedLoops.add(loop);
+				if (endedLoop == null && loop.isEndModule(destination))
+					endedLoop = loop;
+			}
+			this.loops = loops.toArray(new AppLoop[loops.size()]);
+			this.startedLoops = startedLoops.toArray(new AppLoop[startedLoops.size()]);
+			this.endedLoop = endedLoop;
+		}
+
+		/**
+		 * @return the loops having the edge, in the order of the loops of the application
+		 */
+		public AppLoop[] getLoops() {
+			return loops;
+		}
+
+		/**
+		 * @return the loops having the edge and starting at its source
+		 */
+		public AppLoop[] getStartedLoops() {
+			return startedLoops;
+		}
+
+		/**
+		 * @return the first loop having the edge and ending at its destination, or null if there is none
+		 */
+		public AppLoop getEndedLoop() {
+			return endedLoop;
+		}
+	}
+
+	private static final OutputEdge[] NO_OUTPUT_EDGES = new OutputEdge[0];
+
+	/**
+	 * Tuple types by ID
+	 */
+	private List<String> tupleTypes;
+	/**
+	 * Map from tuple type to its ID
+	 */
+	private Map<String, Integer> tupleTypeIds;
+	/**
+	 * Map from module name to its index
+	 */
+	private Map<String, Integer> moduleIndices;
+	/**
+	 * Map from the source of edges (a module name or a sensor tuple type) to the last edge it is the source of
+	 */
+	private Map<String, AppEdge> edgesBySource;
+	/**
+	 * Output edges indexed by module index and then by input tuple type ID, in the order of the edges of the application
+	 */
+	private OutputEdge[][][] outputEdges;
+	/**
+	 * Map from the source and then the destination of an edge to the loops it belongs to, for the edges of loops only
+	 */
+	private Map<String, Map<String, LoopEdge>> loopEdges;
+
+	CompiledApplication(Application application) {
+		tupleTypes = new ArrayList<String>();
+		tupleTypeIds = new HashMap<String, Integer>();
+		moduleIndices = new HashMap<String, Integer>();
+		edgesBySource = new HashMap<String, AppEdge>();
+		for (AppEdge edge : application.getEdges()) {
+			intern(edge.getTupleType());
+			intern(edge.getSource());	// sensors emit tuples of the type they are named after
+			edgesBySource.put(edge.getSource(), edge);
+		}
+		List<AppModule> modules = application.getModules();
+		outputEdges = new OutputEdge[modules.size()][][];
+		for (int i = 0; i < modules.size(); i++) {
+			AppModule module = modules.get(i);
+			moduleIndices.put(module.getName(), i);
+			module.setModuleIndex(i);
+			List<List<OutputEdge>> edgesByInputType = new ArrayList<List<OutputEdge>>();
+			for (int t = 0; t < tupleTypes.size(); t++)
+				edgesByInputType.add(new ArrayList<OutputEdge>());
+			for (AppEdge edge : application.getEdges()) {  // in order of the edges, which is the order resultant tuples are emitted in
+				if (!edge.getSource().equals(module.getName()))
+					continue;
+				for (Map.Entry<Pair<String, String>, SelectivityModel> e : module.getSelectivityMap().entrySet()) {
+					Integer inputTypeId = tupleTypeIds.get(e.getKey().getFirst());
+					if (inputTypeId != null && e.getKey().getSecond().equals(edge.getTupleType()))
+						edgesByInputType.get(inputTypeId).add(new OutputEdge(edge, tupleTypeIds.get(edge.getTupleType()), e.getValue()));
+				}
+			}
+			outputEdges[i] = new OutputEdge[tupleTypes.size()][];
+			for (int t = 0; t < tupleTypes.size(); t++) {
+				List<OutputEdge> edges = edgesByInputType.get(t);
+				outputEdges[i][t] = edges.isEmpty() ? NO_OUTPUT_EDGES : edges.toArray(new OutputEdge[edges.size()]);
+			}
+		}
+		compileLoops(application);
+	}
+
+	private void compileLoops(Application application) {
+		Map<String, Map<String, List<AppLoop>>> loopsByEdge = new HashMap<String, Map<String, List<AppLoop>>>();
+		if (application.getLoops() != null) {
+			for (AppLoop loop : application.getLoops()) {
+				List<String> loopModules = loop.getModules();
+				for (int i = 0; i < loopModules.size()-1; i++) {
+					Map<String, List<AppLoop>> loopsBySource = loopsByEdge.get(loopModules.get(i));
+					if (loopsBySource == null) {
+						loopsBySource = new HashMap<String, List<AppLoop>>();
+						loopsByEdge.put(loopModules.get(i), loopsBySource);
+					}
+					List<AppLoop> loops = loopsBySource.get(loopModules.get(i+1));
+					if (loops == null) {
+						loops = new ArrayList<AppLoop>();
+						loopsBySource.put(loopModules.get(i+1), loops);
+					}
+					if (!loops.contains(loop))	// a loop may go through the same edge twice
+						loops.add(loop);
+				}
+			}
+		}
+		loopEdges = new HashMap<String, Map<String, LoopEdge>>();
+		for (Map.Entry<String, Map<String, List<AppLoop>>> e : loopsByEdge.entrySet()) {
+			Map<String, LoopEdge> edges = new HashMap<String, LoopEdge>();
+			for (Map.Entry<String, List<AppLoop>> f : e.getValue().entrySet())
+				edges.put(f.getKey(), new LoopEdge(f.getValue(), e.getKey(), f.getKey()));
+			loopEdges.put(e.getKey(), edges);
+		}
+	}
+
+	private void intern(String tupleType) {
+		if (!tupleTypeIds.containsKey(tupleType)) {
+			tupleTypeIds.put(tupleType, tupleTypes.size());
+			tupleTypes.add(tupleType);
+		}
+	}
+
+	/**
+	 * Gets the output edges of a module for an input tuple type.
+	 * @param moduleIndex index of the module
+	 * @param tupleTypeId ID of the input tuple type
+	 * @return the output edges, in the order of the edges of the application
+	 */
+	public OutputEdge[] getOutputEdges(int moduleIndex, int tupleTypeId) {
+		return outputEdges[moduleIndex][tupleTypeId];
+	}
+
+	/**
+	 * Gets the ID of a tuple type.
+	 * @param tupleType the tuple type
+	 * @return the ID, or -1 if the tuple type does not appear in the application
+	 */
+	public int getTupleTypeId(String tupleType) {
+		Integer id = tupleTypeIds.get(tupleType);
+		return (id == null) ? -1 : id;
+	}
+
+	public String getTupleType(int tupleTypeId) {
+		return tupleTypes.get(tupleTypeId);
+	}
+
+	/**
+	 * Gets the index of a module.
+	 * @param moduleName name of the module
+	 * @return the index, or -1 if there is no such module
+	 */
+	public int getModuleIndex(String moduleName) {
+		Integer index = moduleIndices.get(moduleName);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * Gets the loops an edge belongs to.
+	 * @param source name of the source module, or tuple type of the source sensor
+	 * @param destination name of the destination module, or of the actuator
+	 * @return the loops, or null if the edge belongs to no loop
+	 */
+	public LoopEdge getLoopEdge(String source, String destination) {
+		Map<String, LoopEdge> edges = loopEdges.get(source);
+		return (edges == null) ? null : edges.get(destination);
+	}
+
+	/**
+	 * Gets the edge a module or sensor is the source of. If there are several, the last one is returned.
+	 * @param source name of the module, or tuple type of the sensor
+	 * @return the edge, or null if there is none
+	 */
+	public AppEdge getEdgeBySource(String source) {
+		return edgesBySource.get(source);
+	}
+}
@@ -6,7 +6,6 @@
 
 package org.fog.entities;
 
-import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
@@ -19,6 +18,7 @@ import org.fog.utils.TimeKeeper;
 
 public class Actuator extends SimEntity {
     public static final String LOG_TAG = "ACTUATOR";
+    private static final int LOG_TAG_ID = Logger.getTagId(LOG_TAG);
 
     private int gatewayDeviceId;
     private double latency;
@@ -83,31 +83,16 @@ public class Actuator extends SimEntity {
 
     private void processTupleArrival(SimEvent ev) {
         Tuple tuple = (Tuple) ev.getData();
-        Logger.debug(LOG_TAG, getName(), "Received tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
+        if (Logger.isDebugEnabled(LOG_TAG_ID))
+            Logger.debug(LOG_TAG_ID, getName(), "Received tuple {}on {}", tuple.getCloudletId(), tuple.getDestModuleName());
         String srcModule = tuple.getSrcModuleName();
         String destModule = tuple.getDestModuleName();
         Application app = getApplication();
 
-        for (AppLoop loop : app.getLoops()) {
-            if (loop.hasEdge(srcModule, destModule) && loop.isEndModule(destModule)) {
-
-                Double startTime = TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                if (startTime == null)
-                    break;
-                if (!TimeKeeper.getInstance().getLoopIdToCurrentAverage().containsKey(loop.getLoopId())) {
-                    TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), 0.0);
-                    TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), 0);
-                }
-                double currentAverage = TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loop.getLoopId());
-                int currentCount = TimeKeeper.getInstance().getLoopIdToCurrentNum().get(loop.getLoopId());
-                double delay = CloudSim.clock() - TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                TimeKeeper.getInstance().getEmitTimes().remove(tuple.getActualTupleId());
-                double newAverage = (currentAverage * currentCount + delay) / (currentCount + 1);
-                TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), newAverage);
-                TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), currentCount + 1);
-                break;
-            }
-        }
+        AppLoop loop = app.getLoopEndedBy(srcModule, destModule);
+        if (loop != null)
+            TimeKeeper.getInstance().tupleReachedLoopEnd(loop.getLoopId(), tuple.getActualTupleId());
+        TuplePool.recycle(tuple);
     }
 
     @Override
@@ -159,6 +159,7 @@ public class FogBroker extends PowerDatacenterBroker{
 	
 	protected void deployApplication(String appId) {
 		Application application = getApplications().get(appId);
+		application.compile();
 		ModulePlacementPolicy modulePlacementPolicy = getAppModulePlacementPolicy().get(application.getAppId());
 		for(Integer fogDeviceId : fogDeviceIds){
 			// TODO Check necessity of this step
@@ -177,7 +178,7 @@ public class FogBroker extends PowerDatacenterBroker{
 		
 		List<ModulePlacement> placements = modulePlacementPolicy.computeModulePlacements(fogDeviceCharacteristics, sensorCharacteristics, actuatorCharacteristics);
 		
-		 ModuleLinks moduleLinks = linkModules(placements, application);
+		 ModuleLinks moduleLinks = linkModules(placements, application, modulePlacementPolicy);
 		 
 		 Map<AppModule, Integer> modulesToDispatch = moduleLinks.getModulesToDispatch();
 		 
@@ -191,16 +192,30 @@ public class FogBroker extends PowerDatacenterBroker{
 		}
 	}
 	
+	/**
+	 * Creates the module instances of the placements and links them to each other and to the sensors and actuators.
+	 * Each placement has its own instances, unless the placement policy shares a pool of instances of each module
+	 * on each device. In that case the instances are created once, the sensors of each placement stamp their tuples
+	 * with the index of the placement, and a shared instance sends each tuple on to the modules and actuators of the 
+	 * placement it originates from.
+	 */
 	private ModuleLinks linkModules(List<ModulePlacement> placements,
-			Application application) {
+			Application application, ModulePlacementPolicy modulePlacementPolicy) {
 		// TODO This function needs thorough testing
 		Map<AppModule, Integer> dispatchMapping = new HashMap<AppModule, Integer>();
 		ModuleLinks moduleLinks = new ModuleLinks();
 		moduleLinks.setEndpointConnection(new HashMap<Integer, AppModuleAddress>());
-		for (ModulePlacement placement : placements) {
+		boolean shared = modulePlacementPolicy.isSharingInstances();
+		// map from module name and device ID to the shared instances of the module on the device
+		Map<String, Map<Integer, AppModule[]>> sharedInstances = new HashMap<String, Map<Integer, AppModule[]>>();
+		for (int placementId = 0; placementId < placements.size(); placementId++) {
+			ModulePlacement placement = placements.get(placementId);
 			Map<String, AppModule> linkedModules = new HashMap<String, AppModule>();
+			int instance = shared ? modulePlacementPolicy.getInstanceBinding().bind(placement, modulePlacementPolicy.getSharedInstanceCount()) : -1;
 			for (Entry<String, Integer> mapping : placement.getPlacementMap().entrySet()) {
-				AppModule moduleToDispatch = new AppModule(application.getModuleByName(mapping.getKey()));
+				AppModule moduleToDispatch = shared ? getSharedInstance(sharedInstances, application, mapping.getKey(),
+						mapping.getValue(), instance, modulePlacementPolicy.getSharedInstanceCount())
+						: new AppModule(application.getModuleByName(mapping.getKey()));
 				linkedModules.put(mapping.getKey(), moduleToDispatch);
 			}
 			
@@ -212,10 +227,14 @@ public class FogBroker extends PowerDatacenterBroker{
 
 					int dstVmId = linkedModules.get(dstModule).getId();
 					int dstDeviceId = placement.getMappedDeviceId(dstModule);
-					linkedModules.get(srcModule).addDestModule(e.getTupleType(), new AppModuleAddress(dstVmId, dstDeviceId));
+					if (!shared)
+						linkedModules.get(srcModule).addDestModule(e.getTupleType(), new AppModuleAddress(dstVmId, dstDeviceId));
+					else
+						linkedModules.get(srcModule).addDestModule(e.getTupleType(), new AppModuleAddress(dstVmId, dstDeviceId), placementId);
 					
 				} else if (e.getEdgeType() == AppEdge.SENSOR) {
-					AppModuleAddress addr = new AppModuleAddress(linkedModules.get(dstModule).getId(), placement.getMappedDeviceId(dstModule));
+					AppModuleAddress addr = new AppModuleAddress(linkedModules.get(dstModule).getId(), placement.getMappedDeviceId(dstModule),
+							shared ? placementId : -1);
 					for (Integer sensorId : placement.getSensorIds().get(srcModule)) {
 						moduleLinks.getEndpointConnection().put(sensorId, addr);
 					}	
@@ -223,7 +242,10 @@ public class FogBroker extends PowerDatacenterBroker{
 					String actuatorType = dstModule;
 					AppModuleAddress addr = new AppModuleAddress(linkedModules.get(srcModule).getId(), placement.getMappedDeviceId(srcModule));
 					for (Integer actuatorId : placement.getActuatorIds().get(actuatorType)) {
-						linkedModules.get(srcModule).subscribeActuator(actuatorId, e.getTupleType());
+						if (!shared)
+							linkedModules.get(srcModule).subscribeActuator(actuatorId, e.getTupleType());
+						else
+							linkedModules.get(srcModule).subscribeActuator(actuatorId, e.getTupleType(), placementId);
 						moduleLinks.getEndpointConnection().put(actuatorId, addr);
 					}	
 				}
@@ -237,7 +259,27 @@ public class FogBroker extends PowerDatacenterBroker{
 		moduleLinks.setModulesToDispatch(dispatchMapping);
 		return moduleLinks;
 	}
-
+	
+	/**
+	 * Gets a shared instance of a module on a device, creating the instances of the module on the device if needed.
+	 */
+	private AppModule getSharedInstance(Map<String, Map<Integer, AppModule[]>> sharedInstances, Application application,
+			String moduleName, int deviceId, int instance, int instanceCount) {
+		Map<Integer, AppModule[]> instancesByDevice = sharedInstances.get(moduleName);
+		if (instancesByDevice == null) {
+			instancesByDevice = new HashMap<Integer, AppModule[]>();
+			sharedInstances.put(moduleName, instancesByDevice);
+		}
+		AppModule[] instances = instancesByDevice.get(deviceId);
+		if (instances == null) {
+			instances = new AppModule[instanceCount];
+			instancesByDevice.put(deviceId, instances);
+		}
+		if (instances[instance] == null)
+			instances[instance] = new AppModule(application.getModuleByName(moduleName));
+		return instances[instance];
+	}
+	
 	@Override
 	public void processEvent(SimEvent ev) {
 		switch(ev.getTag()) {
@@ -250,6 +292,27 @@ public class FogBroker extends PowerDatacenterBroker{
 		case CloudSimTags.RESOURCE_CHARACTERISTICS:
 			processResourceCharacteristics(ev);
 			break;
+		case CloudSimTags.CLOUDLET_RETURN:
+			if (ev.getData() instanceof Tuple)	// executed tuple, only released
+				TuplePool.recycle((Tuple) ev.getData());
+			break;
+		}
+	}
+
+	/**
+	 * Events the broker does not act on (such as the CLOUDLET_RETURN of every executed tuple, which only releases the tuple) are 
+	 * handled in the logical process of the entity that sent them, so that they do not limit the lookahead when the simulation 
+	 * runs in parallel.
+	 */
+	@Override
+	protected int getLogicalProcess(SimEvent ev) {
+		switch(ev.getTag()) {
+		case FogEvents.APP_SUBMIT:
+		case CloudSimTags.RESOURCE_CHARACTERISTICS_REQUEST:
+		case CloudSimTags.RESOURCE_CHARACTERISTICS:
+			return super.getLogicalProcess(ev);
+		default:
+			return CloudSim.getEntity(ev.getSource()).getLogicalProcess();
 		}
 	}
 
@@ -266,15 +329,18 @@ public class FogBroker extends PowerDatacenterBroker{
 	}
 	
 	private void printTimeDetails() {
+		Logger.flush();
 		System.out.println("=========================================");
 		System.out.println("APPLICATION LOOP DELAYS");
 		System.out.println("=========================================");
-		for(Integer loopId : TimeKeeper.getInstance().getLoopIdToTupleIds().keySet()){
+		for(Integer loopId : TimeKeeper.getInstance().getLoopIdToDelays().keySet()){
 			for (String appId : getApplications().keySet()) {
 				Application app = getApplications().get(appId);
 				for (AppLoop loop : app.getLoops()) {
-					if (loop.getLoopId() == loopId)
+					if (loop.getLoopId() == loopId) {
 						System.out.println(getStringForLoopId(loopId) + " ---> "+TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loopId));		
+						System.out.println("\t"+TimeKeeper.getInstance().getLoopIdToDelays().get(loopId));
+					}
 				}
 			}
 			
@@ -285,6 +351,7 @@ public class FogBroker extends PowerDatacenterBroker{
 		
 		for(String tupleType : TimeKeeper.getInstance().getTupleTypeToAverageCpuTime().keySet()){
 			System.out.println(tupleType + " ---> "+TimeKeeper.getInstance().getTupleTypeToAverageCpuTime().get(tupleType));
+			System.out.println("\t"+TimeKeeper.getInstance().getTupleTypeToCpuTimes().get(tupleType));
 		}
 		
 		System.out.println("=========================================");
@@ -17,12 +17,19 @@ import org.fog.application.AppEdge;
 import org.fog.application.AppLoop;
 import org.fog.application.AppModule;
 import org.fog.application.Application;
+import org.fog.network.Flow;
+import org.fog.network.FlowModel;
+import org.fog.network.PhysicalTopology;
+import org.fog.scheduler.FinishTimeTupleScheduler;
+import org.fog.scheduler.TupleCompletionListener;
 import org.fog.utils.*;
 
 import java.util.*;
 
 public class FogDevice extends PowerDatacenter {
     public static final String LOG_TAG = "FOG_DEVICE";
+    private static final int LOG_TAG_ID = Logger.getTagId(LOG_TAG);
+    private static final int ACTUATOR_SEND_TAG_ID = Logger.getTagId("actuator_send");
 
     protected Queue<Tuple> northTupleQueue;
     protected Queue<Pair<Tuple, Integer>> southTupleQueue;
@@ -79,6 +86,25 @@ public class FogDevice extends PowerDatacenter {
 
     protected int linkId;
 
+    /**
+     * Flows carrying the periodic tuples of each module when the network uses the flow-level model, by module ID
+     */
+    protected Map<Integer, List<Flow>> periodicFlows;
+
+    /**
+     * Listener the modules executing their tuples with a finish-time scheduler push their finished tuples to
+     */
+    private final TupleCompletionListener tupleCompletionListener = new TupleCompletionListener() {
+        @Override
+        public void tupleFinished(FinishTimeTupleScheduler scheduler, Tuple tuple) {
+            sendNow(getId(), FogEvents.TUPLE_FINISHED, tuple);
+        }
+
+        @Override
+        public void nextFinishTimeChanged(FinishTimeTupleScheduler scheduler, double finishTime) {
+            send(getId(), finishTime - CloudSim.clock(), FogEvents.TUPLE_COMPLETION_DUE);
+        }
+    };
 
     public FogDevice(
             String name,
@@ -112,6 +138,7 @@ public class FogDevice extends PowerDatacenter {
         this.lastUtilization = 0;
         setTotalCost(0);
         moduleMap = new HashMap<Integer, AppModule>();
+        periodicFlows = new HashMap<Integer, List<Flow>>();
     }
 
     public FogDevice(
@@ -146,6 +173,7 @@ public class FogDevice extends PowerDatacenter {
         this.lastUtilization = 0;
         setTotalCost(0);
         moduleMap = new HashMap<Integer, AppModule>();
+        periodicFlows = new HashMap<Integer, List<Flow>>();
     }
 
     /**
@@ -183,39 +211,94 @@ public class FogDevice extends PowerDatacenter {
             case FogEvents.ACTUATOR_JOINED:
                 processActuatorJoined(ev);
                 break;
-            case FogEvents.RESOURCE_MGMT:
-                manageResources(ev);
-                break;
             case FogEvents.TUPLE_FINISHED:
                 processTupleFinished(ev);
                 break;
+            case FogEvents.TUPLE_COMPLETION_DUE:
+                updateCloudletProcessing();  // finished tuples are pushed by their scheduler
+                break;
             default:
                 break;
         }
     }
 
     protected void sendTuple(Tuple tuple, int dstDeviceId, int dstVmId) {
+        TuplePool.retain(tuple);
         tuple.setVmId(dstVmId);
         tuple.setSourceDeviceId(getId());
         tuple.setDestinationDeviceId(dstDeviceId);
         //send(dstDeviceId, CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
-        send(getLinkId(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
+        if (!sendOnFlow(tuple))
+            send(getLinkId(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
     }
 
     protected void sendTuple(Tuple tuple, int actuatorId) {
+        TuplePool.retain(tuple);
         //send(actuatorId, CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
-        Logger.debug("actuator_send", getName(), "Sending to actuator " + CloudSim.getEntityName(actuatorId) + "via Link ID : " + getLinkId());
+        if (Logger.isDebugEnabled(ACTUATOR_SEND_TAG_ID))
+            Logger.debug(ACTUATOR_SEND_TAG_ID, getName(), "Sending to actuator {}via Link ID : {}", CloudSim.getEntityName(actuatorId), getLinkId());
         tuple.setDestinationDeviceId(actuatorId);
-        send(getLinkId(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
+        if (!sendOnFlow(tuple))
+            send(getLinkId(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ARRIVAL, tuple);
+    }
+
+    /**
+     * Sends a tuple of a periodic edge as part of a flow, when the network uses the flow-level model.
+     * A flow is started for each source module, tuple type and destination on their first tuple.
+     *
+     * @param tuple tuple to be sent, whose destination is set
+     * @return true if the tuple was sent, false if it should be sent through the links
+     */
+    protected boolean sendOnFlow(Tuple tuple) {
+        FlowModel flowModel = PhysicalTopology.getInstance().getFlowModel();
+        if (flowModel == null)
+            return false;
+        AppEdge edge = getApplicationMap().get(tuple.getAppId()).getEdgeMap().get(tuple.getTupleType());
+        if (edge == null || !edge.isPeriodic())
+            return false;
+        List<Flow> flows = periodicFlows.get(tuple.getSourceModuleId());
+        if (flows == null) {
+            flows = new ArrayList<Flow>();
+            periodicFlows.put(tuple.getSourceModuleId(), flows);
+        }
+        Flow flow = null;
+        for (Flow f : flows) {
+            if (f.getDestinationId() == tuple.getDestinationDeviceId() && f.getTupleType().equals(tuple.getTupleType())) {
+                flow = f;
+                break;
+            }
+        }
+        if (flow == null) {
+            flow = flowModel.startFlow(getId(), tuple, edge.getPeriodicity());
+            if (flow == null)
+                return false;
+            flows.add(flow);
+        }
+        send(tuple.getDestinationDeviceId(), flowModel.getDelay(flow), FogEvents.TUPLE_ARRIVAL, tuple);
+        return true;
+    }
+
+    /**
+     * Stops the flows carrying the periodic tuples of a module.
+     *
+     * @param moduleId ID of the module
+     */
+    protected void stopPeriodicFlows(int moduleId) {
+        List<Flow> flows = periodicFlows.remove(moduleId);
+        if (flows != null) {
+            for (Flow flow : flows)
+                PhysicalTopology.getInstance().getFlowModel().stopFlow(flow);
+        }
     }
 
     protected void routeTuple(Tuple resTuple, AppModule module) {
+        // a shared module sends the tuple on to the modules and actuators of the placement it originates from
         if (resTuple.getDirection() != Tuple.ACTUATOR) {
-            for (AppModuleAddress addr : module.getDestModules().get(resTuple.getTupleType())) {
+            for (AppModuleAddress addr : module.getDestModules(resTuple.getTupleType(), resTuple.getPlacementId())) {
                 sendTuple(resTuple, addr.getFogDeviceId(), addr.getVmId());
             }
         } else {
-            for (Integer actuatorId : module.getActuatorSubscriptions().get(resTuple.getTupleType())) {
+            for (Integer actuatorId : module.getActuatorSubscriptions(resTuple.getTupleType(), resTuple.getPlacementId())) {
                 sendTuple(resTuple, actuatorId);
             }
         }
@@ -226,26 +309,19 @@ public class FogDevice extends PowerDatacenter {
         Tuple tuple = (Tuple) ev.getData();
         TimeKeeper.getInstance().tupleEndedExecution(tuple);
         Application application = getApplicationMap().get(tuple.getAppId());
-        Logger.debug(LOG_TAG, getName(), "Completed execution of tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
+        if (Logger.isDebugEnabled(LOG_TAG_ID))
+            Logger.debug(LOG_TAG_ID, getName(), "Completed execution of tuple {}on {}", tuple.getCloudletId(), tuple.getDestModuleName());
         AppModule module = moduleMap.get(tuple.getVmId());
 
-        List<Tuple> resultantTuples = application.getResultantTuples(tuple.getDestModuleName(), tuple, getId(), module.getId());
+        List<Tuple> resultantTuples = application.getResultantTuples(module, tuple, getId());
         for (Tuple resTuple : resultantTuples) {
-            Logger.debug(LOG_TAG, getName(), "Finished executing " + tuple.getTupleType() + " , generating " + resTuple.getTupleType());
+            if (Logger.isDebugEnabled(LOG_TAG_ID))
+                Logger.debug(LOG_TAG_ID, getName(), "Finished executing {} , generating {}", tuple.getTupleType(), resTuple.getTupleType());
             routeTuple(resTuple, module);
 
         }
-        sendNow(tuple.getUserId(), CloudSimTags.CLOUDLET_RETURN, tuple);
-    }
-
-    /**
-     * Perform miscellaneous resource management tasks
-     *
-     * @param ev
-     */
-    private void manageResources(SimEvent ev) {
+        sendNow(tuple.getUserId(), CloudSimTags.CLOUDLET_RETURN, tuple);  // the broker only recycles the tuple
         updateEnergyConsumption();
-        send(getId(), Config.RESOURCE_MGMT_INTERVAL, FogEvents.RESOURCE_MGMT);
     }
 
     /**
@@ -385,27 +461,22 @@ public class FogDevice extends PowerDatacenter {
         // WILL NEED TO CHECK IF A NEW LOOP STARTS AND INSERT A UNIQUE TUPLE ID TO IT.
         String srcModule = resTuple.getSrcModuleName();
         String destModule = resTuple.getDestModuleName();
-        for (AppLoop loop : getApplicationMap().get(resTuple.getAppId()).getLoops()) {
-            if (loop.hasEdge(srcModule, destModule) && loop.isStartModule(srcModule)) {
-                int tupleId = TimeKeeper.getInstance().getUniqueId();
-                resTuple.setActualTupleId(tupleId);
-                if (!TimeKeeper.getInstance().getLoopIdToTupleIds().containsKey(loop.getLoopId()))
-                    TimeKeeper.getInstance().getLoopIdToTupleIds().put(loop.getLoopId(), new ArrayList<Integer>());
-                TimeKeeper.getInstance().getLoopIdToTupleIds().get(loop.getLoopId()).add(tupleId);
-                TimeKeeper.getInstance().getEmitTimes().put(tupleId, CloudSim.clock());
-
-            }
+        for (AppLoop loop : getApplicationMap().get(resTuple.getAppId()).getLoopsStartedBy(srcModule, destModule)) {
+            int tupleId = TimeKeeper.getInstance().tupleEmitted(loop.getLoopId());
+            resTuple.setActualTupleId(tupleId);
         }
     }
 
-    private void updateEnergyConsumption() {
+    /**
+     * Integrates the energy consumption and cost of the device since the last update, at the utilization it had
+     * meanwhile, then updates the utilization from the MIPS allocated to the modules. Called whenever the allocation
+     * may change (tuple execution or completion, module launch or release) and at shutdown, so that idle devices
+     * need no periodic event.
+     */
+    protected void updateEnergyConsumption() {
         double totalMipsAllocated = 0;
-        for (final Vm vm : getHost().getVmList()) {
-            AppModule operator = (AppModule) vm;
-            operator.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(operator).getVmScheduler()
-                    .getAllocatedMipsForVm(operator));
+        for (Vm vm : getHost().getVmList())
             totalMipsAllocated += getHost().getTotalAllocatedMipsForVm(vm);
-        }
 
         double timeNow = CloudSim.clock();
         double currentEnergyConsumption = getEnergyConsumption();
@@ -432,18 +503,24 @@ public class FogDevice extends PowerDatacenter {
         cloudTrafficMap.put(time, cloudTrafficMap.get(time) + 1);
     }
 
+    private void logTupleArrival(SimEvent ev) {
+        if (!Logger.isDebugEnabled(LOG_TAG_ID))
+            return;
+        Tuple tuple = (Tuple) ev.getData();
+        Logger.debug(LOG_TAG_ID, getName(), "Received tuple {}with tupleType = {}\t| Source : {}|Dest : {}", tuple.getCloudletId(),
+                tuple.getTupleType(), CloudSim.getEntityName(ev.getSource()), CloudSim.getEntityName(ev.getDestination()));
+    }
+
     protected void processTupleArrival(SimEvent ev) {
         Tuple tuple = (Tuple) ev.getData();
 
-        Logger.debug(LOG_TAG, getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        logTupleArrival(ev);
 
         if (((FogDeviceCharacteristics) getCharacteristics()).isCloudDatacenter()) {
             updateCloudTraffic();
         }
 
-        Logger.debug(LOG_TAG, getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        logTupleArrival(ev);
         send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
 
         if (getHost().getVm(tuple.getVmId(), tuple.getUserId()) == null) {
@@ -516,26 +593,9 @@ public class FogDevice extends PowerDatacenter {
         Application app = getApplicationMap().get(tuple.getAppId());
         String srcModule = tuple.getSrcModuleName();
         String destModule = tuple.getDestModuleName();
-        List<AppLoop> loops = app.getLoops();
-        for (AppLoop loop : loops) {
-            if (loop.hasEdge(srcModule, destModule) && loop.isEndModule(destModule)) {
-                Double startTime = TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                if (startTime == null)
-                    break;
-                if (!TimeKeeper.getInstance().getLoopIdToCurrentAverage().containsKey(loop.getLoopId())) {
-                    TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), 0.0);
-                    TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), 0);
-                }
-                double currentAverage = TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loop.getLoopId());
-                int currentCount = TimeKeeper.getInstance().getLoopIdToCurrentNum().get(loop.getLoopId());
-                double delay = CloudSim.clock() - TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                TimeKeeper.getInstance().getEmitTimes().remove(tuple.getActualTupleId());
-                double newAverage = (currentAverage * currentCount + delay) / (currentCount + 1);
-                TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), newAverage);
-                TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), currentCount + 1);
-                break;
-            }
-        }
+        AppLoop loop = app.getLoopEndedBy(srcModule, destModule);
+        if (loop != null)
+            TimeKeeper.getInstance().tupleReachedLoopEnd(loop.getLoopId(), tuple.getActualTupleId());
     }
 
     protected void processSensorJoining(SimEvent ev) {
@@ -546,14 +606,28 @@ public class FogDevice extends PowerDatacenter {
         Tuple tuple = ((Tuple) ev.getData());
         tuple.setVmId(vmId);
         TimeKeeper.getInstance().tupleStartedExecution(tuple);
-        final Vm vm = getHost().getVm(vmId, tuple.getUserId());
-        getHost().getVmScheduler().allocatePesForVm(vm, new ArrayList<Double>() {{
-            add(vm.getMips());
-        }});
-        processCloudletSubmit(ev, false);
-        getHost().getVmScheduler().allocatePesForVm(vm, new ArrayList<Double>() {{
-            add(vm.getMips());
-        }});
+        AppModule module = (AppModule) getHost().getVm(vmId, tuple.getUserId());
+        VmScheduler vmScheduler = getHost().getVmScheduler();
+        vmScheduler.allocatePesForVm(module, module.getMipsShareRequest());
+        submitTuple(tuple, module);
+        vmScheduler.allocatePesForVm(module, module.getMipsShareRequest());
+        updateEnergyConsumption();
+    }
+
+    /**
+     * Submits a tuple to the module executing it. Unlike {@link #processCloudletSubmit(SimEvent, boolean)}, does not
+     * look the module up through the allocation policy, estimate file transfers or send acknowledgements, which
+     * tuples do not need.
+     * @param tuple the tuple
+     * @param module the module executing it
+     */
+    protected void submitTuple(Tuple tuple, AppModule module) {
+        updateCloudletProcessing();
+        tuple.setResourceParameter(getId(), getCharacteristics().getCostPerSecond(), getCharacteristics().getCostPerBw());
+        double estimatedFinishTime = module.getCloudletScheduler().cloudletSubmit(tuple, 0);
+        if (estimatedFinishTime > 0.0 && !Double.isInfinite(estimatedFinishTime))
+            sendDatacenterEvent(CloudSim.getMinTimeBetweenEvents() + estimatedFinishTime);
+        checkCloudletCompletion();
     }
 
     protected void processModuleArrival(SimEvent ev) {
@@ -572,6 +646,9 @@ public class FogDevice extends PowerDatacenter {
 
         appToModulesMap.get(appId).add(module.getName());
         processVmCreate(ev, false);
+        updateEnergyConsumption();
+        if (module.getCloudletScheduler() instanceof FinishTimeTupleScheduler)
+            ((FinishTimeTupleScheduler) module.getCloudletScheduler()).setCompletionListener(tupleCompletionListener);
 
         if (module.isBeingInstantiated()) {
             module.setBeingInstantiated(false);
@@ -592,8 +669,17 @@ public class FogDevice extends PowerDatacenter {
         }
     }
 
+    @SuppressWarnings("unchecked")
     protected void processOperatorRelease(SimEvent ev) {
+        stopPeriodicFlows(((Vm) ((Map<String, Object>) ev.getData()).get("vm")).getId());
         this.processVmMigrate(ev, false);
+        updateEnergyConsumption();
+    }
+
+    @Override
+    public void shutdownEntity() {
+        super.shutdownEntity();
+        updateEnergyConsumption();
     }
 
     public PowerHost getHost() {
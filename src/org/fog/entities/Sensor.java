@@ -6,16 +6,17 @@
 
 package org.fog.entities;
 
-import java.util.ArrayList;
 
-import org.cloudbus.cloudsim.UtilizationModelFull;
-import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
 import org.fog.application.AppEdge;
 import org.fog.application.AppLoop;
 import org.fog.application.Application;
+import org.fog.application.CompiledApplication;
+import org.fog.network.Flow;
+import org.fog.network.FlowModel;
+import org.fog.network.PhysicalTopology;
 import org.fog.utils.AppModuleAddress;
 import org.fog.utils.FogEvents;
 import org.fog.utils.FogUtils;
@@ -26,6 +27,7 @@ import org.fog.utils.distribution.Distribution;
 
 public class Sensor extends SimEntity{
 	public static final String LOG_TAG = "SENSOR";
+	private static final int LOG_TAG_ID = Logger.getTagId(LOG_TAG);
 	
 	private int gatewayDeviceId;
 	private GeoLocation geoLocation;
@@ -43,6 +45,20 @@ public class Sensor extends SimEntity{
 	private AppModuleAddress destModuleAddr;
 	private EndDevice device;
 	private int endDeviceId;
+	private Flow flow;	// flow carrying the tuples of this sensor when the network uses the flow-level model
+	
+	/**
+	 * Edge the tuples of this sensor are sent on, with the ID of their tuple type and the loop they start if any,
+	 * resolved when the sensor is connected to its destination module
+	 */
+	private AppEdge sensorEdge;
+	private int tupleTypeId;
+	private AppLoop sensorLoop;
+	
+	/**
+	 * Number of readings aggregated in each tuple
+	 */
+	private int batchSize = 1;
 	
 	public Sensor(String name, int userId, String appId, int gatewayDeviceId, double latency, GeoLocation geoLocation, 
 			Distribution transmitDistribution, int cpuLength, int nwLength, String tupleType, String destModuleName, Application application) {
@@ -135,30 +151,82 @@ public class Sensor extends SimEntity{
 	
 	public void transmit(){
 		if (getDestModuleAddr() == null) return;
+		if (sensorEdge == null)
+			resolveSensorEdge();
 		
-		AppEdge _edge = null;
-		for(AppEdge edge : getApplication().getEdges()){
-			if(edge.getSource().equals(getTupleType()))
-				_edge = edge;
-		}
-		long cpuLength = (long) _edge.getTupleCpuLength();
-		long nwLength = (long) _edge.getTupleNwLength();
+		long cpuLength = batchSize * (long) sensorEdge.getTupleCpuLength();
+		long nwLength = batchSize * (long) sensorEdge.getTupleNwLength();
 		
-		Tuple tuple = new Tuple(getAppId(), FogUtils.generateTupleId(), Tuple.UP, cpuLength, 1, nwLength, outputSize, 
-				new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+		Tuple tuple = TuplePool.obtain(getAppId(), FogUtils.generateTupleId(), Tuple.UP, cpuLength, 1, nwLength, outputSize, 
+				Tuple.UTILIZATION_MODEL_FULL, Tuple.UTILIZATION_MODEL_FULL, Tuple.UTILIZATION_MODEL_FULL);
 		tuple.setUserId(getUserId());
-		tuple.setTupleType(getTupleType());
+		tuple.setTupleType(getTupleType(), tupleTypeId);
 		
-		tuple.setDestModuleName(_edge.getDestination());
+		tuple.setDestModuleName(sensorEdge.getDestination());
 		tuple.setSrcModuleName(getSensorName());
-		Logger.debug(LOG_TAG, getName(), "Sending tuple with tupleId = "+tuple.getCloudletId());
+		tuple.setPlacementId(getDestModuleAddr().getPlacementId());
+		if (Logger.isDebugEnabled(LOG_TAG_ID))
+			Logger.debug(LOG_TAG_ID, getName(), "Sending tuple with tupleId = {}", tuple.getCloudletId());
 
-		int actualTupleId = updateTimings(getSensorName(), tuple.getDestModuleName());
-		tuple.setActualTupleId(actualTupleId);
+		tuple.setActualTupleId((sensorLoop != null) ? TimeKeeper.getInstance().tupleEmitted(sensorLoop.getLoopId()) : -1);
 		
+		TuplePool.retain(tuple);
 		//TODO Correct these
 		//sendTuple(tuple, getDestModuleAddr().getFogDeviceId(), getDestModuleAddr().getVmId());
-		getDevice().sendTuple(tuple, getDestModuleAddr().getFogDeviceId(), getDestModuleAddr().getVmId());
+		if (!sendOnFlow(tuple, getDestModuleAddr().getFogDeviceId(), getDestModuleAddr().getVmId()))
+			getDevice().sendTuple(tuple, getDestModuleAddr().getFogDeviceId(), getDestModuleAddr().getVmId());
+	}
+	
+	/**
+	 * Sends a tuple as part of the flow of this sensor, when the network uses the flow-level model 
+	 * and the sensor transmits periodically.
+	 * @param tuple tuple to be sent
+	 * @param dstDeviceId ID of the destination fog device
+	 * @param dstVmId ID of the destination module
+	 * @return true if the tuple was sent, false if it should be sent through the links
+	 */
+	private boolean sendOnFlow(Tuple tuple, int dstDeviceId, int dstVmId) {
+		FlowModel flowModel = PhysicalTopology.getInstance().getFlowModel();
+		if (flowModel == null || getTransmitDistribution().getDistributionType() != Distribution.DETERMINISTIC)
+			return false;
+		tuple.setVmId(dstVmId);
+		tuple.setSourceDeviceId(getEndDeviceId());
+		tuple.setDestinationDeviceId(dstDeviceId);
+		if (flow == null || flow.getDestinationId() != dstDeviceId) {
+			if (flow != null)
+				flowModel.stopFlow(flow);
+			flow = flowModel.startFlow(getEndDeviceId(), tuple, batchSize*getTransmitDistribution().getMeanInterTransmitTime());
+			if (flow == null)
+				return false;
+		}
+		send(dstDeviceId, flowModel.getDelay(flow), FogEvents.TUPLE_ARRIVAL, tuple);
+		return true;
+	}
+	
+	/**
+	 * Resolves the edge the tuples of this sensor are sent on, their tuple type ID and the loop they start,
+	 * so that emitting a tuple needs no lookup.
+	 */
+	private void resolveSensorEdge() {
+		sensorEdge = getSensorEdge();
+		tupleTypeId = getApplication().getTupleTypeId(getTupleType());
+		sensorLoop = getApplication().getLoopWithEdge(getSensorName(), sensorEdge.getDestination());
+	}
+	
+	/**
+	 * Get the application edge the tuples of this sensor are sent on.
+	 * @return the edge
+	 */
+	private AppEdge getSensorEdge() {
+		CompiledApplication compiledApplication = getApplication().getCompiledApplication();
+		if (compiledApplication != null)
+			return compiledApplication.getEdgeBySource(getTupleType());
+		AppEdge _edge = null;
+		for(AppEdge edge : getApplication().getEdges()){
+			if(edge.getSource().equals(getTupleType()))
+				_edge = edge;
+		}
+		return _edge;
 	}
 	
 	protected void sendTuple(Tuple tuple, int dstDeviceId, int dstVmId) {
@@ -168,27 +236,22 @@ public class Sensor extends SimEntity{
 		send(dstDeviceId, getLatency(), FogEvents.TUPLE_ARRIVAL, tuple);
 	}
 	
-	private int updateTimings(String src, String dest){
-		Application application = getApplication();
-		for(AppLoop loop : application.getLoops()){
-			if(loop.hasEdge(src, dest)){
-				
-				int tupleId = TimeKeeper.getInstance().getUniqueId();
-				if(!TimeKeeper.getInstance().getLoopIdToTupleIds().containsKey(loop.getLoopId()))
-					TimeKeeper.getInstance().getLoopIdToTupleIds().put(loop.getLoopId(), new ArrayList<Integer>());
-				TimeKeeper.getInstance().getLoopIdToTupleIds().get(loop.getLoopId()).add(tupleId);
-				TimeKeeper.getInstance().getEmitTimes().put(tupleId, CloudSim.clock());
-				return tupleId;
-			}
-		}
-		return -1;
+	/**
+	 * Draws the delay until the next tuple, that is until the last of the readings it aggregates.
+	 * @return the delay
+	 */
+	private double getNextTransmitDelay() {
+		double delay = 0;
+		for (int i = 0; i < batchSize; i++)
+			delay += getTransmitDistribution().getNextValue();
+		return delay;
 	}
 	
 	@Override
 	public void startEntity() {
 		System.out.println("Starting sensor with ID "+getId());
 		//send(gatewayDeviceId, CloudSim.getMinTimeBetweenEvents(), FogEvents.SENSOR_JOINED, geoLocation);
-		send(getId(), getTransmitDistribution().getNextValue(), FogEvents.EMIT_TUPLE);
+		send(getId(), getNextTransmitDelay(), FogEvents.EMIT_TUPLE);
 	}
 
 	@Override
@@ -204,7 +267,7 @@ public class Sensor extends SimEntity{
 			break;
 		case FogEvents.EMIT_TUPLE:
 			transmit();
-			send(getId(), getTransmitDistribution().getNextValue(), FogEvents.EMIT_TUPLE);
+			send(getId(), getNextTransmitDelay(), FogEvents.EMIT_TUPLE);
 			break;
 		case FogEvents.ENDPOINT_CONNECTION:
 			AppModuleAddress addr = (AppModuleAddress) ev.getData();
@@ -216,6 +279,7 @@ public class Sensor extends SimEntity{
 
 	private void processSensorConnection(AppModuleAddress addr) {
 		setDestModuleAddr(addr);
+		resolveSensorEdge();
 	}
 
 	@Override
@@ -335,6 +399,22 @@ public class Sensor extends SimEntity{
 		this.device = device;
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of readings aggregated in each tuple, for sensors with a high rate. The sensor then emits one
+	 * tuple every batchSize readings, at the time of the last one, with batchSize times the CPU and network length
+	 * of the edge.
+	 * @param batchSize number of readings per tuple
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("Batch size of a sensor should be positive : "+batchSize);
+		this.batchSize = batchSize;
+	}
+
 	public int getEndDeviceId() {
 		return endDeviceId;
 	}
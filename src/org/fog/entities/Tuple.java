@@ -8,9 +8,11 @@ package org.fog.entities;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.UtilizationModel;
+import org.cloudbus.cloudsim.UtilizationModelFull;
 
 public class Tuple extends Cloudlet{
 
@@ -18,9 +20,20 @@ public class Tuple extends Cloudlet{
 	public static final int DOWN = 2;
 	public static final int ACTUATOR = 3;
 	
+	/**
+	 * Utilization model of tuples using the full capacity, shared by all of them as it is stateless
+	 */
+	public static final UtilizationModel UTILIZATION_MODEL_FULL = new UtilizationModelFull();
+	
+	private static final AtomicIntegerFieldUpdater<Tuple> REFERENCES = AtomicIntegerFieldUpdater.newUpdater(Tuple.class, "references");
+	
 	private String appId;
 	
 	private String tupleType;
+	/**
+	 * ID of the tuple type in the compiled application, or -1 if unknown
+	 */
+	private int tupleTypeId = -1;
 	private String destModuleName;
 	private String srcModuleName;
 	private int actualTupleId;
@@ -29,10 +42,20 @@ public class Tuple extends Cloudlet{
 	private int sourceDeviceId;
 	private int sourceModuleId;
 	private int destinationDeviceId;
+	/**
+	 * ID of the placement the tuple originates from, when the placements share module instances, or -1.
+	 * Lets a shared instance send the tuple on to the modules and actuators of that placement.
+	 */
+	private int placementId = -1;
+	/**
+	 * Number of destinations the tuple was sent to and which have not released it yet (see {@link TuplePool}).
+	 * Updated atomically, as destinations may release the tuple from different threads.
+	 */
+	private volatile int references;
 	/**
 	 * Map to keep track of which module instances has a tuple traversed.
 	 * 
-	 * Map from moduleName to vmId of a module instance
+	 * Map from moduleName to vmId of a module instance. Created when first needed.
 	 */
 	private Map<String, Integer> moduleCopyMap;
 	
@@ -47,7 +70,43 @@ public class Tuple extends Cloudlet{
 		setAppId(appId);
 		setDirection(direction);
 		setSourceDeviceId(-1);
-		setModuleCopyMap(new HashMap<String, Integer>());
+	}
+
+	/**
+	 * Reinitializes this tuple so that it can be reused as a new tuple (see {@link TuplePool}).
+	 */
+	void reinitialize(String appId, int cloudletId, int direction, long cloudletLength, int pesNumber,
+			long cloudletFileSize, long cloudletOutputSize,
+			UtilizationModel utilizationModelCpu,
+			UtilizationModel utilizationModelRam,
+			UtilizationModel utilizationModelBw) {
+		reinitialize(cloudletId, cloudletLength, pesNumber, cloudletFileSize,
+				cloudletOutputSize, utilizationModelCpu, utilizationModelRam,
+				utilizationModelBw);
+		setAppId(appId);
+		setDirection(direction);
+		setSourceDeviceId(-1);
+		setTupleType(null);
+		setDestModuleName(null);
+		setSrcModuleName(null);
+		setActualTupleId(0);
+		setActuatorId(0);
+		setSourceModuleId(0);
+		setDestinationDeviceId(0);
+		setPlacementId(-1);
+		setModuleCopyMap(null);
+		references = 0;
+	}
+
+	void retain() {
+		REFERENCES.incrementAndGet(this);
+	}
+
+	/**
+	 * @return true if no destination holds the tuple any longer
+	 */
+	boolean release() {
+		return REFERENCES.decrementAndGet(this) == 0;
 	}
 
 	public int getActualTupleId() {
@@ -72,6 +131,21 @@ public class Tuple extends Cloudlet{
 
 	public void setTupleType(String tupleType) {
 		this.tupleType = tupleType;
+		this.tupleTypeId = -1;
+	}
+
+	public int getTupleTypeId() {
+		return tupleTypeId;
+	}
+
+	/**
+	 * Sets the tuple type together with its ID in the compiled application.
+	 * @param tupleType the tuple type
+	 * @param tupleTypeId ID of the tuple type
+	 */
+	public void setTupleType(String tupleType, int tupleTypeId) {
+		this.tupleType = tupleType;
+		this.tupleTypeId = tupleTypeId;
 	}
 
 	public String getDestModuleName() {
@@ -115,6 +189,8 @@ public class Tuple extends Cloudlet{
 	}
 
 	public Map<String, Integer> getModuleCopyMap() {
+		if (moduleCopyMap == null)
+			moduleCopyMap = new HashMap<String, Integer>();
 		return moduleCopyMap;
 	}
 
@@ -130,6 +206,14 @@ public class Tuple extends Cloudlet{
 		this.sourceModuleId = sourceModuleId;
 	}
 
+	public int getPlacementId() {
+		return placementId;
+	}
+
+	public void setPlacementId(int placementId) {
+		this.placementId = placementId;
+	}
+
 	public void setDestinationDeviceId(int dstDeviceId) {
 		this.destinationDeviceId = dstDeviceId;
 	}
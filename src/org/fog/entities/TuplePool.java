@@ -0,0 +1,107 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.entities;
+
+import java.util.ArrayDeque;
+
+import org.cloudbus.cloudsim.UtilizationModel;
+
+/**
+ * Optional pool of tuples, so that the tuples reaching the end of their life (executed by a module, or received by
+ * an actuator) are reused for new tuples instead of being garbage collected. Pooling is disabled by default; once
+ * enabled, no reference to a tuple should be kept after it was executed or received by an actuator.
+ * A tuple may be sent to several destinations, so each send records a reference to the tuple with 
+ * {@link #retain(Tuple)} and each destination releases its reference with {@link #recycle(Tuple)} ; 
+ * the tuple is only reused once all of them have released it. A fog device hands its reference over 
+ * to the CLOUDLET_RETURN event of the executed tuple, which the broker releases.
+ * Each thread has its own pool, so that the pool can be used when the simulation runs in parallel.
+ */
+public class TuplePool {
+
+	/**
+	 * Default maximum number of tuples kept by the pool of each thread
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private static volatile boolean enabled = false;
+
+	private static volatile int capacity = DEFAULT_CAPACITY;
+
+	private static final ThreadLocal<ArrayDeque<Tuple>> pools = new ThreadLocal<ArrayDeque<Tuple>>() {
+		@Override
+		protected ArrayDeque<Tuple> initialValue() {
+			return new ArrayDeque<Tuple>();
+		}
+	};
+
+	/**
+	 * Gets a new tuple, reusing a recycled one if the pool is enabled and not empty.
+	 * The parameters are those of {@link Tuple#Tuple(String, int, int, long, int, long, long, UtilizationModel, UtilizationModel, UtilizationModel)}.
+	 * @return the tuple
+	 */
+	public static Tuple obtain(String appId, int cloudletId, int direction, long cloudletLength, int pesNumber,
+			long cloudletFileSize, long cloudletOutputSize,
+			UtilizationModel utilizationModelCpu,
+			UtilizationModel utilizationModelRam,
+			UtilizationModel utilizationModelBw) {
+		Tuple tuple = enabled ? pools.get().pollLast() : null;
+		if (tuple == null)
+			return new Tuple(appId, cloudletId, direction, cloudletLength, pesNumber, cloudletFileSize, cloudletOutputSize,
+					utilizationModelCpu, utilizationModelRam, utilizationModelBw);
+		tuple.reinitialize(appId, cloudletId, direction, cloudletLength, pesNumber, cloudletFileSize, cloudletOutputSize,
+				utilizationModelCpu, utilizationModelRam, utilizationModelBw);
+		return tuple;
+	}
+
+	/**
+	 * Records that a tuple is sent to one more destination, which will release it with {@link #recycle(Tuple)}.
+	 * @param tuple the tuple
+	 */
+	public static void retain(Tuple tuple) {
+		if (enabled)
+			tuple.retain();
+	}
+
+	/**
+	 * Releases a reference to a tuple, and returns the tuple to the pool once no destination holds it any longer,
+	 * if the pool is enabled and not full. Tuples which were never retained are not reused.
+	 * @param tuple the tuple
+	 */
+	public static void recycle(Tuple tuple) {
+		if (!enabled || !tuple.release())
+			return;
+		ArrayDeque<Tuple> pool = pools.get();
+		if (pool.size() < capacity)
+			pool.addLast(tuple);
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the pool. To be called before the simulation starts.
+	 * @param enabled true to reuse the tuples
+	 */
+	public static void setEnabled(boolean enabled) {
+		TuplePool.enabled = enabled;
+		if (!enabled)
+			pools.remove();
+	}
+
+	public static int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of tuples kept by the pool of each thread.
+	 * @param capacity the capacity
+	 */
+	public static void setCapacity(int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Capacity of the tuple pool should not be negative : "+capacity);
+		TuplePool.capacity = capacity;
+	}
+}
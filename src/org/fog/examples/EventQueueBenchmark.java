@@ -0,0 +1,139 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ *
+ */
+package org.fog.examples;
+
+import java.util.Calendar;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CalendarQueue;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.EventQueue;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.utils.Config;
+import org.fog.utils.FogEvents;
+
+/**
+ * Compares the future event queue implementations on an iFogSim-shaped event mix: many sensors
+ * emitting periodic EMIT_TUPLE self-events and sending tuples over links with a few milliseconds
+ * of latency, plus devices rescheduling their periodic RESOURCE_MGMT events.
+ * <p>
+ * Usage: <tt>EventQueueBenchmark [sensors] [devices] [simulated time] [repetitions]</tt>. The first
+ * repetition of each queue is a warm-up and is not reported.
+ */
+public class EventQueueBenchmark {
+
+	public static void main(String[] args) {
+		int numSensors = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int numDevices = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		double simulationTime = args.length > 2 ? Double.parseDouble(args[2]) : 10000;
+		int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		Log.disable();
+		for (int i = 0; i <= repetitions; i++) {
+			long treeSet = run(new FutureQueue(), numSensors, numDevices, simulationTime);
+			long calendar = run(new CalendarQueue(), numSensors, numDevices, simulationTime);
+			if (i > 0) {
+				System.out.println("Run " + i + ": TreeSet = " + treeSet + " ms, CalendarQueue = " + calendar + " ms");
+			}
+		}
+	}
+
+	/**
+	 * Runs one simulation and returns its wall clock time.
+	 *
+	 * @param queue the future event queue to be used
+	 * @param numSensors the number of sensors
+	 * @param numDevices the number of fog devices
+	 * @param simulationTime the simulated time
+	 * @return the wall clock time in milliseconds
+	 */
+	private static long run(EventQueue queue, int numSensors, int numDevices, double simulationTime) {
+		CloudSim.init(1, Calendar.getInstance(), false, queue);
+
+		Random random = new Random(42);
+		Device[] devices = new Device[numDevices];
+		for (int i = 0; i < numDevices; i++) {
+			devices[i] = new Device("device-" + i);
+		}
+		for (int i = 0; i < numSensors; i++) {
+			// sensors emit every 5 to 50 ms over links of 2 to 10 ms latency
+			new Sensor("sensor-" + i, devices[i % numDevices].getId(), 5 * (1 + random.nextInt(10)),
+					2 + random.nextInt(9), random.nextDouble());
+		}
+		CloudSim.terminateSimulation(simulationTime);
+
+		long start = System.currentTimeMillis();
+		CloudSim.startSimulation();
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * A sensor periodically emitting tuples towards a device.
+	 */
+	private static class Sensor extends SimEntity {
+
+		private final int deviceId;
+
+		private final double interval;
+
+		private final double latency;
+
+		private final double offset;
+
+		public Sensor(String name, int deviceId, double interval, double latency, double offset) {
+			super(name);
+			this.deviceId = deviceId;
+			this.interval = interval;
+			this.latency = latency;
+			this.offset = offset;
+		}
+
+		@Override
+		public void startEntity() {
+			send(getId(), offset * interval, FogEvents.EMIT_TUPLE);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			send(deviceId, latency, FogEvents.TUPLE_ARRIVAL);
+			send(getId(), interval, FogEvents.EMIT_TUPLE);
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	/**
+	 * A device receiving tuples and periodically managing its resources.
+	 */
+	private static class Device extends SimEntity {
+
+		public Device(String name) {
+			super(name);
+		}
+
+		@Override
+		public void startEntity() {
+			send(getId(), Config.RESOURCE_MGMT_INTERVAL, FogEvents.RESOURCE_MGMT);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			if (ev.getTag() == FogEvents.RESOURCE_MGMT) {
+				send(getId(), Config.RESOURCE_MGMT_INTERVAL, FogEvents.RESOURCE_MGMT);
+			}
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+}
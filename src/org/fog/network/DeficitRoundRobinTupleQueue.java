@@ -0,0 +1,204 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Deficit round robin queueing discipline (M. Shreedhar and G. Varghese, 1995) : the tuple classes with queued
+ * tuples are visited in turn, and on each visit a class receives a quantum of credit (the base quantum times its
+ * weight) and sends tuples as long as its credit covers their size. This shares the link bandwidth in proportion
+ * to the weights at O(1) cost per tuple. Classes have weight 1 unless set otherwise.
+ */
+public class DeficitRoundRobinTupleQueue extends TupleQueue {
+
+	/**
+	 * Credit given to a class of weight 1 on each visit, in the same unit as the tuple sizes
+	 */
+	private long quantum;
+
+	/**
+	 * Map from tuple class to its weight
+	 */
+	private Map<String, Integer> weights;
+
+	/**
+	 * Map from tuple class to its queued tuples. Only non-empty queues are present.
+	 */
+	private Map<String, LinkedList<Tuple>> queues;
+
+	/**
+	 * Map from tuple class to its remaining credit
+	 */
+	private Map<String, Long> deficits;
+
+	/**
+	 * Classes with queued tuples, in visiting order. The class being visited is first.
+	 */
+	private ArrayDeque<String> activeClasses;
+
+	/**
+	 * Flag indicating if the class being visited has already received its quantum
+	 */
+	private boolean quantumGiven;
+
+	/**
+	 * Number of queued tuples
+	 */
+	private int size;
+
+	/**
+	 * @param quantum credit given to a class of weight 1 on each visit; it should be at least the size of most tuples
+	 */
+	public DeficitRoundRobinTupleQueue(long quantum) {
+		this(quantum, UNBOUNDED);
+	}
+
+	/**
+	 * @param quantum credit given to a class of weight 1 on each visit; it should be at least the size of most tuples
+	 * @param capacity maximum number of tuples in the buffer
+	 */
+	public DeficitRoundRobinTupleQueue(long quantum, int capacity) {
+		super(capacity);
+		if (quantum <= 0)
+			throw new IllegalArgumentException("Quantum should be positive : "+quantum);
+		this.quantum = quantum;
+		weights = new HashMap<String, Integer>();
+		queues = new HashMap<String, LinkedList<Tuple>>();
+		deficits = new HashMap<String, Long>();
+		activeClasses = new ArrayDeque<String>();
+	}
+
+	/**
+	 * Sets the weight of a tuple class (by default, a tuple type).
+	 * @param tupleClass the tuple class
+	 * @param weight the weight, i.e. the number of quanta received on each visit
+	 */
+	public void setWeight(String tupleClass, int weight) {
+		if (weight <= 0)
+			throw new IllegalArgumentException("Weight should be positive : "+weight);
+		weights.put(tupleClass, weight);
+	}
+
+	/**
+	 * Gets the weight of a tuple class.
+	 * @param tupleClass the tuple class
+	 * @return the weight
+	 */
+	public int getWeight(String tupleClass) {
+		Integer weight = weights.get(tupleClass);
+		return (weight == null) ? 1 : weight;
+	}
+
+	@Override
+	protected void enqueue(Tuple tuple) {
+		String tupleClass = getTupleClass(tuple);
+		LinkedList<Tuple> queue = queues.get(tupleClass);
+		if (queue == null) {	// the class becomes active, at the end of the round
+			queue = new LinkedList<Tuple>();
+			queues.put(tupleClass, queue);
+			deficits.put(tupleClass, 0L);
+			activeClasses.addLast(tupleClass);
+		}
+		queue.add(tuple);
+		size++;
+	}
+
+	/**
+	 * Visits the active classes until one has enough credit to send its first tuple, which becomes the first class.
+	 * @return the queue of the class that can send
+	 */
+	private LinkedList<Tuple> selectQueue() {
+		while (true) {
+			String tupleClass = activeClasses.peekFirst();
+			LinkedList<Tuple> queue = queues.get(tupleClass);
+			if (!quantumGiven) {
+				deficits.put(tupleClass, deficits.get(tupleClass) + quantum*getWeight(tupleClass));
+				quantumGiven = true;
+			}
+			if (getTupleSize(queue.peek()) <= deficits.get(tupleClass))
+				return queue;
+			// not enough credit left : move on to the next class
+			activeClasses.addLast(activeClasses.pollFirst());
+			quantumGiven = false;
+		}
+	}
+
+	@Override
+	public Tuple poll() {
+		if (size == 0)
+			return null;
+		LinkedList<Tuple> queue = selectQueue();
+		String tupleClass = activeClasses.peekFirst();
+		Tuple tuple = queue.poll();
+		deficits.put(tupleClass, deficits.get(tupleClass) - getTupleSize(tuple));
+		size--;
+		if (queue.isEmpty()) {	// an idle class keeps no credit
+			queues.remove(tupleClass);
+			deficits.remove(tupleClass);
+			activeClasses.pollFirst();
+			quantumGiven = false;
+		}
+		return tuple;
+	}
+
+	/**
+	 * Returns the tuple the next poll would return, without visiting the classes : the credit of each class grows by 
+	 * its quantum on each visit, so the class that sends is the one needing the fewest further visits, the first in 
+	 * visiting order among equals.
+	 */
+	@Override
+	public Tuple peek() {
+		if (size == 0)
+			return null;
+		Tuple next = null;
+		long fewestVisits = Long.MAX_VALUE;
+		boolean first = true;
+		for (String tupleClass : activeClasses) {
+			long classQuantum = quantum*getWeight(tupleClass);
+			long credit = deficits.get(tupleClass) + ((first && quantumGiven) ? 0 : classQuantum);
+			Tuple tuple = queues.get(tupleClass).peek();
+			long missing = getTupleSize(tuple) - credit;
+			long visits = (missing <= 0) ? 0 : (missing + classQuantum - 1)/classQuantum;
+			if (visits == 0)
+				return tuple;
+			if (visits < fewestVisits) {
+				fewestVisits = visits;
+				next = tuple;
+			}
+			first = false;
+		}
+		return next;
+	}
+
+	/**
+	 * Returns an iterator over the queued tuples, class by class. It does not support removal.
+	 */
+	@Override
+	public Iterator<Tuple> iterator() {
+		List<Tuple> tuples = new ArrayList<Tuple>(size);
+		for (String tupleClass : activeClasses)
+			tuples.addAll(queues.get(tupleClass));
+		return Collections.unmodifiableList(tuples).iterator();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public long getQuantum() {
+		return quantum;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.fog.entities.Tuple;
+
+/**
+ * First-in first-out queueing discipline, as used by default by links, with a bounded buffer.
+ */
+public class FifoTupleQueue extends TupleQueue {
+
+	/**
+	 * Queued tuples, in order of arrival
+	 */
+	private LinkedList<Tuple> tuples;
+
+	public FifoTupleQueue() {
+		this(UNBOUNDED);
+	}
+
+	/**
+	 * @param capacity maximum number of tuples in the buffer
+	 */
+	public FifoTupleQueue(int capacity) {
+		super(capacity);
+		tuples = new LinkedList<Tuple>();
+	}
+
+	@Override
+	protected void enqueue(Tuple tuple) {
+		tuples.add(tuple);
+	}
+
+	@Override
+	public Tuple poll() {
+		return tuples.poll();
+	}
+
+	@Override
+	public Tuple peek() {
+		return tuples.peek();
+	}
+
+	@Override
+	public Iterator<Tuple> iterator() {
+		return tuples.iterator();
+	}
+
+	@Override
+	public int size() {
+		return tuples.size();
+	}
+}
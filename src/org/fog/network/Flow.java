@@ -0,0 +1,140 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.List;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+
+/**
+ * Steady stream of tuples of the same type and size between two entities, simulated by the {@link FlowModel}.
+ * Rates are in bits per second and delays in milliseconds, as for the links.
+ */
+public class Flow {
+
+	/**
+	 * ID of the fog device or end-device sending the tuples
+	 */
+	private int sourceId;
+	/**
+	 * ID of the entity receiving the tuples
+	 */
+	private int destinationId;
+	/**
+	 * Type of the tuples
+	 */
+	private String tupleType;
+	/**
+	 * Size of the tuples in bits
+	 */
+	private double tupleSize;
+	/**
+	 * Rate at which the source sends, in bits per second
+	 */
+	private double demand;
+	/**
+	 * Rate allocated to the flow by max-min fair sharing, in bits per second
+	 */
+	private double rate;
+	/**
+	 * Bits sent but not yet transmitted because the allocated rate is below the demand
+	 */
+	private double backlog;
+	/**
+	 * Links of the route of the tuples, in order
+	 */
+	private List<Link> route;
+	/**
+	 * Directions the route takes on its links : true if North, false if South
+	 */
+	private boolean[] northbound;
+	/**
+	 * Delay of a tuple when the flow has no backlog, in milliseconds
+	 */
+	private double baseDelay;
+
+	Flow(int sourceId, int destinationId, String tupleType, double tupleSize, double demand, List<Link> route) {
+		this.sourceId = sourceId;
+		this.destinationId = destinationId;
+		this.tupleType = tupleType;
+		this.tupleSize = tupleSize;
+		this.demand = demand;
+		this.route = route;
+		northbound = new boolean[route.size()];
+		int entityId = sourceId;
+		for (int i = 0; i < route.size(); i++) {
+			Link link = route.get(i);
+			northbound[i] = (link.getEndpointSouth() == entityId);
+			baseDelay += 1000*(tupleSize/getCapacity(i)) + link.getLatency();
+			entityId = link.getOtherEndpoint(entityId);
+		}
+		// tuples are handed over to the first link, and from the last one to an actuator, after the minimum time between events
+		baseDelay += CloudSim.getMinTimeBetweenEvents();
+		if (entityId != destinationId)
+			baseDelay += CloudSim.getMinTimeBetweenEvents();
+	}
+
+	/**
+	 * Gets the capacity of the direction of a link taken by the route, in bits per second.
+	 * @param hop index of the link in the route
+	 * @return the capacity
+	 */
+	double getCapacity(int hop) {
+		return route.get(hop).getBandwidth() * 1024 * 1024;
+	}
+
+	/**
+	 * Gets the key of the direction of a link taken by the route, which is shared by all flows taking it.
+	 * @param hop index of the link in the route
+	 * @return the key
+	 */
+	int getResource(int hop) {
+		return 2*route.get(hop).getId() + (northbound[hop] ? 1 : 0);
+	}
+
+	public int getSourceId() {
+		return sourceId;
+	}
+
+	public int getDestinationId() {
+		return destinationId;
+	}
+
+	public String getTupleType() {
+		return tupleType;
+	}
+
+	public double getTupleSize() {
+		return tupleSize;
+	}
+
+	public double getDemand() {
+		return demand;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+
+	void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public double getBacklog() {
+		return backlog;
+	}
+
+	void setBacklog(double backlog) {
+		this.backlog = backlog;
+	}
+
+	public List<Link> getRoute() {
+		return route;
+	}
+
+	public double getBaseDelay() {
+		return baseDelay;
+	}
+}
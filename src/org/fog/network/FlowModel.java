@@ -0,0 +1,161 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.entities.Tuple;
+
+/**
+ * Flow-level (fluid) model of the network, a fast alternative to sending each tuple of a steady stream through the links.
+ * A stream of tuples sent periodically is a {@link Flow} with a constant bit rate along the route of its tuples, and the
+ * bandwidth of each direction of a link is shared among the flows crossing it in a max-min fair manner. Shares are only
+ * recomputed when a flow starts or stops.
+ * <p>
+ * Each tuple of a flow is delivered to its destination with a single event, after the latency and transmission delay
+ * of the links of its route plus the queueing delay of the backlog the flow builds up while it is allocated less than its rate.
+ * Flows do not see the tuples sent through the links one by one, nor the other way round.
+ * Enabled with {@link PhysicalTopology#setFlowLevelModel(boolean)}.
+ */
+public class FlowModel {
+
+	/**
+	 * Flows currently active
+	 */
+	private List<Flow> flows;
+
+	/**
+	 * Time at which the backlogs of the flows were last updated
+	 */
+	private double lastUpdateTime;
+
+	public FlowModel() {
+		flows = new ArrayList<Flow>();
+	}
+
+	/**
+	 * Starts a flow of tuples sent periodically, and recomputes the shares of the flows.
+	 * @param sourceId ID of the fog device or end-device sending the tuples
+	 * @param tuple a tuple of the flow, whose destination is set
+	 * @param period time between two tuples, in milliseconds
+	 * @return the flow, or null if the destination of the tuple cannot be reached
+	 */
+	public synchronized Flow startFlow(int sourceId, Tuple tuple, double period) {
+		if (period <= 0)
+			throw new IllegalArgumentException("Period of a flow should be positive : "+period);
+		List<Link> route = PhysicalTopology.getInstance().getRoute(sourceId, tuple);
+		if (route == null)
+			return null;
+		double tupleSize = tuple.getCloudletFileSize() * 8;
+		Flow flow = new Flow(sourceId, tuple.getDestinationDeviceId(), tuple.getTupleType(), tupleSize, 1000*tupleSize/period, route);
+		updateBacklogs();
+		flows.add(flow);
+		allocate();
+		return flow;
+	}
+
+	/**
+	 * Stops a flow, and recomputes the shares of the other flows.
+	 * @param flow the flow
+	 */
+	public synchronized void stopFlow(Flow flow) {
+		updateBacklogs();
+		if (flows.remove(flow))
+			allocate();
+	}
+
+	/**
+	 * Gets the delay of a tuple of a flow sent now, from its source to its destination.
+	 * @param flow the flow
+	 * @return the delay, in milliseconds
+	 */
+	public synchronized double getDelay(Flow flow) {
+		double elapsed = (CloudSim.clock() - lastUpdateTime)/1000;
+		double backlog = Math.max(0, flow.getBacklog() + (flow.getDemand() - flow.getRate())*elapsed);
+		if (backlog == 0)
+			return flow.getBaseDelay();
+		return flow.getBaseDelay() + 1000*backlog/flow.getRate();
+	}
+
+	/**
+	 * Brings the backlogs of the flows up to date, at the rates allocated since the last update.
+	 */
+	private void updateBacklogs() {
+		double elapsed = (CloudSim.clock() - lastUpdateTime)/1000;
+		for (Flow flow : flows)
+			flow.setBacklog(Math.max(0, flow.getBacklog() + (flow.getDemand() - flow.getRate())*elapsed));
+		lastUpdateTime = CloudSim.clock();
+	}
+
+	/**
+	 * Allocates rates to the flows by progressive filling : the flows demanding less than the fair share of the most
+	 * constrained link direction receive their demand, otherwise the flows crossing that link direction receive the fair
+	 * share; the capacity they use is removed and this is repeated until every flow has a rate.
+	 */
+	private void allocate() {
+		Map<Integer, Double> remainingCapacities = new HashMap<Integer, Double>();
+		Map<Integer, Integer> pendingFlowCounts = new HashMap<Integer, Integer>();
+		for (Flow flow : flows) {
+			for (int hop = 0; hop < flow.getRoute().size(); hop++) {
+				int resource = flow.getResource(hop);
+				Integer count = pendingFlowCounts.get(resource);
+				if (count == null) {
+					remainingCapacities.put(resource, flow.getCapacity(hop));
+					count = 0;
+				}
+				pendingFlowCounts.put(resource, count+1);
+			}
+		}
+		List<Flow> pendingFlows = new ArrayList<Flow>(flows);
+		while (!pendingFlows.isEmpty()) {
+			double share = Double.MAX_VALUE;
+			for (Map.Entry<Integer, Integer> e : pendingFlowCounts.entrySet()) {
+				if (e.getValue() > 0)
+					share = Math.min(share, remainingCapacities.get(e.getKey())/e.getValue());
+			}
+			Set<Flow> allocatedFlows = new HashSet<Flow>();
+			for (Flow flow : pendingFlows) {
+				if (flow.getDemand() <= share)
+					allocatedFlows.add(flow);
+			}
+			if (allocatedFlows.isEmpty()) {  // every flow wants more : the flows of the bottleneck link directions get the share
+				for (Flow flow : pendingFlows) {
+					for (int hop = 0; hop < flow.getRoute().size(); hop++) {
+						int resource = flow.getResource(hop);
+						if (remainingCapacities.get(resource)/pendingFlowCounts.get(resource) <= share*(1 + 1e-9)) {
+							allocatedFlows.add(flow);
+							break;
+						}
+					}
+				}
+			}
+			List<Flow> stillPending = new ArrayList<Flow>();
+			for (Flow flow : pendingFlows) {
+				if (!allocatedFlows.contains(flow)) {
+					stillPending.add(flow);
+					continue;
+				}
+				double rate = Math.min(flow.getDemand(), share);
+				flow.setRate(rate);
+				for (int hop = 0; hop < flow.getRoute().size(); hop++) {
+					int resource = flow.getResource(hop);
+					remainingCapacities.put(resource, remainingCapacities.get(resource) - rate);
+					pendingFlowCounts.put(resource, pendingFlowCounts.get(resource) - 1);
+				}
+			}
+			pendingFlows = stillPending;
+		}
+	}
+
+	public synchronized List<Flow> getFlows() {
+		return new ArrayList<Flow>(flows);
+	}
+}
@@ -4,9 +4,12 @@
  */
 package org.fog.network;
 
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
 
+import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
 import org.fog.entities.Tuple;
@@ -22,15 +25,36 @@ import org.fog.utils.Logger;
  */
 public class Link extends SimEntity {
 	public static final String LOG_TAG = "LINK";
+	private static final int LOG_TAG_ID = Logger.getTagId(LOG_TAG);
 
 	/**
-	 * Queue holding packets to be sent North
+	 * Queue holding packets to be sent North. Its queueing discipline decides the order in which they are sent,
+	 * and it may drop packets by refusing them (see {@link TupleQueue}). FIFO and unbounded by default.
 	 */
 	protected Queue<Tuple> northTupleQueue;
 	/**
-	 * Queue holding packets to be sent South
+	 * Queue holding packets to be sent South. Same as North queue.
 	 */
 	protected Queue<Tuple> southTupleQueue;
+	/**
+	 * Number of packets dropped by the North queue
+	 */
+	private long northDroppedTuples;
+	/**
+	 * Number of packets dropped by the South queue
+	 */
+	private long southDroppedTuples;
+	/**
+	 * Flag indicating if the link is in batching mode : when a direction becomes free, all tuples queued on it
+	 * are sent back to back at once, and reach a switch at the other end in a single batch.
+	 */
+	private boolean batching;
+	/**
+	 * Times at which queued tuples of batches reach the link, for those reaching it after being queued, one map per
+	 * direction : each direction is handled by its own logical process when the simulation runs in parallel
+	 */
+	private Map<Tuple, Double> northReadyTimes;
+	private Map<Tuple, Double> southReadyTimes;
 	/**
 	 * Flag indicating status of North direction
 	 */
@@ -68,12 +92,16 @@ public class Link extends SimEntity {
 		setEndpointSouth(endpointSouth);
 		setNorthTupleQueue(new LinkedList<Tuple>());
 		setSouthTupleQueue(new LinkedList<Tuple>());
+		northReadyTimes = new IdentityHashMap<Tuple, Double>();
+		southReadyTimes = new IdentityHashMap<Tuple, Double>();
 	}
 
 	public Link(String name) {
 		super(name);
 		setNorthTupleQueue(new LinkedList<Tuple>());
 		setSouthTupleQueue(new LinkedList<Tuple>());
+		northReadyTimes = new IdentityHashMap<Tuple, Double>();
+		southReadyTimes = new IdentityHashMap<Tuple, Double>();
 	}
 
 	@Override
@@ -94,6 +122,9 @@ public class Link extends SimEntity {
 		case FogEvents.TUPLE_ARRIVAL:
 			processTupleArrival(ev);
 			break;
+		case FogEvents.TUPLE_BATCH_ARRIVAL:
+			processTupleBatchArrival(ev);
+			break;
 		}
 	}
 
@@ -102,6 +133,22 @@ public class Link extends SimEntity {
 
 	}
 
+	/**
+	 * Each direction of the link is handled by the logical process of the endpoint sending on it,
+	 * so that when the simulation runs in parallel tuples only cross logical processes after the latency of the link.
+	 */
+	@Override
+	protected int getLogicalProcess(SimEvent ev) {
+		switch (ev.getTag()) {
+		case FogEvents.UPDATE_NORTH_TUPLE_QUEUE:
+			return CloudSim.getEntity(endpointSouth).getLogicalProcess();
+		case FogEvents.UPDATE_SOUTH_TUPLE_QUEUE:
+			return CloudSim.getEntity(endpointNorth).getLogicalProcess();
+		default:
+			return CloudSim.getEntity(ev.getSource()).getLogicalProcess();
+		}
+	}
+
 	/**
 	 * Handler for processing an incoming tuple.
 	 * @param ev
@@ -114,11 +161,103 @@ public class Link extends SimEntity {
 			sendNorth(tuple);
 	}
 
+	/**
+	 * Handler for processing an incoming batch of tuples, sent by a switch.
+	 * The tuples are sent back to back if the direction is free, and queued otherwise.
+	 * @param ev
+	 */
+	private void processTupleBatchArrival(SimEvent ev) {
+		TupleBatch batch = (TupleBatch) ev.getData();
+		if (ev.getSource() == endpointNorth && endpointSouth > 0) {
+			if (!isSouthLinkBusy()) {
+				setSouthLinkBusy(true);
+				sendBatch(batch, endpointSouth, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);
+			} else {
+				for (int i = 0; i < batch.size(); i++)
+					queueTuple(batch.getTuple(i), batch.getTime(i), false);
+			}
+		} else if (ev.getSource() == endpointSouth && endpointNorth > 0) {
+			if (!isNorthLinkBusy()) {
+				setNorthLinkBusy(true);
+				sendBatch(batch, endpointNorth, FogEvents.UPDATE_NORTH_TUPLE_QUEUE);
+			} else {
+				for (int i = 0; i < batch.size(); i++)
+					queueTuple(batch.getTuple(i), batch.getTime(i), true);
+			}
+		}
+	}
+
+	/**
+	 * Queues a tuple for later transmission, unless the queue drops it.
+	 * @param tuple the tuple
+	 * @param readyTime time at which the tuple reaches the link
+	 * @param north true to send it North, false to send it South
+	 */
+	private void queueTuple(Tuple tuple, double readyTime, boolean north) {
+		if ((north ? northTupleQueue : southTupleQueue).offer(tuple)) {
+			if (readyTime > CloudSim.clock())
+				(north ? northReadyTimes : southReadyTimes).put(tuple, readyTime);
+		} else {
+			if (north)
+				northDroppedTuples++;
+			else
+				southDroppedTuples++;
+			Logger.debug(LOG_TAG_ID, getName(), "Dropped tuple {} of type {} sent {}", tuple.getActualTupleId(), tuple.getTupleType(), north ? "North" : "South");
+		}
+	}
+
+	/**
+	 * Removes all tuples from a queue, in the order they are to be sent.
+	 * @param queue the queue
+	 * @param readyTimes times at which the queued tuples reach the link, for the direction of the queue
+	 * @return the tuples, with the times at which they reach the link
+	 */
+	private TupleBatch drain(Queue<Tuple> queue, Map<Tuple, Double> readyTimes) {
+		TupleBatch tuples = new TupleBatch(queue.size());
+		Tuple tuple;
+		while ((tuple = queue.poll()) != null) {
+			Double readyTime = readyTimes.remove(tuple);
+			tuples.add(tuple, (readyTime != null) ? readyTime : CloudSim.clock());
+		}
+		return tuples;
+	}
+
+	/**
+	 * Send tuples back to back in a direction, each one as soon as the previous one is sent and it has reached the link.
+	 * Their departure times are computed at once, and the direction is updated only when the last one is sent.
+	 * If the endpoint is a switch, the tuples reach it in a single batch, otherwise each one on its own.
+	 * @param tuples tuples to be sent, with the times at which they reach the link
+	 * @param endpoint endpoint to send the tuples to
+	 * @param updateTag tag of the event updating the direction
+	 */
+	private void sendBatch(TupleBatch tuples, int endpoint, int updateTag) {
+		double bwInBitsPerSecond = getBandwidth() * 1024 * 1024;
+		boolean toSwitch = CloudSim.getEntity(endpoint) instanceof Switch;
+		TupleBatch batch = toSwitch ? new TupleBatch(tuples.size()) : null;
+		double delay = 0;  // time when the tuple being sent finishes, from now
+		for (int i = 0; i < tuples.size(); i++) {
+			Tuple tuple = tuples.getTuple(i);
+			delay = Math.max(delay, tuples.getTime(i) - CloudSim.clock());
+			delay += 1000*(tuple.getCloudletFileSize() * 8/bwInBitsPerSecond);
+			if (toSwitch)
+				batch.add(tuple, CloudSim.clock() + delay + getLatency());
+			else
+				send(endpoint, delay + getLatency(), FogEvents.TUPLE_ARRIVAL, tuple);
+		}
+		if (toSwitch)
+			send(endpoint, batch.getTime(0) - CloudSim.clock(), FogEvents.TUPLE_BATCH_ARRIVAL, batch);
+		send(getId(), delay, updateTag);  // update link once the last tuple is sent
+	}
+
 	/**
 	 * Updates the status of South queue.
 	 */
 	protected void updateSouthTupleQueue(){
 		if(!getSouthTupleQueue().isEmpty()){  // if there are more tuples to send South
+			if (isBatching()) {
+				sendBatch(drain(getSouthTupleQueue(), southReadyTimes), endpointSouth, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);  // send them all South
+				return;
+			}
 			Tuple tuple = getSouthTupleQueue().poll();  // get next tuple from South queue
 			sendSouthFreeLink(tuple);  // send tuple South
 		}else{
@@ -135,8 +274,10 @@ public class Link extends SimEntity {
 		double sizeInBits = tuple.getCloudletFileSize() * 8;
 		double bwInBitsPerSecond = getBandwidth() * 1024 * 1024;
 		double transmissionDelay = 1000*(sizeInBits/bwInBitsPerSecond);
-		Logger.debug(LOG_TAG, "SizeInBits = "+sizeInBits);
-		Logger.debug(LOG_TAG, "Transmission delay = "+transmissionDelay );
+		if (Logger.isDebugEnabled(LOG_TAG_ID)) {
+			Logger.debug(LOG_TAG_ID, "", "SizeInBits = {}", sizeInBits);
+			Logger.debug(LOG_TAG_ID, "", "Transmission delay = {}", transmissionDelay);
+		}
 		setSouthLinkBusy(true); // South link has begun sending this tuple. Marking it as busy so next tuples are queued until this is sent.
 		send(getId(), transmissionDelay , FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);	// update South link once transmission is complete
 		send(endpointSouth, transmissionDelay  + getLatency(), FogEvents.TUPLE_ARRIVAL, tuple);	// Sent tuple arrives at other end of link after given delay
@@ -152,7 +293,7 @@ public class Link extends SimEntity {
 				// if South link is not busy sending a tuple already
 				sendSouthFreeLink(tuple);	// send this tuple immediately
 			}else{
-				southTupleQueue.add(tuple);	// queue this tuple for later transmission
+				queueTuple(tuple, CloudSim.clock(), false);	// queue this tuple for later transmission
 			}
 		}
 	}
@@ -162,6 +303,10 @@ public class Link extends SimEntity {
 	 */
 	protected void updateNorthTupleQueue(){
 		if(!getNorthTupleQueue().isEmpty()){  // if there are more tuples to send North
+			if (isBatching()) {
+				sendBatch(drain(getNorthTupleQueue(), northReadyTimes), endpointNorth, FogEvents.UPDATE_NORTH_TUPLE_QUEUE);  // send them all North
+				return;
+			}
 			Tuple tuple = getNorthTupleQueue().poll();  // get next tuple from North queue
 			sendNorthFreeLink(tuple);  // send tuple North
 		}else{
@@ -178,7 +323,8 @@ public class Link extends SimEntity {
 		double sizeInBits = tuple.getCloudletFileSize() * 8;
 		double bwInBitsPerSecond = getBandwidth() * 1024 * 1024;
 		double networkDelay = 1000*(sizeInBits/bwInBitsPerSecond);
-		Logger.debug(LOG_TAG, "Transm	ission delay = "+networkDelay);
+		if (Logger.isDebugEnabled(LOG_TAG_ID))
+			Logger.debug(LOG_TAG_ID, "", "Transm	ission delay = {}", networkDelay);
 		setNorthLinkBusy(true);  // North link has begun sending this tuple. Marking it as busy so next tuples are queued until this is sent.
 		send(getId(), networkDelay, FogEvents.UPDATE_NORTH_TUPLE_QUEUE);  // update North link once transmission is complete
 		send(endpointNorth, networkDelay + getLatency(), FogEvents.TUPLE_ARRIVAL, tuple);  // Sent tuple arrives at other end of link after given delay
@@ -194,7 +340,7 @@ public class Link extends SimEntity {
 				// if North link is not busy sending a tuple already
 				sendNorthFreeLink(tuple);  // send this tuple immediately
 			}else{
-				northTupleQueue.add(tuple);	// queue this tuple for later transmission
+				queueTuple(tuple, CloudSim.clock(), true);	// queue this tuple for later transmission
 			}
 		}
 	}
@@ -261,6 +407,32 @@ public class Link extends SimEntity {
 		this.southTupleQueue = southTupleQueue;
 	}
 
+	/**
+	 * Sets the queueing discipline of both directions of the link.
+	 * @param northTupleQueue queue of tuples to be sent North
+	 * @param southTupleQueue queue of tuples to be sent South
+	 */
+	public void setTupleQueues(Queue<Tuple> northTupleQueue, Queue<Tuple> southTupleQueue) {
+		setNorthTupleQueue(northTupleQueue);
+		setSouthTupleQueue(southTupleQueue);
+	}
+
+	public boolean isBatching() {
+		return batching;
+	}
+
+	public void setBatching(boolean batching) {
+		this.batching = batching;
+	}
+
+	public long getNorthDroppedTuples() {
+		return northDroppedTuples;
+	}
+
+	public long getSouthDroppedTuples() {
+		return southDroppedTuples;
+	}
+
 	public boolean isNorthLinkBusy() {
 		return isNorthLinkBusy;
 	}
@@ -7,20 +7,45 @@
 package org.fog.network;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
-import org.apache.commons.math3.util.Pair;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.fog.entities.Actuator;
 import org.fog.entities.EndDevice;
 import org.fog.entities.FogDevice;
+import org.fog.entities.Sensor;
+import org.fog.entities.Tuple;
 import org.fog.utils.Logger;
 
 public class PhysicalTopology {
 	public static final String LOG_TAG = "PHYSICAL_TOPO";
 	
+	/**
+	 * Routing metric : every link costs one hop.
+	 */
+	public static final int ROUTING_HOP_COUNT = 0;
+	/**
+	 * Routing metric : the cost of a link is its latency.
+	 */
+	public static final int ROUTING_LATENCY = 1;
+	/**
+	 * Routing metric : the cost of a link is the inverse of its bandwidth, so that high bandwidth links are preferred.
+	 */
+	public static final int ROUTING_BANDWIDTH = 2;
+	
+	/**
+	 * Paths whose costs differ by less than this fraction of the larger cost are considered of equal cost.
+	 * The tolerance is relative since bandwidth costs are tiny.
+	 */
+	private static final double COST_TOLERANCE = 1e-9;
+	
 	/**
 	 * Singleton object that needs to be manipulated in the example script
 	 */
@@ -48,6 +73,37 @@ public class PhysicalTopology {
 	 * List of links in the physical topology
 	 */
 	private List<Link> links;
+	
+	/**
+	 * Index of fog devices by ID
+	 */
+	private Map<Integer, FogDevice> fogDevicesById;
+	/**
+	 * Index of end-devices by ID
+	 */
+	private Map<Integer, EndDevice> endDevicesById;
+	/**
+	 * Index of switches by ID
+	 */
+	private Map<Integer, Switch> switchesById;
+	/**
+	 * Index of links by ID
+	 */
+	private Map<Integer, Link> linksById;
+	/**
+	 * Index of links by the (unordered) pair of their endpoints
+	 */
+	private Map<Long, Link> linksByEndpoints;
+	
+	/**
+	 * Metric minimised by the routes between switches
+	 */
+	private int routingMetric = ROUTING_HOP_COUNT;
+	
+	/**
+	 * Flow-level model of the network, or null if every tuple is sent through the links
+	 */
+	private FlowModel flowModel;
 
 	/**
 	 * Add link in physical topology
@@ -55,9 +111,13 @@ public class PhysicalTopology {
 	 * @param endpoint2 ID of 2nd endpoint of link to be created
 	 * @param latency latency of link, same for both directions
 	 * @param bandwidth one-directional bandwidth of link. Both directions of communication will receive equal BW equal to this parameter.
+	 * @return the link created, e.g. to set its queueing disciplines
 	 */
-	public void addLink(int endpoint1, int endpoint2, double latency, double bandwidth) {
-		getLinks().add(new Link("link-"+endpoint1+"-"+endpoint2, latency, bandwidth, endpoint1, endpoint2));
+	public Link addLink(int endpoint1, int endpoint2, double latency, double bandwidth) {
+		Link link = new Link("link-"+endpoint1+"-"+endpoint2, latency, bandwidth, endpoint1, endpoint2);
+		getLinks().add(link);
+		indexLink(link);
+		return link;
 	}
 	
 	/**
@@ -66,6 +126,7 @@ public class PhysicalTopology {
 	 */
 	public void addFogDevice(FogDevice dev) {
 		getFogDevices().add(dev);
+		fogDevicesById.put(dev.getId(), dev);
 	}
 
 	/**
@@ -74,6 +135,7 @@ public class PhysicalTopology {
 	 */
 	public void addEndDevice(EndDevice dev) {
 		getEndDevices().add(dev);
+		endDevicesById.put(dev.getId(), dev);
 	}
 	
 	/**
@@ -82,6 +144,7 @@ public class PhysicalTopology {
 	 */
 	public void addSwitch(Switch sw) {
 		getSwitches().add(sw);
+		switchesById.put(sw.getId(), sw);
 	}
 	
 	/**
@@ -135,19 +198,13 @@ public class PhysicalTopology {
 	 * This information is used for forwarding information when calculating routing tables.
 	 */
 	private void calculateNeighbourSwitches() {
-		for (Switch sw : getSwitches()) {	// calculate neighbour switches for each switch
-			for (Link l : getLinks()) {
-				// for each link, if this switch is on one end, get ID of entity on other end
-				int neighbour = -1;
-				if (l.getEndpointNorth() == sw.getId()) {
-					neighbour = l.getEndpointSouth();
-				} else if (l.getEndpointSouth() == sw.getId()) {
-					neighbour = l.getEndpointNorth();
-				}
-				Switch neighbourSw = getSwitch(neighbour);
-				if (neighbourSw != null && neighbour != -1) {	// If a neighbour exists and is a switch
-					sw.getNeighbourSwitches().add(neighbour);
-				}
+		for (Link l : getLinks()) {
+			// for each link connecting two switches, each switch is a neighbour of the other
+			Switch north = getSwitch(l.getEndpointNorth());
+			Switch south = getSwitch(l.getEndpointSouth());
+			if (north != null && south != null) {
+				north.getNeighbourSwitches().add(south.getId());
+				south.getNeighbourSwitches().add(north.getId());
 			}
 		}
 	}
@@ -177,22 +234,120 @@ public class PhysicalTopology {
 		}
 	}
 
-	private Switch getSwitch(int id) {
-		Switch res = null;
+	/**
+	 * Partitions the physical topology into logical processes for running the simulation in parallel (see 
+	 * {@link CloudSim#setParallelExecution(double, double, int)}). Each switch forms a partition together with 
+	 * the fog devices and end-devices (with their sensors and actuators) connected to it. The partitions are 
+	 * assigned to the logical processes, largest first, so as to balance their number of entities. 
+	 * Entities outside the physical topology, like the broker, remain in logical process 0.
+	 * This function should be called after {@link #setUpEntities()}.
+	 * @param numProcesses number of logical processes
+	 * @return the lookahead to use, i.e. the minimum latency of the links connecting different logical processes, 
+	 * or Double.MAX_VALUE if no link does
+	 */
+	public double partition(int numProcesses) {
+		if (numProcesses <= 0)
+			throw new IllegalArgumentException("Number of logical processes should be positive : "+numProcesses);
+		
+		final Map<Integer, Integer> partitionSizes = new HashMap<Integer, Integer>();	// SwId --> number of entities in its partition
 		for (Switch sw : getSwitches()) {
-			if (sw.getId() == id) 
-				res = sw;
+			int size = 1 + sw.getAdjacentEntities().size();
+			for (int devId : sw.getAdjacentEndDevices()) {
+				EndDevice dev = getEndDevice(devId);
+				size += 1 + dev.getSensors().size() + dev.getActuators().size();
+			}
+			partitionSizes.put(sw.getId(), size);
+		}
+		List<Switch> sortedSwitches = new ArrayList<Switch>(getSwitches());
+		Collections.sort(sortedSwitches, new Comparator<Switch>() {
+			@Override
+			public int compare(Switch sw1, Switch sw2) {
+				return partitionSizes.get(sw2.getId()) - partitionSizes.get(sw1.getId());
+			}
+		});
+		
+		int[] load = new int[numProcesses];
+		for (Switch sw : sortedSwitches) {
+			int lp = 0;	// least loaded logical process
+			for (int i = 1; i < numProcesses; i++) {
+				if (load[i] < load[lp])
+					lp = i;
+			}
+			load[lp] += partitionSizes.get(sw.getId());
+			
+			sw.setLogicalProcess(lp);
+			for (int devId : sw.getAdjacentEntities())
+				CloudSim.getEntity(devId).setLogicalProcess(lp);
+			for (int devId : sw.getAdjacentEndDevices()) {
+				EndDevice dev = getEndDevice(devId);
+				dev.setLogicalProcess(lp);
+				for (Sensor s : dev.getSensors())
+					s.setLogicalProcess(lp);
+				for (Actuator a : dev.getActuators())
+					a.setLogicalProcess(lp);
+			}
+		}
+		
+		double lookahead = Double.MAX_VALUE;
+		for (Link l : getLinks()) {
+			int northLp = CloudSim.getEntity(l.getEndpointNorth()).getLogicalProcess();
+			int southLp = CloudSim.getEntity(l.getEndpointSouth()).getLogicalProcess();
+			l.setLogicalProcess(northLp);
+			if (northLp != southLp)
+				lookahead = Math.min(lookahead, l.getLatency());
 		}
-		return res;
+		Logger.debug(LOG_TAG, "Partitioned topology into "+numProcesses+" logical processes with lookahead = "+lookahead);
+		return lookahead;
+	}
+
+	/**
+	 * Get the route followed through the links by a tuple sent by a fog device or an end-device, as given by the switching tables.
+	 * @param sourceId ID of the fog device or end-device sending the tuple
+	 * @param tuple the tuple, whose destination is set
+	 * @return links of the route in order, or null if the destination cannot be reached
+	 */
+	public List<Link> getRoute(int sourceId, Tuple tuple) {
+		int linkId;
+		if (fogDevicesById.containsKey(sourceId))
+			linkId = fogDevicesById.get(sourceId).getLinkId();
+		else if (endDevicesById.containsKey(sourceId))
+			linkId = endDevicesById.get(sourceId).getLinkId();
+		else
+			return null;
+		int destId = tuple.getDestinationDeviceId();
+		List<Link> route = new ArrayList<Link>();
+		int entityId = sourceId;
+		while (route.size() <= getLinks().size()) {  // a longer route would be a loop
+			Link link = getLink(linkId);
+			if (link == null)
+				return null;
+			route.add(link);
+			entityId = link.getOtherEndpoint(entityId);
+			Switch sw = getSwitch(entityId);
+			if (sw == null)
+				return (entityId == destId || isActuatorOf(destId, entityId)) ? route : null;
+			linkId = sw.getNextLink(tuple);
+		}
+		return null;
 	}
 	
-	private Link getLink(int id) {
-		Link res = null;
-		for (Link l : getLinks()) {
-			if (l.getId() == id) 
-				res = l;
+	private boolean isActuatorOf(int actuatorId, int endDeviceId) {
+		EndDevice dev = getEndDevice(endDeviceId);
+		if (dev != null) {
+			for (Actuator a : dev.getActuators()) {
+				if (a.getId() == actuatorId)
+					return true;
+			}
 		}
-		return res;
+		return false;
+	}
+	
+	private Switch getSwitch(int id) {
+		return switchesById.get(id);
+	}
+	
+	private Link getLink(int id) {
+		return linksById.get(id);
 	}
 	
 	private List<Actuator> getActuators() {
@@ -206,123 +361,194 @@ public class PhysicalTopology {
 	
 	/**
 	 * Calculate routing table for each switch.
-	 * Calculate temporary tables with next hop and hop count information for each destination entity.
-	 * SwId --> { Dest --> (Next Hop, Num Hops) }.
-	 * This information is then flooded to neighbours which choose the hop for a dest with shortest num of hops.
+	 * Shortest paths over the switches are computed from each switch (Dijkstra), using the routing metric 
+	 * as link cost. Each destination entity (fog device or actuator) is then reached through the first hops 
+	 * of the shortest paths towards the switch it is connected to. When there are several equal-cost paths, 
+	 * e.g. through redundant switches or parallel links, all their first links are kept for multipath forwarding.
 	 */
 	public void calculateRoutingTables() {
 		Logger.debug(LOG_TAG, "Calculating routing tables");
-		Map<Integer, Map<Integer, Pair<Integer, Integer>>> routingTables; // map to hold entries of the form SwId --> { Dest --> (Next Hop, Num Hops) }. 
-		routingTables = new HashMap<Integer, Map<Integer, Pair<Integer, Integer>>>();
+		Map<Integer, Map<Integer, List<Integer>>> routingTables; // map to hold entries of the form SwId --> { Dest --> Links to next hops }. 
+		routingTables = new HashMap<Integer, Map<Integer, List<Integer>>>();
 		
-		int numNodes = getFogDevices().size() + getActuators().size();
-		
-		for (Switch sw : switches) {
-			routingTables.put(sw.getId(), new HashMap<Integer, Pair<Integer, Integer>>());
-			
-			// For each switch, first add all adjacent fog devices to be at a distance of 0 hops.
-			for (int adjEntity : sw.getAdjacentEntities()) {
-				routingTables.get(sw.getId()).put(adjEntity, new Pair<Integer, Integer>(adjEntity, 0));
+		// adjacency structure of the switches, indexed by position in the list of switches
+		int numSwitches = getSwitches().size();
+		Map<Integer, Integer> switchIndex = new HashMap<Integer, Integer>();
+		for (int i = 0; i < numSwitches; i++)
+			switchIndex.put(getSwitches().get(i).getId(), i);
+		List<List<Link>> switchLinks = new ArrayList<List<Link>>();
+		for (int i = 0; i < numSwitches; i++)
+			switchLinks.add(new ArrayList<Link>());
+		for (Link l : getLinks()) {
+			Integer north = switchIndex.get(l.getEndpointNorth());
+			Integer south = switchIndex.get(l.getEndpointSouth());
+			if (north != null && south != null) {
+				switchLinks.get(north).add(l);
+				switchLinks.get(south).add(l);
 			}
-			// For each switch, first add all adjacent actuators to be at a distance of 0 hops.
-			for (int adjDevId : sw.getAdjacentEndDevices()) {
-				EndDevice dev = getEndDevice(adjDevId);
-				for (Actuator a : dev.getActuators())
-					routingTables.get(sw.getId()).put(a.getId(), new Pair<Integer, Integer>(dev.getId(), 0));
+		}
+		int[][] neighbours = new int[numSwitches][];
+		double[][] costs = new double[numSwitches][];
+		for (int i = 0; i < numSwitches; i++) {
+			List<Link> swLinks = switchLinks.get(i);
+			neighbours[i] = new int[swLinks.size()];
+			costs[i] = new double[swLinks.size()];
+			for (int j = 0; j < swLinks.size(); j++) {
+				neighbours[i][j] = switchIndex.get(swLinks.get(j).getOtherEndpoint(getSwitches().get(i).getId()));
+				costs[i][j] = getRoutingCost(swLinks.get(j));
 			}
 		}
 		
-		while (!isRoutingConverged(routingTables, numNodes)) {	// loop until the routing tables on switches converges
-			// Each switch floods the information it has to its neighbour switches
-			for (Switch sw : switches) {
-				Map<Integer, Pair<Integer, Integer>> table = routingTables.get(sw.getId());
-				for (int neighbour : sw.getNeighbourSwitches()) {
-					for (Integer dst : table.keySet()) {	// for each destination reachable from this switch (sw)
-						updateRoutingTable(routingTables, neighbour, dst, 
-								sw.getId(), table.get(dst).getSecond()+1);	// the neighbour switch can reach the dest via one more hop by choosing sw as the next hop
-					}
+		double[] distance = new double[numSwitches];
+		BitSet[] firstHops = new BitSet[numSwitches];
+		for (int i = 0; i < numSwitches; i++) {
+			Switch sw = getSwitches().get(i);
+			calculateShortestPaths(i, neighbours, costs, distance, firstHops);
+			Map<Integer, List<Integer>> table = new HashMap<Integer, List<Integer>>();
+			for (int t = 0; t < numSwitches; t++) {
+				if (distance[t] == Double.POSITIVE_INFINITY)
+					continue;	// switch t can't be reached
+				Switch dstSw = getSwitches().get(t);
+				List<Integer> nextHopLinks = new ArrayList<Integer>();
+				for (int j = firstHops[t].nextSetBit(0); j >= 0; j = firstHops[t].nextSetBit(j+1))
+					nextHopLinks.add(switchLinks.get(i).get(j).getId());
+				// adjacent fog devices are reached directly, others through the first hops towards their switch
+				for (int adjEntity : dstSw.getAdjacentEntities())
+					table.put(adjEntity, (t == i) ? getDirectLinks(sw, adjEntity) : nextHopLinks);
+				// actuators are reached through their end-device
+				for (int adjDevId : dstSw.getAdjacentEndDevices()) {
+					EndDevice dev = getEndDevice(adjDevId);
+					for (Actuator a : dev.getActuators())
+						table.put(a.getId(), (t == i) ? getDirectLinks(sw, dev.getId()) : nextHopLinks);
 				}
 			}
+			routingTables.put(sw.getId(), table);
 		}
+		
 		printRoutingTables(routingTables);
-		// For each switch and each destination, get the next hop and add entry pointing to the link to be used to reach the next hop
+		// For each switch and each destination, add entries pointing to the links to be used to reach the next hops
 		for (Switch sw : getSwitches()) {
-			Map<Integer, Pair<Integer, Integer>> routingTable = routingTables.get(sw.getId());
+			Map<Integer, List<Integer>> routingTable = routingTables.get(sw.getId());
 			for (Integer dst : routingTable.keySet()) {
-				int nextHop = routingTable.get(dst).getFirst();
-				Link link = getLink(sw.getId(), nextHop);	// get the link to next hop
-				if (link != null)
-					sw.getSwitchingTable().put(dst, link.getId());	// tell routing table to use link to reach the given next hop
-				else {
-					Logger.error(LOG_TAG, "Sw : "+sw.getName());
-					Logger.error(LOG_TAG, "Link connecting endpoints "+sw.getName()
-							+" and "+CloudSim.getEntityName(nextHop)+" not found.");
-				}
+				List<Integer> links = routingTable.get(dst);
+				if (links.get(0) < 0)
+					continue;	// link to adjacent entity not found
+				sw.getSwitchingTable().put(dst, links.get(0));	// tell routing table to use link to reach the given next hop
+				if (links.size() > 1)
+					sw.getMultipathTable().put(dst, links);	// and the other equal-cost links, if any
 			}
 		}
 	}
 	
-	private EndDevice getEndDevice(int adjDevId) {
-		EndDevice dev = null;
-		for (EndDevice e : getEndDevices()) {
-			if (e.getId() == adjDevId)
-				dev = e;
+	/**
+	 * Get the link connecting a switch to an adjacent entity, as a list of link IDs as used in routing tables.
+	 * @param sw the switch
+	 * @param entityId ID of the adjacent entity
+	 * @return list holding the ID of the link, or -1 if there is no such link 
+	 */
+	private List<Integer> getDirectLinks(Switch sw, int entityId) {
+		Link link = getLink(sw.getId(), entityId);
+		if (link == null) {
+			Logger.error(LOG_TAG, "Sw : "+sw.getName());
+			Logger.error(LOG_TAG, "Link connecting endpoints "+sw.getName()
+					+" and "+CloudSim.getEntityName(entityId)+" not found.");
 		}
-		return dev;
+		List<Integer> links = new ArrayList<Integer>();
+		links.add((link != null) ? link.getId() : -1);
+		return links;
 	}
-
-	private void assignLinksToFogDevices() {
-		for (FogDevice dev : getFogDevices()) {
-			for (Link l : getLinks()) {
-				if (l.getEndpointNorth() == dev.getId() || l.getEndpointSouth() == dev.getId())
-					dev.setLinkId(l.getId());
+	
+	/**
+	 * Computes the shortest paths from a switch to all the others (Dijkstra), keeping the first hops of all 
+	 * the shortest paths to each switch. Costs within COST_TOLERANCE of each other, relative to the larger one, are 
+	 * considered equal.
+	 * @param src index of the source switch
+	 * @param neighbours indices of the neighbours of each switch, one per link
+	 * @param costs cost of the link to each neighbour of each switch
+	 * @param distance output : distance of each switch from the source, or infinity if unreachable
+	 * @param firstHops output : positions (in the adjacency of the source) of the first links of the shortest paths to each switch
+	 */
+	private void calculateShortestPaths(int src, int[][] neighbours, double[][] costs, double[] distance, BitSet[] firstHops) {
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < firstHops.length; i++)
+			firstHops[i] = new BitSet();
+		boolean[] settled = new boolean[distance.length];
+		// entries of the form (distance, switch index), ordered by distance and then by index
+		PriorityQueue<double[]> queue = new PriorityQueue<double[]>(11, new Comparator<double[]>() {
+			@Override
+			public int compare(double[] e1, double[] e2) {
+				int res = Double.compare(e1[0], e2[0]);
+				return (res != 0) ? res : Double.compare(e1[1], e2[1]);
 			}
-		}
-	}
-
-	private void assignLinksToEndDevices() {
-		for (EndDevice dev : getEndDevices()) {
-			for (Link l : getLinks()) {
-				if (l.getEndpointNorth() == dev.getId() || l.getEndpointSouth() == dev.getId())
-					dev.setLinkId(l.getId());
+		});
+		distance[src] = 0;
+		queue.add(new double[] {0, src});
+		while (!queue.isEmpty()) {
+			int u = (int) queue.poll()[1];
+			if (settled[u])
+				continue;
+			settled[u] = true;
+			for (int j = 0; j < neighbours[u].length; j++) {
+				int v = neighbours[u][j];
+				if (v == src)
+					continue;
+				double d = distance[u] + costs[u][j];
+				double tolerance = (distance[v] == Double.POSITIVE_INFINITY) ? 0 : COST_TOLERANCE * Math.max(d, distance[v]);
+				if (d < distance[v] - tolerance) {	// strictly shorter path
+					distance[v] = d;
+					firstHops[v].clear();
+					queue.add(new double[] {d, v});
+				} else if (d > distance[v] + tolerance) {
+					continue;
+				}
+				// shortest or equal-cost path : v can also be reached through the first hops of u
+				if (u == src)
+					firstHops[v].set(j);
+				else
+					firstHops[v].or(firstHops[u]);
 			}
 		}
 	}
 	
 	/**
-	 * Routing table is declared converged when each switch knows where to send a packet destined for any fog device.
-	 * That is, size of routing table at each switch equals <b>numNodes</b>. 
-	 * @param routingTables currently routing table to be checked for covergence
-	 * @param numNodes number of fog devices in the system
-	 * @return true if routing tables have converged
+	 * Get the cost of a link according to the routing metric.
+	 * @param link the link
+	 * @return cost of the link
 	 */
-	private boolean isRoutingConverged(Map<Integer, Map<Integer, Pair<Integer, Integer>>> routingTables, int numNodes) {
-		Logger.debug(LOG_TAG, "numNodes = "+numNodes);
-		for (Integer swId : routingTables.keySet()) {
-			if (routingTables.get(swId).size() < numNodes)
-				return false;
+	private double getRoutingCost(Link link) {
+		switch (getRoutingMetric()) {
+		case ROUTING_LATENCY:
+			return link.getLatency();
+		case ROUTING_BANDWIDTH:
+			return 1.0/link.getBandwidth();
+		default:
+			return 1;
 		}
-		Logger.debug(LOG_TAG, "CONVERGED !");
-		return true;
 	}
 	
-	/**
-	 * Update entry in routing table of a switch for a given destination
-	 * @param routingTables	Data structure holding the unconverged routing tables
-	 * @param swId ID of switch whose routing table is to be modified
-	 * @param dst Destination ID whose entry is to be modified
-	 * @param nextHop New next hop for the destination 
-	 * @param numHops New number of hops for the destination 
-	 */
-	private void updateRoutingTable(Map<Integer, Map<Integer, Pair<Integer, Integer>>> routingTables,
-			int swId, int dst, int nextHop, int numHops) {
-		if (routingTables.get(swId).containsKey(dst)) {
-			int currHops = routingTables.get(swId).get(dst).getSecond();
-			if (numHops < currHops) {
-				routingTables.get(swId).put(dst, new Pair<Integer, Integer>(nextHop, numHops));
-			}
-		} else {
-			routingTables.get(swId).put(dst, new Pair<Integer, Integer>(nextHop, numHops));
+	private EndDevice getEndDevice(int adjDevId) {
+		return endDevicesById.get(adjDevId);
+	}
+
+	private void assignLinksToFogDevices() {
+		for (Link l : getLinks()) {
+			FogDevice north = fogDevicesById.get(l.getEndpointNorth());
+			if (north != null)
+				north.setLinkId(l.getId());
+			FogDevice south = fogDevicesById.get(l.getEndpointSouth());
+			if (south != null)
+				south.setLinkId(l.getId());
+		}
+	}
+
+	private void assignLinksToEndDevices() {
+		for (Link l : getLinks()) {
+			EndDevice north = getEndDevice(l.getEndpointNorth());
+			if (north != null)
+				north.setLinkId(l.getId());
+			EndDevice south = getEndDevice(l.getEndpointSouth());
+			if (south != null)
+				south.setLinkId(l.getId());
 		}
 	}
 	
@@ -333,12 +559,30 @@ public class PhysicalTopology {
 	 * @return the link connecting specified endpoints. If no such link, return null.
 	 */
 	private Link getLink(int endpoint1, int endpoint2) {
-		for (Link l : getLinks()) {
-			if ((l.getEndpointNorth() == endpoint1 && l.getEndpointSouth() == endpoint2) ||
-					(l.getEndpointSouth() == endpoint1 && l.getEndpointNorth() == endpoint2))
-				return l;
-		}
-		return null;
+		return linksByEndpoints.get(getEndpointsKey(endpoint1, endpoint2));
+	}
+	
+	/**
+	 * Get the key of a pair of endpoints in the index of links. The key does not depend on the order of the endpoints.
+	 * @param endpoint1 ID of first endpoint
+	 * @param endpoint2 ID of second endpoint
+	 * @return the key
+	 */
+	private static long getEndpointsKey(int endpoint1, int endpoint2) {
+		int min = Math.min(endpoint1, endpoint2);
+		int max = Math.max(endpoint1, endpoint2);
+		return ((long) min << 32) | (max & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Add a link to the indexes of links.
+	 * @param link the link
+	 */
+	private void indexLink(Link link) {
+		linksById.put(link.getId(), link);
+		long key = getEndpointsKey(link.getEndpointNorth(), link.getEndpointSouth());
+		if (!linksByEndpoints.containsKey(key))	// as with a linear search, the first link connecting the endpoints is used
+			linksByEndpoints.put(key, link);
 	}
 	
 	private void printAdjacentEntities() {
@@ -351,15 +595,22 @@ public class PhysicalTopology {
 		}
 	}
 	
-	private void printRoutingTables(Map<Integer, Map<Integer, Pair<Integer, Integer>>> routingTables) {
+	private void printRoutingTables(Map<Integer, Map<Integer, List<Integer>>> routingTables) {
 		System.out.println("------------------------------");
 		for (Integer swId : routingTables.keySet()) {
-			Map<Integer, Pair<Integer, Integer>> routingTable = routingTables.get(swId);
+			Map<Integer, List<Integer>> routingTable = routingTables.get(swId);
 			System.out.println(CloudSim.getEntityName(swId));
 			
 			for (Integer dst : routingTable.keySet()) {
+				StringBuilder nextHops = new StringBuilder();
+				for (int linkId : routingTable.get(dst)) {
+					if (nextHops.length() > 0)
+						nextHops.append(", ");
+					Link link = getLink(linkId);
+					nextHops.append((link != null) ? CloudSim.getEntityName(link.getOtherEndpoint(swId)) : null);
+				}
 				System.out.print("\t");
-				System.out.println(CloudSim.getEntityName(dst) +" ---> "+ CloudSim.getEntityName(routingTable.get(dst).getFirst()));
+				System.out.println(CloudSim.getEntityName(dst) +" ---> "+ nextHops);
 			}
 		}
 	}	
@@ -369,18 +620,60 @@ public class PhysicalTopology {
 	}
 	public void setFogDevices(List<FogDevice> fogDevices) {
 		this.fogDevices = fogDevices;
+		fogDevicesById = new HashMap<Integer, FogDevice>();
+		for (FogDevice dev : fogDevices)
+			fogDevicesById.put(dev.getId(), dev);
 	}
 	public List<Switch> getSwitches() {
 		return switches;
 	}
 	public void setSwitches(List<Switch> switches) {
 		this.switches = switches;
+		switchesById = new HashMap<Integer, Switch>();
+		for (Switch sw : switches)
+			switchesById.put(sw.getId(), sw);
 	}
 	public List<Link> getLinks() {
 		return links;
 	}
 	public void setLinks(List<Link> links) {
 		this.links = links;
+		linksById = new HashMap<Integer, Link>();
+		linksByEndpoints = new HashMap<Long, Link>();
+		for (Link l : links)
+			indexLink(l);
+	}
+	
+	/**
+	 * Get the flow-level model of the network.
+	 * @return the flow-level model, or null if it is not used
+	 */
+	public FlowModel getFlowModel() {
+		return flowModel;
+	}
+
+	/**
+	 * Enable or disable the flow-level model of the network (see {@link FlowModel}). 
+	 * When enabled, steady periodic streams of tuples are simulated as flows instead of sending each tuple through the links.
+	 * It should be set before the simulation starts.
+	 * @param enabled true to use the flow-level model
+	 */
+	public void setFlowLevelModel(boolean enabled) {
+		flowModel = enabled ? new FlowModel() : null;
+	}
+
+	public int getRoutingMetric() {
+		return routingMetric;
+	}
+	
+	/**
+	 * Set the metric minimised by the routes between switches. It should be set before {@link #setUpEntities()}.
+	 * @param routingMetric one of ROUTING_HOP_COUNT, ROUTING_LATENCY or ROUTING_BANDWIDTH
+	 */
+	public void setRoutingMetric(int routingMetric) {
+		if (routingMetric != ROUTING_HOP_COUNT && routingMetric != ROUTING_LATENCY && routingMetric != ROUTING_BANDWIDTH)
+			throw new IllegalArgumentException("Unknown routing metric : "+routingMetric);
+		this.routingMetric = routingMetric;
 	}
 	
 	private PhysicalTopology() {
@@ -426,5 +719,8 @@ public class PhysicalTopology {
 
 	public void setEndDevices(List<EndDevice> endDevices) {
 		this.endDevices = endDevices;
+		endDevicesById = new HashMap<Integer, EndDevice>();
+		for (EndDevice dev : endDevices)
+			endDevicesById.put(dev.getId(), dev);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Strict priority queueing discipline : a tuple is sent only when no tuple of a higher priority class is queued.
+ * Tuples of the same priority are sent in order of arrival. Classes have priority 0 unless set otherwise.
+ */
+public class PriorityTupleQueue extends TupleQueue {
+
+	/**
+	 * Map from tuple class to its priority. Higher values are served first.
+	 */
+	private Map<String, Integer> priorities;
+
+	/**
+	 * Map from priority to the queued tuples of that priority, highest priority first. Only non-empty queues are present.
+	 */
+	private TreeMap<Integer, LinkedList<Tuple>> queues;
+
+	/**
+	 * Number of queued tuples
+	 */
+	private int size;
+
+	public PriorityTupleQueue() {
+		this(UNBOUNDED);
+	}
+
+	/**
+	 * @param capacity maximum number of tuples in the buffer
+	 */
+	public PriorityTupleQueue(int capacity) {
+		super(capacity);
+		priorities = new HashMap<String, Integer>();
+		queues = new TreeMap<Integer, LinkedList<Tuple>>(Collections.<Integer>reverseOrder());
+	}
+
+	/**
+	 * Sets the priority of a tuple class (by default, a tuple type).
+	 * @param tupleClass the tuple class
+	 * @param priority the priority, higher values being served first
+	 */
+	public void setPriority(String tupleClass, int priority) {
+		priorities.put(tupleClass, priority);
+	}
+
+	/**
+	 * Gets the priority of a tuple class.
+	 * @param tupleClass the tuple class
+	 * @return the priority
+	 */
+	public int getPriority(String tupleClass) {
+		Integer priority = priorities.get(tupleClass);
+		return (priority == null) ? 0 : priority;
+	}
+
+	@Override
+	protected void enqueue(Tuple tuple) {
+		int priority = getPriority(getTupleClass(tuple));
+		LinkedList<Tuple> queue = queues.get(priority);
+		if (queue == null) {
+			queue = new LinkedList<Tuple>();
+			queues.put(priority, queue);
+		}
+		queue.add(tuple);
+		size++;
+	}
+
+	@Override
+	public Tuple poll() {
+		if (size == 0)
+			return null;
+		Map.Entry<Integer, LinkedList<Tuple>> first = queues.firstEntry();
+		Tuple tuple = first.getValue().poll();
+		if (first.getValue().isEmpty())
+			queues.remove(first.getKey());
+		size--;
+		return tuple;
+	}
+
+	@Override
+	public Tuple peek() {
+		return (size == 0) ? null : queues.firstEntry().getValue().peek();
+	}
+
+	/**
+	 * Returns an iterator over the queued tuples, in the order they would be sent. It does not support removal.
+	 */
+	@Override
+	public Iterator<Tuple> iterator() {
+		List<Tuple> tuples = new ArrayList<Tuple>(size);
+		for (LinkedList<Tuple> queue : queues.values())
+			tuples.addAll(queue);
+		return Collections.unmodifiableList(tuples).iterator();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -6,6 +6,7 @@ package org.fog.network;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +25,7 @@ import org.fog.utils.Logger;
  */
 public class Switch extends SimEntity {
 	public static final String LOG_TAG = "SWITCH";
+	private static final int LOG_TAG_ID = Logger.getTagId(LOG_TAG);
 	
 	/**
 	 * List of switches neighbouring this switch
@@ -35,6 +37,12 @@ public class Switch extends SimEntity {
 	 */
 	protected Map<Integer, Integer> switchingTable;
 	
+	/**
+	 * Map from destination entity ID to IDs of the links of equal-cost paths to forward to.
+	 * Only destinations reachable through more than one path are present; others are in the switching table.
+	 */
+	protected Map<Integer, List<Integer>> multipathTable;
+	
 	/**
 	 * List of adjacent entities
 	 */
@@ -48,6 +56,7 @@ public class Switch extends SimEntity {
 	public Switch(String name) {
 		super(name);
 		setSwitchingTable(new HashMap<Integer, Integer>());
+		setMultipathTable(new HashMap<Integer, List<Integer>>());
 		setAdjacentEntities(new ArrayList<Integer>());
 		setNeighbourSwitches(new ArrayList<Integer>());
 		setAdjacentEndDevices(new ArrayList<Integer>());
@@ -67,17 +76,96 @@ public class Switch extends SimEntity {
 	 */
 	private void processTupleArrival(SimEvent ev) {
 		Tuple tuple = (Tuple) ev.getData();
-		Logger.debug(LOG_TAG, getName(), "Received tuple with dst = "
-		+CloudSim.getEntityName(tuple.getDestinationDeviceId())+" & tupleType = "+tuple.getTupleType());
+		if (Logger.isDebugEnabled(LOG_TAG_ID))
+			Logger.debug(LOG_TAG_ID, getName(), "Received tuple with dst = {} & tupleType = {}", 
+					CloudSim.getEntityName(tuple.getDestinationDeviceId()), tuple.getTupleType());
 		
-		int destId = tuple.getDestinationDeviceId();
-		if (getSwitchingTable().containsKey(destId)) {  // check routing (switching) table for next hop
-			sendNow(getSwitchingTable().get(destId), FogEvents.TUPLE_ARRIVAL, tuple);
+		int linkId = getNextLink(tuple);
+		if (linkId >= 0) {
+			sendNow(linkId, FogEvents.TUPLE_ARRIVAL, tuple);
 		} else {
-			Logger.error(LOG_TAG, getName(), "DESTINATION NOT IN SWITCHING TABLE");
+			Logger.error(LOG_TAG_ID, getName(), "DESTINATION NOT IN SWITCHING TABLE");
 		}
 	}
 	
+	/**
+	 * Handler for the arrival of a batch of tuples from a link in batching mode.
+	 * The tuples going to the same link in batching mode are forwarded together in a batch, which is not split 
+	 * when they all go to the same link. Others are forwarded one by one, as each of them arrives.
+	 * @param ev Event containing the batch that just arrived
+	 */
+	private void processTupleBatchArrival(SimEvent ev) {
+		TupleBatch batch = (TupleBatch) ev.getData();
+		int[] linkIds = new int[batch.size()];
+		boolean sameLink = true;
+		for (int i = 0; i < batch.size(); i++) {
+			linkIds[i] = getNextLink(batch.getTuple(i));
+			sameLink &= (linkIds[i] == linkIds[0]);
+		}
+		if (sameLink && isBatching(linkIds[0])) {
+			sendNow(linkIds[0], FogEvents.TUPLE_BATCH_ARRIVAL, batch);
+			return;
+		}
+		Map<Integer, TupleBatch> batches = new LinkedHashMap<Integer, TupleBatch>();
+		for (int i = 0; i < batch.size(); i++) {
+			Tuple tuple = batch.getTuple(i);
+			if (linkIds[i] < 0) {
+				Logger.error(LOG_TAG_ID, getName(), "DESTINATION NOT IN SWITCHING TABLE");
+			} else if (isBatching(linkIds[i])) {
+				TupleBatch linkBatch = batches.get(linkIds[i]);
+				if (linkBatch == null) {
+					linkBatch = new TupleBatch();
+					batches.put(linkIds[i], linkBatch);
+				}
+				linkBatch.add(tuple, batch.getTime(i));
+			} else {
+				send(linkIds[i], batch.getTime(i) - CloudSim.clock(), FogEvents.TUPLE_ARRIVAL, tuple);
+			}
+		}
+		for (Map.Entry<Integer, TupleBatch> e : batches.entrySet())
+			sendNow(e.getKey(), FogEvents.TUPLE_BATCH_ARRIVAL, e.getValue());
+	}
+	
+	private static boolean isBatching(int linkId) {
+		return linkId >= 0 && ((Link) CloudSim.getEntity(linkId)).isBatching();
+	}
+	
+	/**
+	 * Gets the link a tuple is forwarded to.
+	 * @param tuple tuple to be forwarded
+	 * @return ID of the link, or -1 if the destination of the tuple is not in the switching table
+	 */
+	protected int getNextLink(Tuple tuple) {
+		int destId = tuple.getDestinationDeviceId();
+		List<Integer> paths = getMultipathTable().get(destId);
+		if (paths != null)  // several equal-cost paths : all tuples of a flow take the same one
+			return paths.get(selectPath(tuple, paths.size()));
+		Integer linkId = getSwitchingTable().get(destId);  // check routing (switching) table for next hop
+		return (linkId != null) ? linkId : -1;
+	}
+	
+	/**
+	 * Selects one of several equal-cost paths for a tuple by hashing the identity of its flow 
+	 * (source module, destination module and application), so that tuples of a flow are not reordered.
+	 * The ID of the switch is mixed in so that consecutive switches do not all make the same choice.
+	 * @param tuple tuple to be forwarded
+	 * @param numPaths number of equal-cost paths
+	 * @return index of the path to be used
+	 */
+	protected int selectPath(Tuple tuple, int numPaths) {
+		int hash = getId();
+		hash = 31*hash + hashCode(tuple.getSrcModuleName());
+		hash = 31*hash + hashCode(tuple.getDestModuleName());
+		hash = 31*hash + hashCode(tuple.getAppId());
+		hash *= 0x9E3779B9;  // spread the bits before taking the remainder
+		hash ^= hash >>> 16;
+		return (hash & Integer.MAX_VALUE) % numPaths;
+	}
+	
+	private static int hashCode(String s) {
+		return (s == null) ? 0 : s.hashCode();
+	}
+	
 	@Override
 	public void startEntity() {
 		
@@ -90,6 +178,9 @@ public class Switch extends SimEntity {
 		case FogEvents.TUPLE_ARRIVAL:
 			processTupleArrival(ev);
 			break;
+		case FogEvents.TUPLE_BATCH_ARRIVAL:
+			processTupleBatchArrival(ev);
+			break;
 		}
 	}
 
@@ -114,6 +205,14 @@ public class Switch extends SimEntity {
 		this.switchingTable = switchingTable;
 	}
 
+	public Map<Integer, List<Integer>> getMultipathTable() {
+		return multipathTable;
+	}
+
+	public void setMultipathTable(Map<Integer, List<Integer>> multipathTable) {
+		this.multipathTable = multipathTable;
+	}
+
 	public List<Integer> getAdjacentEntities() {
 		return adjacentEntities;
 	}
@@ -0,0 +1,58 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Tuples sent back to back on a link in batching mode, delivered to the next switch with a single event.
+ * Each tuple comes with the time at which it reaches the end of the link, in non-decreasing order.
+ */
+public class TupleBatch {
+
+	private List<Tuple> tuples;
+	private double[] times;
+
+	public TupleBatch() {
+		this(8);
+	}
+
+	public TupleBatch(int capacity) {
+		tuples = new ArrayList<Tuple>(capacity);
+		times = new double[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adds a tuple to the batch.
+	 * @param tuple the tuple
+	 * @param time time at which the tuple arrives
+	 */
+	public void add(Tuple tuple, double time) {
+		if (tuples.size() == times.length)
+			times = Arrays.copyOf(times, 2*times.length);
+		times[tuples.size()] = time;
+		tuples.add(tuple);
+	}
+
+	public int size() {
+		return tuples.size();
+	}
+
+	public boolean isEmpty() {
+		return tuples.isEmpty();
+	}
+
+	public Tuple getTuple(int index) {
+		return tuples.get(index);
+	}
+
+	public double getTime(int index) {
+		return times[index];
+	}
+}
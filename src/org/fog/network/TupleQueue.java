@@ -0,0 +1,224 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.AbstractQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Base class of the queueing disciplines of a link direction (see {@link Link#setNorthTupleQueue(java.util.Queue)}
+ * and {@link Link#setSouthTupleQueue(java.util.Queue)}).
+ * Subclasses decide the order in which the queued tuples are sent; this class manages the buffer :
+ * it can be bounded (tail-drop), can drop tuples early with Random Early Detection (RED), and counts the dropped tuples.
+ * A dropped tuple is refused by {@link #offer(Tuple)}, which then returns false.
+ * <p>
+ * Tuples are classified by tuple type for scheduling purposes, see {@link #getTupleClass(Tuple)}.
+ */
+public abstract class TupleQueue extends AbstractQueue<Tuple> {
+
+	/**
+	 * Capacity of an unbounded queue
+	 */
+	public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	/**
+	 * Maximum number of tuples in the buffer. Tuples arriving when the buffer is full are dropped.
+	 */
+	private int capacity;
+
+	/**
+	 * Flag indicating if RED is enabled
+	 */
+	private boolean redEnabled;
+	/**
+	 * Average queue size below which no tuple is dropped by RED
+	 */
+	private double minThreshold;
+	/**
+	 * Average queue size above which every tuple is dropped by RED
+	 */
+	private double maxThreshold;
+	/**
+	 * Drop probability when the average queue size reaches the maximum threshold
+	 */
+	private double maxProbability;
+	/**
+	 * Weight of the current queue size in the exponentially weighted average queue size
+	 */
+	private double queueWeight;
+	/**
+	 * Average queue size, as computed by RED on each arrival
+	 */
+	private double averageSize;
+	/**
+	 * Number of tuples accepted since the last RED drop, or -1 if the average was below the minimum threshold
+	 */
+	private int count = -1;
+	/**
+	 * Random number generator for RED drops
+	 */
+	private Random random;
+
+	/**
+	 * Number of tuples dropped
+	 */
+	private long droppedTuples;
+	/**
+	 * Number of tuples dropped for each tuple type
+	 */
+	private Map<String, Long> droppedTuplesPerType;
+
+	/**
+	 * Creates a queue with an unbounded buffer.
+	 */
+	protected TupleQueue() {
+		this(UNBOUNDED);
+	}
+
+	/**
+	 * Creates a queue with a tail-drop buffer.
+	 * @param capacity maximum number of tuples in the buffer
+	 */
+	protected TupleQueue(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity should be positive : "+capacity);
+		this.capacity = capacity;
+		droppedTuplesPerType = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Enables Random Early Detection (S. Floyd and V. Jacobson, 1993) : tuples are dropped with a probability growing
+	 * linearly from 0 to <b>maxProbability</b> as the average queue size grows from <b>minThreshold</b> to <b>maxThreshold</b>,
+	 * and always above it. The capacity of the buffer still applies.
+	 * @param minThreshold average queue size (in tuples) from which tuples may be dropped
+	 * @param maxThreshold average queue size (in tuples) from which all tuples are dropped
+	 * @param maxProbability drop probability at the maximum threshold
+	 * @param queueWeight weight of the current queue size in the average queue size, e.g. 0.002
+	 * @param seed seed of the random drops, so that runs can be repeated
+	 */
+	public void enableRed(double minThreshold, double maxThreshold, double maxProbability, double queueWeight, long seed) {
+		if (minThreshold < 0 || maxThreshold <= minThreshold)
+			throw new IllegalArgumentException("Invalid RED thresholds : "+minThreshold+", "+maxThreshold);
+		if (maxProbability <= 0 || maxProbability > 1 || queueWeight <= 0 || queueWeight > 1)
+			throw new IllegalArgumentException("RED probability and weight should be in (0, 1]");
+		this.minThreshold = minThreshold;
+		this.maxThreshold = maxThreshold;
+		this.maxProbability = maxProbability;
+		this.queueWeight = queueWeight;
+		random = new Random(seed);
+		averageSize = 0;
+		count = -1;
+		redEnabled = true;
+	}
+
+	@Override
+	public boolean offer(Tuple tuple) {
+		if (tuple == null)
+			throw new NullPointerException();
+		boolean earlyDrop = redEnabled && isDroppedEarly();
+		if (earlyDrop || size() >= getCapacity()) {
+			droppedTuples++;
+			String tupleType = tuple.getTupleType();
+			Long dropped = droppedTuplesPerType.get(tupleType);
+			droppedTuplesPerType.put(tupleType, (dropped == null) ? 1 : dropped+1);
+			return false;
+		}
+		enqueue(tuple);
+		return true;
+	}
+
+	/**
+	 * Adds a tuple accepted in the buffer to the queue.
+	 * @param tuple the tuple
+	 */
+	protected abstract void enqueue(Tuple tuple);
+
+	/**
+	 * Gets the class of a tuple, i.e. the key of the weights and priorities of the queueing disciplines.
+	 * By default, it is the tuple type.
+	 * @param tuple the tuple
+	 * @return the class of the tuple
+	 */
+	protected String getTupleClass(Tuple tuple) {
+		return tuple.getTupleType();
+	}
+
+	/**
+	 * Gets the size of a tuple used for fair sharing the link, i.e. its network size.
+	 * @param tuple the tuple
+	 * @return size of the tuple
+	 */
+	protected long getTupleSize(Tuple tuple) {
+		return tuple.getCloudletFileSize();
+	}
+
+	/**
+	 * Updates the average queue size on the arrival of a tuple and decides if RED drops it.
+	 * @return true if the arriving tuple should be dropped
+	 */
+	private boolean isDroppedEarly() {
+		averageSize = (1 - queueWeight)*averageSize + queueWeight*size();
+		if (averageSize < minThreshold) {
+			count = -1;
+			return false;
+		}
+		if (averageSize >= maxThreshold) {
+			count = 0;
+			return true;
+		}
+		count++;
+		double pb = maxProbability*(averageSize - minThreshold)/(maxThreshold - minThreshold);
+		// spread the drops evenly : the probability grows with the number of tuples accepted since the last drop
+		if (count*pb >= 1 || random.nextDouble() < pb/(1 - count*pb)) {
+			count = 0;
+			return true;
+		}
+		return false;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity should be positive : "+capacity);
+		this.capacity = capacity;
+	}
+
+	public boolean isRedEnabled() {
+		return redEnabled;
+	}
+
+	public void disableRed() {
+		redEnabled = false;
+	}
+
+	/**
+	 * Gets the number of tuples dropped by this queue.
+	 * @return number of dropped tuples
+	 */
+	public long getDroppedTuples() {
+		return droppedTuples;
+	}
+
+	/**
+	 * Gets the number of tuples of a given type dropped by this queue.
+	 * @param tupleType the tuple type
+	 * @return number of dropped tuples
+	 */
+	public long getDroppedTuples(String tupleType) {
+		Long dropped = droppedTuplesPerType.get(tupleType);
+		return (dropped == null) ? 0 : dropped;
+	}
+
+	public Map<String, Long> getDroppedTuplesPerType() {
+		return droppedTuplesPerType;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Weighted fair queueing discipline : each tuple class receives a share of the link bandwidth proportional
+ * to its weight, so large tuples of one class do not hold back the tuples of the other classes.
+ * Implemented as self-clocked fair queueing (S. J. Golestani, 1994) : each tuple is stamped with a virtual
+ * finish time and the tuple with the smallest one is sent first, the virtual time being the finish time of
+ * the last tuple sent. Classes have weight 1 unless set otherwise.
+ */
+public class WeightedFairTupleQueue extends TupleQueue {
+
+	/**
+	 * Map from tuple class to its weight
+	 */
+	private Map<String, Double> weights;
+
+	/**
+	 * Map from tuple class to the virtual finish time of its last queued tuple
+	 */
+	private Map<String, Double> lastFinishTimes;
+
+	/**
+	 * Queued tuples, ordered by virtual finish time and then by order of arrival
+	 */
+	private PriorityQueue<Entry> entries;
+
+	/**
+	 * Virtual time, i.e. the finish time of the last tuple sent
+	 */
+	private double virtualTime;
+
+	/**
+	 * Number of tuples enqueued so far, used to keep the order of arrival between tuples with equal finish times
+	 */
+	private long arrivals;
+
+	public WeightedFairTupleQueue() {
+		this(UNBOUNDED);
+	}
+
+	/**
+	 * @param capacity maximum number of tuples in the buffer
+	 */
+	public WeightedFairTupleQueue(int capacity) {
+		super(capacity);
+		weights = new HashMap<String, Double>();
+		lastFinishTimes = new HashMap<String, Double>();
+		entries = new PriorityQueue<Entry>();
+	}
+
+	/**
+	 * Sets the weight of a tuple class (by default, a tuple type).
+	 * @param tupleClass the tuple class
+	 * @param weight the weight
+	 */
+	public void setWeight(String tupleClass, double weight) {
+		if (weight <= 0)
+			throw new IllegalArgumentException("Weight should be positive : "+weight);
+		weights.put(tupleClass, weight);
+	}
+
+	/**
+	 * Gets the weight of a tuple class.
+	 * @param tupleClass the tuple class
+	 * @return the weight
+	 */
+	public double getWeight(String tupleClass) {
+		Double weight = weights.get(tupleClass);
+		return (weight == null) ? 1 : weight;
+	}
+
+	@Override
+	protected void enqueue(Tuple tuple) {
+		String tupleClass = getTupleClass(tuple);
+		Double lastFinishTime = lastFinishTimes.get(tupleClass);
+		double startTime = (lastFinishTime == null) ? virtualTime : Math.max(virtualTime, lastFinishTime);
+		double finishTime = startTime + getTupleSize(tuple)/getWeight(tupleClass);
+		lastFinishTimes.put(tupleClass, finishTime);
+		entries.add(new Entry(tuple, finishTime, arrivals++));
+	}
+
+	@Override
+	public Tuple poll() {
+		Entry entry = entries.poll();
+		if (entry == null)
+			return null;
+		virtualTime = entry.finishTime;
+		return entry.tuple;
+	}
+
+	@Override
+	public Tuple peek() {
+		Entry entry = entries.peek();
+		return (entry == null) ? null : entry.tuple;
+	}
+
+	/**
+	 * Returns an iterator over the queued tuples, in no particular order. It does not support removal.
+	 */
+	@Override
+	public Iterator<Tuple> iterator() {
+		List<Tuple> tuples = new ArrayList<Tuple>(entries.size());
+		for (Entry entry : entries)
+			tuples.add(entry.tuple);
+		return Collections.unmodifiableList(tuples).iterator();
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * A queued tuple with its virtual finish time.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final Tuple tuple;
+		final double finishTime;
+		final long arrival;
+
+		Entry(Tuple tuple, double finishTime, long arrival) {
+			this.tuple = tuple;
+			this.finishTime = finishTime;
+			this.arrival = arrival;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int res = Double.compare(finishTime, other.finishTime);
+			return (res != 0) ? res : Long.compare(arrival, other.arrival);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ *
+ */
+package org.fog.placement;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binds each placement to shared instances by consistent hashing of its smallest sensor ID : the instances of each
+ * index own several points of a hash ring, and a placement goes to the owner of the first point following the hash
+ * of its key. A placement keeps its instances when the number of instances changes, unless they are removed or the
+ * new ones take over its point, so that runs with different pool sizes bind sensors alike.
+ * Placements without sensors are keyed by their rank.
+ * 
+ * @since iFogSim 2.0
+ */
+public class ConsistentHashInstanceBinding implements ModuleInstanceBinding {
+
+	/**
+	 * Number of points of the ring owned by the instances of each index, which evens out their shares
+	 */
+	public static final int DEFAULT_POINTS_PER_INSTANCE = 64;
+	
+	private final int pointsPerInstance;
+	
+	/**
+	 * Map from point of the ring to the index of the instances owning it, for ringInstanceCount instances
+	 */
+	private TreeMap<Integer, Integer> ring;
+	private int ringInstanceCount;
+	
+	/**
+	 * Number of placements bound so far
+	 */
+	private int boundPlacements;
+	
+	public ConsistentHashInstanceBinding() {
+		this(DEFAULT_POINTS_PER_INSTANCE);
+	}
+	
+	/**
+	 * @param pointsPerInstance number of points of the ring owned by the instances of each index
+	 */
+	public ConsistentHashInstanceBinding(int pointsPerInstance) {
+		if (pointsPerInstance <= 0)
+			throw new IllegalArgumentException("Number of points per instance should be positive : "+pointsPerInstance);
+		this.pointsPerInstance = pointsPerInstance;
+	}
+	
+	@Override
+	public int bind(ModulePlacement placement, int instanceCount) {
+		if (ring == null || ringInstanceCount != instanceCount)
+			buildRing(instanceCount);
+		int key = getKey(placement);
+		boundPlacements++;
+		Map.Entry<Integer, Integer> owner = ring.ceilingEntry(hash(key));
+		return (owner != null) ? owner.getValue() : ring.firstEntry().getValue();
+	}
+	
+	private void buildRing(int instanceCount) {
+		ring = new TreeMap<Integer, Integer>();
+		for (int instance = 0; instance < instanceCount; instance++) {
+			for (int point = 0; point < pointsPerInstance; point++)
+				ring.put(hash((instance*pointsPerInstance + point) ^ 0x5bd1e995), instance);
+		}
+		ringInstanceCount = instanceCount;
+	}
+	
+	private int getKey(ModulePlacement placement) {
+		boolean found = false;
+		int key = 0;
+		for (List<Integer> sensorIds : placement.getSensorIds().values()) {
+			for (int sensorId : sensorIds) {
+				if (!found || sensorId < key)
+					key = sensorId;
+				found = true;
+			}
+		}
+		return found ? key : boundPlacements;
+	}
+	
+	/**
+	 * Spreads an integer over the ring (finalizer of MurmurHash3).
+	 */
+	private static int hash(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+}
@@ -0,0 +1,36 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ *
+ */
+package org.fog.placement;
+
+import java.util.Arrays;
+
+/**
+ * Binds each placement to the shared instances serving the fewest sensors so far, the lowest index winning ties.
+ * Placements without sensors count as one sensor.
+ * 
+ * @since iFogSim 2.0
+ */
+public class LeastLoadedInstanceBinding implements ModuleInstanceBinding {
+
+	/**
+	 * Number of sensors served by the instances of each index
+	 */
+	private long[] loads = new long[0];
+	
+	@Override
+	public int bind(ModulePlacement placement, int instanceCount) {
+		if (loads.length < instanceCount)
+			loads = Arrays.copyOf(loads, instanceCount);
+		int instance = 0;
+		for (int i = 1; i < instanceCount; i++) {
+			if (loads[i] < loads[instance])
+				instance = i;
+		}
+		loads[instance] += Math.max(1, placement.getSensorCount());
+		return instance;
+	}
+	
+}
@@ -0,0 +1,26 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ *
+ */
+package org.fog.placement;
+
+/**
+ * Policy binding the placements of an application to the module instances they share, when the placement policy
+ * shares a pool of instances of each module across placements (see {@link ModulePlacementPolicy#setSharedInstances}).
+ * All the modules of a placement are bound to instances of the same index, so that tuples stay within the instances
+ * of that index.
+ * 
+ * @since iFogSim 2.0
+ */
+public interface ModuleInstanceBinding {
+
+	/**
+	 * Chooses the instances a placement is bound to. Called once for each placement, in order.
+	 * @param placement the placement
+	 * @param instanceCount number of shared instances of each module
+	 * @return index of the instances, between 0 and instanceCount-1
+	 */
+	public int bind(ModulePlacement placement, int instanceCount);
+	
+}
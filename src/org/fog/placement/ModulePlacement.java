@@ -72,6 +72,17 @@ public class ModulePlacement {
 			return -1;
 	}
 	
+	/**
+	 * Gets the number of sensors in this ModulePlacement, of all types
+	 * @return
+	 */
+	public int getSensorCount() {
+		int count = 0;
+		for (List<Integer> ids : sensorIds.values())
+			count += ids.size();
+		return count;
+	}
+	
 	public Map<String, List<Integer>> getSensorIds() {
 		return sensorIds;
 	}
@@ -65,6 +65,16 @@ public abstract class ModulePlacementPolicy {
 	 */
 	private Map<Integer, ActuatorCharacteristics> actuatorCharacteristics;
 	
+	/**
+	 * Number of instances of each module shared by the placements on a device, or 0 if each placement has its own
+	 */
+	private int sharedInstanceCount;
+	
+	/**
+	 * Policy binding placements to shared instances
+	 */
+	private ModuleInstanceBinding instanceBinding;
+	
 	protected ModulePlacementPolicy() {
 		setFogDeviceCharacteristics(new HashMap<Integer, FogDeviceCharacteristics>());
 		setSensorCharacteristics(new HashMap<Integer, SensorCharacteristics>());
@@ -145,6 +155,36 @@ public abstract class ModulePlacementPolicy {
 		return null;
 	}
 	
+	/**
+	 * Makes the placements share a pool of instances of each module on each device, instead of having an instance each.
+	 * All the modules of a placement are bound to the instances of the same index, chosen by the binding policy.
+	 * A shared instance sends each tuple on to the modules and actuators of the placement the tuple originates from, 
+	 * so the placements bound to an instance may map the downstream modules to different devices. Periodic tuples, 
+	 * which originate from no placement, go to the destinations of all the placements bound to the instance.
+	 * @param instanceCount number of instances of each module on a device, or 0 to give each placement its own
+	 * @param instanceBinding policy binding placements to instances
+	 */
+	public void setSharedInstances(int instanceCount, ModuleInstanceBinding instanceBinding) {
+		if (instanceCount < 0)
+			throw new IllegalArgumentException("Number of shared instances should not be negative : "+instanceCount);
+		if (instanceCount > 0 && instanceBinding == null)
+			throw new IllegalArgumentException("Shared instances need a binding policy");
+		this.sharedInstanceCount = instanceCount;
+		this.instanceBinding = instanceBinding;
+	}
+	
+	public boolean isSharingInstances() {
+		return sharedInstanceCount > 0;
+	}
+	
+	public int getSharedInstanceCount() {
+		return sharedInstanceCount;
+	}
+	
+	public ModuleInstanceBinding getInstanceBinding() {
+		return instanceBinding;
+	}
+	
 	public List<FogDevice> getFogDevices() {
 		return fogDevices;
 	}
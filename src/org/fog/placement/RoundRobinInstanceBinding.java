@@ -0,0 +1,25 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ *
+ */
+package org.fog.placement;
+
+/**
+ * Binds successive placements to successive shared instances.
+ * 
+ * @since iFogSim 2.0
+ */
+public class RoundRobinInstanceBinding implements ModuleInstanceBinding {
+
+	/**
+	 * Number of placements bound so far
+	 */
+	private int boundPlacements;
+	
+	@Override
+	public int bind(ModulePlacement placement, int instanceCount) {
+		return boundPlacements++ % instanceCount;
+	}
+	
+}
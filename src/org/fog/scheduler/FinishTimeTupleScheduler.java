@@ -0,0 +1,357 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.Consts;
+import org.cloudbus.cloudsim.ResCloudlet;
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.entities.Tuple;
+
+/**
+ * Tuple scheduler sharing the processing capacity of a module among its running tuples (processor sharing), like
+ * {@link TupleScheduler}, but in O(log n) per tuple submitted or finished. All running tuples progress at the same
+ * rate, so the amount of work each PE has received since the scheduler started - the virtual time - determines when
+ * they finish : a tuple submitted at virtual time V with a length of L finishes when the virtual time reaches V + L,
+ * whatever the load in between. Running tuples are kept in a min-heap on this virtual finish time.
+ * <p>
+ * When a {@link TupleCompletionListener} is set, finished tuples are pushed to it as they finish and it is told when
+ * the next tuple will finish, so that the device does not poll its modules. Otherwise finished tuples are collected
+ * like with the other schedulers.
+ */
+public class FinishTimeTupleScheduler extends TupleScheduler {
+
+	/**
+	 * A running tuple with its virtual start and finish times and its position in the heap.
+	 */
+	private static class ResTuple extends ResCloudlet {
+		double startTag;
+		double finishTag;
+		int heapIndex;
+
+		ResTuple(Cloudlet cloudlet) {
+			super(cloudlet);
+		}
+	}
+
+	/**
+	 * Running tuples, as a binary min-heap on their virtual finish time. This is also the execution list of the scheduler.
+	 */
+	private List<ResTuple> heap;
+	/**
+	 * Work received by each PE since the scheduler started, in MI
+	 */
+	private double virtualTime;
+	/**
+	 * Time up to which the virtual time was advanced
+	 */
+	private double virtualTimeUpdated;
+	/**
+	 * Number of PEs requested by the running tuples
+	 */
+	private int pesInUse;
+	/**
+	 * Number of running tuples using the CPU fully, whose utilization is known without asking their utilization model
+	 */
+	private int fullCpuTuples;
+	private TupleCompletionListener completionListener;
+	/**
+	 * Time the listener was last told the next tuple would finish at, or Double.MAX_VALUE if that has passed
+	 */
+	private double notifiedFinishTime = Double.MAX_VALUE;
+
+	public FinishTimeTupleScheduler(double mips, int numberOfPes) {
+		super(mips, numberOfPes);
+		heap = new ArrayList<ResTuple>();
+		setCloudletExecList(heap);
+	}
+
+	@Override
+	public TupleScheduler createScheduler(double mips, int numberOfPes) {
+		return new FinishTimeTupleScheduler(mips, numberOfPes);
+	}
+
+	/**
+	 * Gets the rate at which each PE of a running tuple progresses.
+	 * @param mipsShare the MIPS share of each PE of the module
+	 * @return the rate, in MI per unit of time
+	 */
+	@Override
+	protected double getCapacity(List<Double> mipsShare) {
+		double capacity = 0.0;
+		int cpus = 0;
+		for (Double mips : mipsShare) {
+			capacity += mips;
+			if (mips > 0.0)
+				cpus++;
+		}
+		currentCPUs = cpus;
+		int sharingPes = Math.max(pesInUse, cpus);
+		return (sharingPes == 0) ? 0 : capacity / sharingPes;
+	}
+
+	private List<Double> getMipsShare() {
+		if (getCurrentMipsShare() == null) {
+			List<Double> mipsShare = new ArrayList<Double>();
+			for (int i = 0; i < getNumPes(); i++)
+				mipsShare.add(getMips());
+			setCurrentMipsShare(mipsShare);
+		}
+		return getCurrentMipsShare();
+	}
+
+	/**
+	 * Advances the virtual time to the given time, at the rate of the running tuples since it was last advanced.
+	 */
+	private void advance(double currentTime) {
+		if (currentTime > virtualTimeUpdated && !heap.isEmpty())
+			virtualTime += getCapacity(getMipsShare()) * (currentTime - virtualTimeUpdated);
+		virtualTimeUpdated = Math.max(virtualTimeUpdated, currentTime);
+	}
+
+	@Override
+	public double updateVmProcessing(double currentTime, List<Double> mipsShare) {
+		advance(currentTime);
+		setCurrentMipsShare(mipsShare);
+		setPreviousTime(currentTime);
+		if (heap.isEmpty())
+			return 0.0;
+		finishDueTuples(currentTime);
+		return getNextFinishTime(currentTime);
+	}
+
+	/**
+	 * Finishes the running tuples due to finish before the minimum time between events.
+	 */
+	private void finishDueTuples(double currentTime) {
+		while (!heap.isEmpty()) {
+			double rate = getCapacity(getMipsShare());
+			if (rate <= 0 || (heap.get(0).finishTag - virtualTime) / rate >= CloudSim.getMinTimeBetweenEvents())
+				break;
+			cloudletFinish(remove(0));
+		}
+		notifyNextFinishTime(currentTime);
+	}
+
+	/**
+	 * Gets the time the next running tuple finishes at, if no tuple is submitted in between.
+	 * @param currentTime the current time
+	 * @return the finish time, or 0 if no tuple is running
+	 */
+	private double getNextFinishTime(double currentTime) {
+		if (heap.isEmpty())
+			return 0.0;
+		double rate = getCapacity(getMipsShare());
+		if (rate <= 0)
+			return Double.MAX_VALUE;
+		return currentTime + Math.max((heap.get(0).finishTag - virtualTime) / rate, CloudSim.getMinTimeBetweenEvents());
+	}
+
+	/**
+	 * Tells the listener when the next running tuple finishes, if it was not told already of an earlier time
+	 * which has not passed.
+	 */
+	private void notifyNextFinishTime(double currentTime) {
+		if (completionListener == null)
+			return;
+		if (notifiedFinishTime <= currentTime)
+			notifiedFinishTime = Double.MAX_VALUE;
+		double finishTime = getNextFinishTime(currentTime);
+		if (finishTime > 0 && finishTime < Double.MAX_VALUE && finishTime < notifiedFinishTime) {
+			notifiedFinishTime = finishTime;
+			completionListener.nextFinishTimeChanged(this, finishTime);
+		}
+	}
+
+	@Override
+	public double cloudletSubmit(Cloudlet cloudlet, double fileTransferTime) {
+		double currentTime = CloudSim.clock();
+		advance(currentTime);
+		ResTuple rcl = new ResTuple(cloudlet);
+		rcl.setCloudletStatus(Cloudlet.INEXEC);
+		for (int i = 0; i < cloudlet.getNumberOfPes(); i++) {
+			rcl.setMachineAndPeId(0, i);
+		}
+		// use the current capacity to estimate the extra amount of
+		// time to file transferring. It must be added to the cloudlet length
+		double extraSize = getCapacity(getMipsShare()) * fileTransferTime;
+		cloudlet.setCloudletLength((long) (cloudlet.getCloudletLength() + extraSize));
+		rcl.startTag = virtualTime;
+		rcl.finishTag = virtualTime + cloudlet.getCloudletLength();
+		add(rcl);
+		if (completionListener != null) {
+			// the completion is pushed to the listener, there is no need for the datacenter to check for it
+			notifyNextFinishTime(currentTime);
+			return 0.0;
+		}
+		return (rcl.finishTag - virtualTime) / getCapacity(getMipsShare());
+	}
+
+	@Override
+	public void cloudletFinish(ResCloudlet rcl) {
+		rcl.setCloudletStatus(Cloudlet.SUCCESS);
+		rcl.finalizeCloudlet();
+		if (completionListener != null)
+			completionListener.tupleFinished(this, (Tuple) rcl.getCloudlet());
+		else
+			getCloudletFinishedList().add(rcl);
+	}
+
+	/**
+	 * Records the work done by a tuple removed from the running tuples before finishing.
+	 */
+	private void recordProgress(ResTuple rcl) {
+		double done = Math.min(virtualTime, rcl.finishTag) - rcl.startTag;
+		rcl.updateCloudletFinishedSoFar((long) (done * rcl.getNumberOfPes() * Consts.MILLION));
+	}
+
+	private ResTuple find(int cloudletId) {
+		for (ResTuple rcl : heap) {
+			if (rcl.getCloudletId() == cloudletId)
+				return rcl;
+		}
+		return null;
+	}
+
+	@Override
+	public Cloudlet cloudletCancel(int cloudletId) {
+		ResTuple rcl = find(cloudletId);
+		if (rcl == null)
+			return super.cloudletCancel(cloudletId);	// finished or paused
+		advance(CloudSim.clock());
+		remove(rcl.heapIndex);
+		recordProgress(rcl);
+		if (rcl.getRemainingCloudletLength() == 0)
+			cloudletFinish(rcl);
+		else
+			rcl.setCloudletStatus(Cloudlet.CANCELED);
+		return rcl.getCloudlet();
+	}
+
+	@Override
+	public boolean cloudletPause(int cloudletId) {
+		ResTuple rcl = find(cloudletId);
+		if (rcl == null)
+			return false;
+		advance(CloudSim.clock());
+		remove(rcl.heapIndex);
+		recordProgress(rcl);
+		if (rcl.getRemainingCloudletLength() == 0) {
+			cloudletFinish(rcl);
+		} else {
+			rcl.setCloudletStatus(Cloudlet.PAUSED);
+			getCloudletPausedList().add(rcl);
+		}
+		return true;
+	}
+
+	@Override
+	public double cloudletResume(int cloudletId) {
+		List<ResCloudlet> pausedList = getCloudletPausedList();
+		for (int i = 0; i < pausedList.size(); i++) {
+			if (pausedList.get(i).getCloudletId() != cloudletId)
+				continue;
+			ResTuple rcl = (ResTuple) pausedList.remove(i);
+			double currentTime = CloudSim.clock();
+			advance(currentTime);
+			rcl.setCloudletStatus(Cloudlet.INEXEC);
+			double remainingLength = rcl.getRemainingCloudletLength() / (double) rcl.getNumberOfPes();
+			rcl.startTag = virtualTime - (rcl.getCloudletLength() - remainingLength);
+			rcl.finishTag = virtualTime + remainingLength;
+			add(rcl);
+			notifyNextFinishTime(currentTime);
+			return currentTime + remainingLength / getCapacity(getMipsShare());
+		}
+		return 0.0;
+	}
+
+	@Override
+	public Cloudlet migrateCloudlet() {
+		advance(CloudSim.clock());
+		ResTuple rcl = remove(0);
+		recordProgress(rcl);
+		rcl.finalizeCloudlet();
+		return rcl.getCloudlet();
+	}
+
+	@Override
+	public double getTotalUtilizationOfCpu(double time) {
+		if (fullCpuTuples == heap.size())
+			return fullCpuTuples;
+		return super.getTotalUtilizationOfCpu(time);
+	}
+
+	private void add(ResTuple rcl) {
+		rcl.heapIndex = heap.size();
+		heap.add(rcl);
+		siftUp(rcl.heapIndex);
+		pesInUse += rcl.getNumberOfPes();
+		if (rcl.getCloudlet().getUtilizationModelCpu() instanceof UtilizationModelFull)
+			fullCpuTuples++;
+	}
+
+	private ResTuple remove(int index) {
+		ResTuple rcl = heap.get(index);
+		ResTuple last = heap.remove(heap.size() - 1);
+		if (last != rcl) {
+			set(index, last);
+			siftDown(index);
+			siftUp(last.heapIndex);
+		}
+		pesInUse -= rcl.getNumberOfPes();
+		if (rcl.getCloudlet().getUtilizationModelCpu() instanceof UtilizationModelFull)
+			fullCpuTuples--;
+		return rcl;
+	}
+
+	private void set(int index, ResTuple rcl) {
+		heap.set(index, rcl);
+		rcl.heapIndex = index;
+	}
+
+	private void siftUp(int index) {
+		ResTuple rcl = heap.get(index);
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heap.get(parent).finishTag <= rcl.finishTag)
+				break;
+			set(index, heap.get(parent));
+			index = parent;
+		}
+		set(index, rcl);
+	}
+
+	private void siftDown(int index) {
+		ResTuple rcl = heap.get(index);
+		int half = heap.size() >>> 1;
+		while (index < half) {
+			int child = 2*index + 1;
+			if (child + 1 < heap.size() && heap.get(child + 1).finishTag < heap.get(child).finishTag)
+				child++;
+			if (rcl.finishTag <= heap.get(child).finishTag)
+				break;
+			set(index, heap.get(child));
+			index = child;
+		}
+		set(index, rcl);
+	}
+
+	public TupleCompletionListener getCompletionListener() {
+		return completionListener;
+	}
+
+	/**
+	 * Sets the listener finished tuples are pushed to.
+	 * @param completionListener the listener, or null to collect finished tuples in the finished list
+	 */
+	public void setCompletionListener(TupleCompletionListener completionListener) {
+		this.completionListener = completionListener;
+		notifiedFinishTime = Double.MAX_VALUE;
+	}
+}
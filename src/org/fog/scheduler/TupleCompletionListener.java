@@ -0,0 +1,28 @@
+/*
+ * Title:        iFogSim Toolkit
+ * Description:  iFogSim (Fog Simulation) Toolkit for Modeling and Simulation of Fog Computing
+ */
+package org.fog.scheduler;
+
+import org.fog.entities.Tuple;
+
+/**
+ * Listener of a {@link FinishTimeTupleScheduler}, to which finished tuples are pushed instead of being polled.
+ */
+public interface TupleCompletionListener {
+
+	/**
+	 * Called when a tuple finishes executing.
+	 * @param scheduler the scheduler of the module executing the tuple
+	 * @param tuple the tuple
+	 */
+	void tupleFinished(FinishTimeTupleScheduler scheduler, Tuple tuple);
+
+	/**
+	 * Called when the next running tuple will finish earlier than the listener was last told. The scheduler should
+	 * then be updated at that time, for the tuple to finish.
+	 * @param scheduler the scheduler
+	 * @param finishTime the time the next tuple finishes at
+	 */
+	void nextFinishTimeChanged(FinishTimeTupleScheduler scheduler, double finishTime);
+}
@@ -19,6 +19,10 @@ public class TupleScheduler extends CloudletSchedulerTimeShared{
 
 	private double mips;
 	private int numPes;
+	/**
+	 * MIPS share of each PE used to estimate the execution time of submitted tuples, built once as it does not change
+	 */
+	private List<Double> submitMipsShare;
 	
 	public TupleScheduler(double mips, int numberOfPes) {
 		//super(mips, numberOfPes);
@@ -99,26 +103,40 @@ public class TupleScheduler extends CloudletSchedulerTimeShared{
 
 		// use the current capacity to estimate the extra amount of
 		// time to file transferring. It must be added to the cloudlet length
-		List<Double> mipsShare = new ArrayList<Double>();
-		for(int i=0;i<getNumPes();i++) 
-			mipsShare.add(getMips());
-		setCurrentMipsShare(mipsShare);
+		if (submitMipsShare == null) {
+			submitMipsShare = new ArrayList<Double>();
+			for(int i=0;i<getNumPes();i++) 
+				submitMipsShare.add(getMips());
+		}
+		setCurrentMipsShare(submitMipsShare);
 		double extraSize = getCapacity(getCurrentMipsShare()) * fileTransferTime;
 		long length = (long) (cloudlet.getCloudletLength() + extraSize);
 		cloudlet.setCloudletLength(length);
 		return cloudlet.getCloudletLength() / getCapacity(getCurrentMipsShare());
 	}
 
+	/**
+	 * Creates a scheduler of the same kind, for a copy of the module this scheduler belongs to.
+	 * @param mips MIPS of each PE of the module
+	 * @param numberOfPes number of PEs of the module
+	 * @return the scheduler
+	 */
+	public TupleScheduler createScheduler(double mips, int numberOfPes) {
+		return new TupleScheduler(mips, numberOfPes);
+	}
+
 	public double getMips() {
 		return mips;
 	}
 
 	public void setMips(double mips) {
 		this.mips = mips;
+		submitMipsShare = null;
 	}
 
 	public void setNumPes(int numPes) {
 		this.numPes = numPes;
+		submitMipsShare = null;
 	}
 	
 	public int getNumPes() {
@@ -5,12 +5,22 @@ import org.apache.commons.math3.util.Pair;
 public class AppModuleAddress {
 	private int fogDeviceId;
 	private int vmId;
+	private int placementId = -1;	// placement the tuples sent to the module originate from, or -1
 	
 	public AppModuleAddress(int vmId, int fogDeviceId) {
 		setVmId(vmId);
 		setFogDeviceId(fogDeviceId);
 	}
 	
+	/**
+	 * @param placementId ID of the placement the tuples sent to the module originate from, when the module is shared
+	 * by several placements
+	 */
+	public AppModuleAddress(int vmId, int fogDeviceId, int placementId) {
+		this(vmId, fogDeviceId);
+		setPlacementId(placementId);
+	}
+	
 	public Pair<Integer, Integer> getAddress() {
 		return new Pair<Integer, Integer>(getVmId(), getFogDeviceId());
 	}
@@ -27,4 +37,10 @@ public class AppModuleAddress {
 	public void setVmId(int vmId) {
 		this.vmId = vmId;
 	}
+	public int getPlacementId() {
+		return placementId;
+	}
+	public void setPlacementId(int placementId) {
+		this.placementId = placementId;
+	}
 }
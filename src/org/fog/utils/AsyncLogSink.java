@@ -0,0 +1,158 @@
+package org.fog.utils;
+
+import java.io.PrintStream;
+
+/**
+ * Sink of the {@link Logger} writing messages from a background thread. Logged messages are copied into the slots of a
+ * ring buffer allocated once, and formatted and printed by the writer thread, so that logging threads only pay for the
+ * copy. When the buffer is full, logging threads wait for the writer, so no message is lost.
+ * <p>
+ * Template arguments are formatted by the writer thread, after the message was logged : they should not be modified
+ * afterwards (numbers and strings are safe). Since messages are printed later, they may be interleaved differently with
+ * what is printed directly on the same stream; {@link Logger#flush()} waits until they are all printed.
+ */
+public class AsyncLogSink {
+
+	/**
+	 * A logged message waiting to be printed.
+	 */
+	private static class Entry {
+		int level;
+		double time;
+		String tag;
+		String name;
+		String template;
+		Object[] args;
+	}
+
+	private final Entry[] entries;
+	private final PrintStream out;
+	/**
+	 * Number of messages published and printed since the creation of the sink. The next slot to fill is
+	 * published % capacity, and the next one to print is printed % capacity.
+	 */
+	private long published;
+	private long printed;
+	private boolean closed;
+	private final Thread writer;
+
+	/**
+	 * Creates a sink printing on the standard output.
+	 * @param capacity number of messages the buffer holds
+	 */
+	public AsyncLogSink(int capacity) {
+		this(capacity, System.out);
+	}
+
+	/**
+	 * @param capacity number of messages the buffer holds
+	 * @param out stream messages are printed on
+	 */
+	public AsyncLogSink(int capacity, PrintStream out) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity of a log sink should be positive : "+capacity);
+		entries = new Entry[capacity];
+		for (int i = 0; i < capacity; i++)
+			entries[i] = new Entry();
+		this.out = out;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "iFogSim-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Hands a message over to the writer thread, waiting for a free slot if the buffer is full.
+	 * @return false if the sink is closed, in which case the message is not printed
+	 */
+	synchronized boolean publish(int level, double time, String tag, String name, String template, Object[] args) {
+		while (!closed && published - printed == entries.length) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return true;
+			}
+		}
+		if (closed)
+			return false;
+		Entry entry = entries[(int) (published % entries.length)];
+		entry.level = level;
+		entry.time = time;
+		entry.tag = tag;
+		entry.name = name;
+		entry.template = template;
+		entry.args = args;
+		published++;
+		notifyAll();
+		return true;
+	}
+
+	private void write() {
+		StringBuilder lines = new StringBuilder();
+		while (true) {
+			long first, last;
+			synchronized (this) {
+				while (printed == published && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (printed == published)
+					return;
+				first = printed;
+				last = published;
+			}
+			// the slots between first and last are not reused until printed is updated
+			for (long i = first; i < last; i++) {
+				Entry entry = entries[(int) (i % entries.length)];
+				lines.append(Logger.format(entry.level, entry.time, entry.tag, entry.name, entry.template, entry.args))
+						.append(System.lineSeparator());
+				entry.args = null;
+			}
+			out.print(lines);
+			out.flush();
+			lines.setLength(0);
+			synchronized (this) {
+				printed = last;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the messages published so far are printed.
+	 */
+	public synchronized void flush() {
+		long target = published;
+		while (printed < target && writer.isAlive()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Prints the remaining messages and stops the writer thread.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -29,4 +29,6 @@ public class FogEvents {
 	public static final int INITIALIZE_SENSOR = BASE+25;
 	public static final int EMIT_TUPLE = BASE+26;
 	public static final int ENDPOINT_CONNECTION = BASE+27;
+	public static final int TUPLE_BATCH_ARRIVAL = BASE+28;
+	public static final int TUPLE_COMPLETION_DUE = BASE+29;
 }
@@ -8,7 +8,7 @@ public class FogUtils {
 	private static int ENTITY_ID = 1;
 	private static int ACTUAL_TUPLE_ID = 1;
 	
-	public static int generateTupleId(){
+	public static synchronized int generateTupleId(){
 		return TUPLE_ID++;
 	}
 	
@@ -16,11 +16,11 @@ public class FogUtils {
 		return sensorName.substring(sensorName.indexOf('-')+1, sensorName.lastIndexOf('-'));
 	}
 	
-	public static int generateEntityId(){
+	public static synchronized int generateEntityId(){
 		return ENTITY_ID++;
 	}
 	
-	public static int generateActualTupleId(){
+	public static synchronized int generateActualTupleId(){
 		return ACTUAL_TUPLE_ID++;
 	}
 	
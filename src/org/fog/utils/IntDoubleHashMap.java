@@ -0,0 +1,153 @@
+package org.fog.utils;
+
+import java.util.Arrays;
+
+/**
+ * Map from int keys to double values with open addressing and linear probing, which stores neither keys nor values
+ * as objects. Removed entries leave no tombstones, so the map does not degrade when entries come and go.
+ */
+public class IntDoubleHashMap {
+
+	private static final int FREE = Integer.MIN_VALUE;
+
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	/**
+	 * Keys of the entries, or FREE for empty slots
+	 */
+	private int[] keys;
+	private double[] values;
+	private int size;
+	/**
+	 * Value mapped to the key FREE, which cannot be stored in a slot
+	 */
+	private double freeKeyValue;
+	private boolean hasFreeKey;
+
+	public IntDoubleHashMap() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize number of entries the map should hold without growing
+	 */
+	public IntDoubleHashMap(int expectedSize) {
+		int capacity = 2;
+		while (capacity * MAX_LOAD_FACTOR < expectedSize)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		values = new double[capacity];
+	}
+
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (keys.length - 1);
+	}
+
+	public boolean containsKey(int key) {
+		if (key == FREE)
+			return hasFreeKey;
+		for (int i = slot(key); keys[i] != FREE; i = (i + 1) & (keys.length - 1)) {
+			if (keys[i] == key)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * @param key the key
+	 * @param defaultValue value returned if the key is absent
+	 * @return the value, or defaultValue
+	 */
+	public double get(int key, double defaultValue) {
+		if (key == FREE)
+			return hasFreeKey ? freeKeyValue : defaultValue;
+		for (int i = slot(key); keys[i] != FREE; i = (i + 1) & (keys.length - 1)) {
+			if (keys[i] == key)
+				return values[i];
+		}
+		return defaultValue;
+	}
+
+	public void put(int key, double value) {
+		if (key == FREE) {
+			if (!hasFreeKey)
+				size++;
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return;
+		}
+		int i = slot(key);
+		for (; keys[i] != FREE; i = (i + 1) & (keys.length - 1)) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > keys.length * MAX_LOAD_FACTOR)
+			rehash(keys.length << 1);
+	}
+
+	/**
+	 * Removes a key.
+	 * @param key the key
+	 * @param defaultValue value returned if the key is absent
+	 * @return the value the key had, or defaultValue
+	 */
+	public double remove(int key, double defaultValue) {
+		if (key == FREE) {
+			if (!hasFreeKey)
+				return defaultValue;
+			hasFreeKey = false;
+			size--;
+			return freeKeyValue;
+		}
+		int mask = keys.length - 1;
+		int i = slot(key);
+		for (; keys[i] != key; i = (i + 1) & mask) {
+			if (keys[i] == FREE)
+				return defaultValue;
+		}
+		double value = values[i];
+		size--;
+		// shift back the following entries of the cluster which would no longer be found
+		int gap = i;
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = keys[j];
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		keys[gap] = FREE;
+		return value;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		double[] oldValues = values;
+		allocate(capacity);
+		size = hasFreeKey ? 1 : 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE)
+				put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
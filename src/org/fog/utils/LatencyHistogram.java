@@ -0,0 +1,146 @@
+package org.fog.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of delays in the manner of HdrHistogram : delays are counted in buckets whose width doubles every 64
+ * buckets, so that percentiles are known within about 1% of their value in constant space per power of two,
+ * however many delays are recorded. The minimum, maximum and mean are exact.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * log2 of the number of buckets per power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Smallest delay distinguished from 0, in milliseconds
+	 */
+	public static final double DEFAULT_RESOLUTION = 1e-3;
+
+	private final double resolution;
+	/**
+	 * Number of delays in each bucket, grown as larger delays are recorded
+	 */
+	private long[] counts;
+	private long totalCount;
+	private double sum;
+	private double min = Double.MAX_VALUE;
+	private double max = 0;
+
+	public LatencyHistogram() {
+		this(DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * @param resolution smallest delay distinguished from 0
+	 */
+	public LatencyHistogram(double resolution) {
+		if (resolution <= 0)
+			throw new IllegalArgumentException("Resolution of a histogram should be positive : "+resolution);
+		this.resolution = resolution;
+		counts = new long[2*SUB_BUCKET_COUNT];
+	}
+
+	/**
+	 * Gets the bucket of a delay expressed in units of the resolution : the values below 2*SUB_BUCKET_COUNT have a
+	 * bucket each, and the following powers of two are split into SUB_BUCKET_COUNT buckets.
+	 */
+	private static int bucketOf(long units) {
+		if (units < 2*SUB_BUCKET_COUNT)
+			return (int) units;
+		int shift = 63 - Long.numberOfLeadingZeros(units) - SUB_BUCKET_BITS;
+		return SUB_BUCKET_COUNT*shift + (int) (units >>> shift);
+	}
+
+	/**
+	 * Gets the smallest value, in units of the resolution, falling in a bucket.
+	 */
+	private static long lowestUnitsOf(int bucket) {
+		if (bucket < 2*SUB_BUCKET_COUNT)
+			return bucket;
+		int shift = bucket/SUB_BUCKET_COUNT - 1;
+		return ((long) (bucket - SUB_BUCKET_COUNT*shift)) << shift;
+	}
+
+	private static long widthOf(int bucket) {
+		return (bucket < 2*SUB_BUCKET_COUNT) ? 1 : 1L << (bucket/SUB_BUCKET_COUNT - 1);
+	}
+
+	/**
+	 * Records a delay.
+	 * @param delay the delay, which should not be negative
+	 */
+	public void record(double delay) {
+		if (delay < 0 || Double.isNaN(delay))
+			throw new IllegalArgumentException("Delay should not be negative : "+delay);
+		long units = (long) Math.min(delay/resolution, Long.MAX_VALUE);
+		int bucket = bucketOf(units);
+		if (bucket >= counts.length)
+			counts = Arrays.copyOf(counts, Math.max(bucket + 1, 2*counts.length));
+		counts[bucket]++;
+		totalCount++;
+		sum += delay;
+		min = Math.min(min, delay);
+		max = Math.max(max, delay);
+	}
+
+	/**
+	 * Gets a percentile of the recorded delays, as the middle of the bucket it falls in.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the delay below which the given percentage of delays fall, or NaN if no delay was recorded
+	 */
+	public double getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile should be between 0 and 100 : "+percentile);
+		if (totalCount == 0)
+			return Double.NaN;
+		long rank = Math.max(1, (long) Math.ceil(percentile/100*totalCount));
+		long seen = 0;
+		for (int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				double value = (lowestUnitsOf(bucket) + widthOf(bucket)/2.0)*resolution;
+				return Math.max(min, Math.min(max, value));
+			}
+		}
+		return max;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return the mean of the recorded delays, or NaN if no delay was recorded
+	 */
+	public double getMean() {
+		return (totalCount == 0) ? Double.NaN : sum/totalCount;
+	}
+
+	/**
+	 * @return the smallest recorded delay, or NaN if no delay was recorded
+	 */
+	public double getMin() {
+		return (totalCount == 0) ? Double.NaN : min;
+	}
+
+	/**
+	 * @return the largest recorded delay, or NaN if no delay was recorded
+	 */
+	public double getMax() {
+		return (totalCount == 0) ? Double.NaN : max;
+	}
+
+	public double getResolution() {
+		return resolution;
+	}
+
+	@Override
+	public String toString() {
+		return "count = "+totalCount+", p50 = "+getPercentile(50)+", p95 = "+getPercentile(95)
+				+", p99 = "+getPercentile(99)+", max = "+getMax();
+	}
+}
@@ -1,72 +1,292 @@
 package org.fog.utils;
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 
+/**
+ * Logger of the simulation entities, with messages enabled by tag.
+ * <p>
+ * Tags can be registered once with {@link #getTagId(String)}, and the resulting ID passed to the logging methods so
+ * that checking whether a tag is enabled costs an array read instead of a map lookup. Messages can be given as
+ * templates whose "{}" placeholders are replaced by arguments, or by a {@link MessageSupplier}, so that they are only
+ * built if they are logged; hot paths should check {@link #isDebugEnabled(int)} before computing arguments.
+ * Setting the system property ifogsim.logging.disabled to true turns all logging off through a constant, so that the
+ * JIT compiler removes the checks altogether.
+ * <p>
+ * Messages are printed on the standard output, or handed over to an {@link AsyncLogSink} writing them from a
+ * background thread (see {@link #setAsyncSink(AsyncLogSink)}).
+ */
 public class Logger {
-	
+
 	public static final int ERROR = 1;
 	public static final int DEBUG = 0;
-	
+
+	/**
+	 * False if logging is turned off for the whole run by the system property ifogsim.logging.disabled
+	 */
+	public static final boolean AVAILABLE = !Boolean.getBoolean("ifogsim.logging.disabled");
+
 	public static int LOG_LEVEL = Logger.DEBUG;
-	private static DecimalFormat df = new DecimalFormat("#.00"); 
+	private static DecimalFormat df = new DecimalFormat("#.00");
 
 	public static boolean ENABLED = false;;
-	
+
+	private static final byte TAG_DEFAULT = 0;
+	private static final byte TAG_ENABLED = 1;
+	private static final byte TAG_DISABLED = 2;
+
 	private static Map<String, Boolean> tagEnabled = new HashMap<String, Boolean>();
-	
+
+	/**
+	 * Map from tag to its ID
+	 */
+	private static final Map<String, Integer> tagIds = new ConcurrentHashMap<String, Integer>();
+	/**
+	 * Tags by ID
+	 */
+	private static volatile String[] tags = new String[0];
+	/**
+	 * State of each tag, by ID : TAG_DEFAULT if it follows ENABLED, otherwise TAG_ENABLED or TAG_DISABLED
+	 */
+	private static volatile byte[] tagStates = new byte[0];
+
+	private static volatile AsyncLogSink asyncSink;
+
+	/**
+	 * Supplier of a message, called only if the message is logged.
+	 */
+	public interface MessageSupplier {
+		String get();
+	}
+
 	public static void setLogLevel(int level){
 		Logger.LOG_LEVEL = level;
 	}
-	
-	public static void enableTag(String tag) {
+
+	public static synchronized void enableTag(String tag) {
 		getTagEnabled().put(tag, true);
+		int tagId = getTagId(tag);
+		tagStates[tagId] = TAG_ENABLED;
 	}
-	
-	public static void disableTag(String tag) {
+
+	public static synchronized void disableTag(String tag) {
 		getTagEnabled().put(tag, false);
+		int tagId = getTagId(tag);
+		tagStates[tagId] = TAG_DISABLED;
 	}
-	
-	private static boolean shouldLog(String tag) {
-		boolean result = false;
-		if (ENABLED) {
-			result = (getTagEnabled().containsKey(tag))?getTagEnabled().get(tag):true;
-		} else {
-			result = (getTagEnabled().containsKey(tag))?getTagEnabled().get(tag):false;
-		}
-		return result;
+
+	/**
+	 * Gets the ID of a tag, registering it if needed.
+	 * @param tag the tag
+	 * @return the ID
+	 */
+	public static int getTagId(String tag) {
+		Integer tagId = tagIds.get(tag);
+		return (tagId != null) ? tagId : registerTag(tag);
+	}
+
+	private static synchronized int registerTag(String tag) {
+		Integer tagId = tagIds.get(tag);
+		if (tagId != null)
+			return tagId;
+		int id = tags.length;
+		tags = Arrays.copyOf(tags, id + 1);
+		tags[id] = tag;
+		byte[] states = Arrays.copyOf(tagStates, id + 1);
+		Boolean enabled = getTagEnabled().get(tag);
+		if (enabled != null)
+			states[id] = enabled ? TAG_ENABLED : TAG_DISABLED;
+		tagStates = states;
+		tagIds.put(tag, id);
+		return id;
+	}
+
+	private static boolean shouldLog(int tagId) {
+		byte state = tagStates[tagId];
+		return (state == TAG_DEFAULT) ? ENABLED : (state == TAG_ENABLED);
+	}
+
+	/**
+	 * Checks whether debug messages of a tag are logged.
+	 * @param tagId ID of the tag
+	 * @return true if they are
+	 */
+	public static boolean isDebugEnabled(int tagId) {
+		return AVAILABLE && Logger.LOG_LEVEL <= Logger.DEBUG && shouldLog(tagId);
+	}
+
+	/**
+	 * Checks whether error messages of a tag are logged.
+	 * @param tagId ID of the tag
+	 * @return true if they are
+	 */
+	public static boolean isErrorEnabled(int tagId) {
+		return AVAILABLE && Logger.LOG_LEVEL <= Logger.ERROR && shouldLog(tagId);
 	}
-	
+
 	public static void debug(String tag, String name, String message){
-		if (!shouldLog(tag)) return;
-		
-		if(Logger.LOG_LEVEL <= Logger.DEBUG)
-			System.out.println(df.format(CloudSim.clock())+ " : " + tag + " : " + name + " : " + message);
+		if (AVAILABLE)
+			debug(getTagId(tag), name, message);
 	}
 	public static void error(String tag, String name, String message){
-		if (!shouldLog(tag)) return;
-		
-		if(Logger.LOG_LEVEL <= Logger.ERROR)
-			System.out.println(df.format(CloudSim.clock())+" : "+name+" : "+message);
+		if (AVAILABLE)
+			error(getTagId(tag), name, message);
+	}
+
+	public static void debug(int tagId, String name, String message) {
+		if (isDebugEnabled(tagId))
+			log(DEBUG, tagId, name, message, null);
+	}
+
+	/**
+	 * Logs a debug message built from a template, whose "{}" placeholders are replaced by the arguments.
+	 */
+	public static void debug(int tagId, String name, String template, Object arg) {
+		if (isDebugEnabled(tagId))
+			log(DEBUG, tagId, name, template, new Object[]{arg});
+	}
+
+	public static void debug(int tagId, String name, String template, Object arg1, Object arg2) {
+		if (isDebugEnabled(tagId))
+			log(DEBUG, tagId, name, template, new Object[]{arg1, arg2});
+	}
+
+	public static void debug(int tagId, String name, String template, Object... args) {
+		if (isDebugEnabled(tagId))
+			log(DEBUG, tagId, name, template, args);
+	}
+
+	public static void debug(int tagId, String name, MessageSupplier supplier) {
+		if (isDebugEnabled(tagId))
+			log(DEBUG, tagId, name, supplier.get(), null);
+	}
+
+	public static void error(int tagId, String name, String message) {
+		if (isErrorEnabled(tagId))
+			log(ERROR, tagId, name, message, null);
+	}
+
+	/**
+	 * Logs an error message built from a template, whose "{}" placeholders are replaced by the arguments.
+	 */
+	public static void error(int tagId, String name, String template, Object... args) {
+		if (isErrorEnabled(tagId))
+			log(ERROR, tagId, name, template, args);
+	}
+
+	public static void error(int tagId, String name, MessageSupplier supplier) {
+		if (isErrorEnabled(tagId))
+			log(ERROR, tagId, name, supplier.get(), null);
+	}
+
+	private static void log(int level, int tagId, String name, String template, Object[] args) {
+		AsyncLogSink sink = asyncSink;
+		// a sink closed by setAsyncSink meanwhile refuses the message, which goes to the sink replacing it
+		while (sink != null && !sink.publish(level, CloudSim.clock(), tags[tagId], name, template, args)) {
+			AsyncLogSink current = asyncSink;
+			sink = (current != sink) ? current : null;
+		}
+		if (sink == null)
+			System.out.println(format(level, CloudSim.clock(), tags[tagId], name, template, args));
+	}
+
+	/**
+	 * Formats a logged message.
+	 * @param level DEBUG or ERROR
+	 * @param time simulation time at which the message was logged
+	 * @param tag tag of the message
+	 * @param name name of the entity logging the message
+	 * @param template the message, with "{}" placeholders if there are arguments
+	 * @param args the arguments, or null
+	 * @return the line to print
+	 */
+	static String format(int level, double time, String tag, String name, String template, Object[] args) {
+		String message = (args == null) ? template : formatMessage(template, args);
+		if (level == DEBUG)
+			return formatTime(time)+ " : " + tag + " : " + name + " : " + message;
+		return formatTime(time)+" : "+name+" : "+message;
+	}
+
+	private static String formatMessage(String template, Object[] args) {
+		StringBuilder sb = new StringBuilder(template.length() + 16*args.length);
+		int start = 0;
+		for (Object arg : args) {
+			int index = template.indexOf("{}", start);
+			if (index < 0)
+				break;
+			sb.append(template, start, index).append(arg);
+			start = index + 2;
+		}
+		return sb.append(template, start, template.length()).toString();
+	}
+
+	/**
+	 * Formats a simulation time. DecimalFormat is not thread-safe, and entities may log from
+	 * several threads when the simulation runs in parallel.
+	 * @param time the time
+	 * @return the formatted time
+	 */
+	private static String formatTime(double time) {
+		synchronized (df) {
+			return df.format(time);
+		}
 	}
 
 	public static Map<String, Boolean> getTagEnabled() {
 		return tagEnabled;
 	}
 
-	public static void setTagEnabled(Map<String, Boolean> tagEnabled) {
+	/**
+	 * Sets the map from tag to whether it is enabled, the tags absent from it following {@link #ENABLED}.
+	 * @param tagEnabled the map
+	 */
+	public static synchronized void setTagEnabled(Map<String, Boolean> tagEnabled) {
 		Logger.tagEnabled = tagEnabled;
+		byte[] states = new byte[tags.length];
+		for (int i = 0; i < tags.length; i++) {
+			Boolean enabled = tagEnabled.get(tags[i]);
+			if (enabled != null)
+				states[i] = enabled ? TAG_ENABLED : TAG_DISABLED;
+		}
+		tagStates = states;
+	}
+
+	public static AsyncLogSink getAsyncSink() {
+		return asyncSink;
+	}
+
+	/**
+	 * Sets the sink messages are handed over to, instead of being printed by the thread logging them.
+	 * The previous sink, if any, is closed ; messages still logged to it go to the new sink.
+	 * @param asyncSink the sink, or null to print messages directly
+	 */
+	public static void setAsyncSink(AsyncLogSink asyncSink) {
+		AsyncLogSink previous = Logger.asyncSink;
+		Logger.asyncSink = asyncSink;
+		if (previous != null && previous != asyncSink)
+			previous.close();
+	}
+
+	/**
+	 * Waits until the messages handed over to the asynchronous sink, if any, are written.
+	 */
+	public static void flush() {
+		AsyncLogSink sink = asyncSink;
+		if (sink != null)
+			sink.flush();
 	}
 
 	public static void debug(String tag, String message) {
 		debug(tag, "", message);
 	}
-	
+
 	public static void error(String tag, String message) {
 		error(tag, "", message);
 	}
-	
+
 }
@@ -4,11 +4,11 @@ public class NetworkUsageMonitor {
 
 	private static double networkUsage = 0.0;
 	
-	public static void sendingTuple(double latency, double tupleNwSize){
+	public static synchronized void sendingTuple(double latency, double tupleNwSize){
 		networkUsage += latency*tupleNwSize;
 	}
 	
-	public static double getNetworkUsage(){
+	public static synchronized double getNetworkUsage(){
 		return networkUsage;
 	}
 }
@@ -1,70 +1,126 @@
 package org.fog.utils;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.fog.entities.Tuple;
 
+/**
+ * Keeps track of the delays of application loops and of the execution times of tuples. The times of the tuples
+ * being tracked are kept in primitive maps and evicted when the tuples reach the end of their loop or finish
+ * executing, so memory does not grow with the length of the simulation. Besides running means, the delays are
+ * recorded in histograms giving their percentiles.
+ */
 public class TimeKeeper {
 
 	private static TimeKeeper instance;
 	
 	private long simulationStartTime;
 	private int count; 
-	private Map<Integer, Double> emitTimes;
-	private Map<Integer, Double> endTimes;
-	private Map<Integer, List<Integer>> loopIdToTupleIds;
-	private Map<Integer, Double> tupleIdToCpuStartTime;
+	/**
+	 * Map from the unique ID of a tuple started in a loop to its emission time, until it reaches the end of the loop
+	 */
+	private IntDoubleHashMap emitTimes;
+	/**
+	 * Map from tuple ID to the time it started executing, until it finishes
+	 */
+	private IntDoubleHashMap tupleIdToCpuStartTime;
 	private Map<String, Double> tupleTypeToAverageCpuTime;
 	private Map<String, Integer> tupleTypeToExecutedTupleCount;
+	/**
+	 * Map from tuple type to the histogram of the execution times of its tuples
+	 */
+	private Map<String, LatencyHistogram> tupleTypeToCpuTimes;
 	
 	private Map<Integer, Double> loopIdToCurrentAverage;
 	private Map<Integer, Integer> loopIdToCurrentNum;
+	/**
+	 * Map from the ID of a loop in which tuples were emitted to the histogram of its delays
+	 */
+	private Map<Integer, LatencyHistogram> loopIdToDelays;
 	
-	public static TimeKeeper getInstance(){
+	public static synchronized TimeKeeper getInstance(){
 		if(instance == null)
 			instance = new TimeKeeper();
 		return instance;
 	}
 	
-	public int getUniqueId(){
+	public synchronized int getUniqueId(){
 		return count++;
 	}
 	
-	public void tupleStartedExecution(Tuple tuple){
+	/**
+	 * Records the emission of a tuple starting an application loop.
+	 * @param loopId ID of the loop started by the tuple
+	 * @return the unique ID identifying the tuple in the loop
+	 */
+	public synchronized int tupleEmitted(int loopId){
+		int tupleId = getUniqueId();
+		if(!getLoopIdToDelays().containsKey(loopId))
+			getLoopIdToDelays().put(loopId, new LatencyHistogram());
+		getEmitTimes().put(tupleId, CloudSim.clock());
+		return tupleId;
+	}
+	
+	/**
+	 * Records the arrival of a tuple at the end of an application loop, updating the average delay of the loop.
+	 * @param loopId ID of the loop ended by the tuple
+	 * @param actualTupleId unique ID identifying the tuple in the loop
+	 */
+	public synchronized void tupleReachedLoopEnd(int loopId, int actualTupleId){
+		double startTime = getEmitTimes().remove(actualTupleId, Double.NaN);
+		if(Double.isNaN(startTime))
+			return;
+		if(!getLoopIdToCurrentAverage().containsKey(loopId)){
+			getLoopIdToCurrentAverage().put(loopId, 0.0);
+			getLoopIdToCurrentNum().put(loopId, 0);
+		}
+		double currentAverage = getLoopIdToCurrentAverage().get(loopId);
+		int currentCount = getLoopIdToCurrentNum().get(loopId);
+		double delay = CloudSim.clock() - startTime;
+		double newAverage = (currentAverage*currentCount + delay)/(currentCount+1);
+		getLoopIdToCurrentAverage().put(loopId, newAverage);
+		getLoopIdToCurrentNum().put(loopId, currentCount+1);
+		LatencyHistogram delays = getLoopIdToDelays().get(loopId);
+		if(delays == null){
+			delays = new LatencyHistogram();
+			getLoopIdToDelays().put(loopId, delays);
+		}
+		delays.record(delay);
+	}
+	
+	public synchronized void tupleStartedExecution(Tuple tuple){
 		tupleIdToCpuStartTime.put(tuple.getCloudletId(), CloudSim.clock());
 	}
 	
-	public void tupleEndedExecution(Tuple tuple){
-		if(!tupleIdToCpuStartTime.containsKey(tuple.getCloudletId()))
+	public synchronized void tupleEndedExecution(Tuple tuple){
+		double startTime = tupleIdToCpuStartTime.remove(tuple.getCloudletId(), Double.NaN);
+		if(Double.isNaN(startTime))
 			return;
-		double executionTime = CloudSim.clock() - tupleIdToCpuStartTime.get(tuple.getCloudletId());
+		double executionTime = CloudSim.clock() - startTime;
 		if(!tupleTypeToAverageCpuTime.containsKey(tuple.getTupleType())){
 			tupleTypeToAverageCpuTime.put(tuple.getTupleType(), executionTime);
 			tupleTypeToExecutedTupleCount.put(tuple.getTupleType(), 1);
+			tupleTypeToCpuTimes.put(tuple.getTupleType(), new LatencyHistogram());
 		} else{
 			double currentAverage = tupleTypeToAverageCpuTime.get(tuple.getTupleType());
 			int currentCount = tupleTypeToExecutedTupleCount.get(tuple.getTupleType());
 			tupleTypeToAverageCpuTime.put(tuple.getTupleType(), (currentAverage*currentCount+executionTime)/(currentCount+1));
 		}
-	}
-	
-	public Map<Integer, List<Integer>> loopIdToTupleIds(){
-		return getInstance().getLoopIdToTupleIds();
+		tupleTypeToCpuTimes.get(tuple.getTupleType()).record(executionTime);
 	}
 	
 	private TimeKeeper(){
 		count = 1;
-		setEmitTimes(new HashMap<Integer, Double>());
-		setEndTimes(new HashMap<Integer, Double>());
-		setLoopIdToTupleIds(new HashMap<Integer, List<Integer>>());
+		setEmitTimes(new IntDoubleHashMap());
 		setTupleTypeToAverageCpuTime(new HashMap<String, Double>());
 		setTupleTypeToExecutedTupleCount(new HashMap<String, Integer>());
-		setTupleIdToCpuStartTime(new HashMap<Integer, Double>());
+		setTupleTypeToCpuTimes(new HashMap<String, LatencyHistogram>());
+		setTupleIdToCpuStartTime(new IntDoubleHashMap());
 		setLoopIdToCurrentAverage(new HashMap<Integer, Double>());
 		setLoopIdToCurrentNum(new HashMap<Integer, Integer>());
+		setLoopIdToDelays(new HashMap<Integer, LatencyHistogram>());
 	}
 	
 	public int getCount() {
@@ -75,28 +131,20 @@ public class TimeKeeper {
 		this.count = count;
 	}
 
-	public Map<Integer, Double> getEmitTimes() {
+	public IntDoubleHashMap getEmitTimes() {
 		return emitTimes;
 	}
 
-	public void setEmitTimes(Map<Integer, Double> emitTimes) {
+	public void setEmitTimes(IntDoubleHashMap emitTimes) {
 		this.emitTimes = emitTimes;
 	}
 
-	public Map<Integer, Double> getEndTimes() {
-		return endTimes;
+	public Map<Integer, LatencyHistogram> getLoopIdToDelays() {
+		return loopIdToDelays;
 	}
 
-	public void setEndTimes(Map<Integer, Double> endTimes) {
-		this.endTimes = endTimes;
-	}
-
-	public Map<Integer, List<Integer>> getLoopIdToTupleIds() {
-		return loopIdToTupleIds;
-	}
-
-	public void setLoopIdToTupleIds(Map<Integer, List<Integer>> loopIdToTupleIds) {
-		this.loopIdToTupleIds = loopIdToTupleIds;
+	public void setLoopIdToDelays(Map<Integer, LatencyHistogram> loopIdToDelays) {
+		this.loopIdToDelays = loopIdToDelays;
 	}
 
 	public Map<String, Double> getTupleTypeToAverageCpuTime() {
@@ -117,14 +165,22 @@ public class TimeKeeper {
 		this.tupleTypeToExecutedTupleCount = tupleTypeToExecutedTupleCount;
 	}
 
-	public Map<Integer, Double> getTupleIdToCpuStartTime() {
+	public IntDoubleHashMap getTupleIdToCpuStartTime() {
 		return tupleIdToCpuStartTime;
 	}
 
-	public void setTupleIdToCpuStartTime(Map<Integer, Double> tupleIdToCpuStartTime) {
+	public void setTupleIdToCpuStartTime(IntDoubleHashMap tupleIdToCpuStartTime) {
 		this.tupleIdToCpuStartTime = tupleIdToCpuStartTime;
 	}
 
+	public Map<String, LatencyHistogram> getTupleTypeToCpuTimes() {
+		return tupleTypeToCpuTimes;
+	}
+
+	public void setTupleTypeToCpuTimes(Map<String, LatencyHistogram> tupleTypeToCpuTimes) {
+		this.tupleTypeToCpuTimes = tupleTypeToCpuTimes;
+	}
+
 	public long getSimulationStartTime() {
 		return simulationStartTime;
 	}